@@ -5,6 +5,12 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.os.Build;
 
+import com.hfs.security.services.GuardClient;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Global Application class for HFS - Hybrid File Security.
  * Initializes the security notification channels required for the 
@@ -14,6 +20,8 @@ public class HFSApplication extends Application {
 
     // Unique ID for the security monitoring notification channel
     public static final String CHANNEL_ID = "hfs_security_monitor_channel";
+    // Alerts about time the guard was not running while protected apps were used
+    public static final String COVERAGE_CHANNEL_ID = "hfs_coverage_alert_channel";
 
     @Override
     public void onCreate() {
@@ -21,6 +29,27 @@ public class HFSApplication extends Application {
 
         // Initialize the notification channel required for Foreground Security Services
         createSecurityNotificationChannel();
+
+        // The guard runs in ":guard" and keeps its own start-up minimal;
+        // only the UI process talks to it
+        if (!currentProcessName().endsWith(":guard")) {
+            GuardClient.getInstance(this).start();
+        }
+    }
+
+    /**
+     * Name of the running process; Application.getProcessName() needs API 28.
+     */
+    private String currentProcessName() {
+        try (FileInputStream in = new FileInputStream("/proc/self/cmdline")) {
+            byte[] buffer = new byte[256];
+            int length = in.read(buffer);
+            int end = 0;
+            while (end < length && buffer[end] != 0) end++;
+            return new String(buffer, 0, end, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return getPackageName();
+        }
     }
 
     /**
@@ -45,10 +74,15 @@ public class HFSApplication extends Application {
             NotificationChannel channel = new NotificationChannel(CHANNEL_ID, name, importance);
             channel.setDescription(description);
 
-            // Register the channel with the Android system
+            NotificationChannel coverageChannel = new NotificationChannel(COVERAGE_CHANNEL_ID,
+                    "HFS Coverage Alerts", NotificationManager.IMPORTANCE_HIGH);
+            coverageChannel.setDescription("Warns when protected apps were opened while the guard was not running.");
+
+            // Register the channels with the Android system
             NotificationManager notificationManager = getSystemService(NotificationManager.class);
             if (notificationManager != null) {
                 notificationManager.createNotificationChannel(channel);
+                notificationManager.createNotificationChannel(coverageChannel);
             }
         }
     }
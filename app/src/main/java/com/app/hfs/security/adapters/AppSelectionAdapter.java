@@ -31,6 +31,11 @@ public class AppSelectionAdapter extends RecyclerView.Adapter<AppSelectionAdapte
          * @param isSelected True if protection is enabled, false otherwise.
          */
         void onAppToggle(String packageName, boolean isSelected);
+
+        /**
+         * Triggered by a long press on an app to edit its protection policy.
+         */
+        void onAppPolicyRequested(AppInfo app);
     }
 
     /**
@@ -112,6 +117,14 @@ public class AppSelectionAdapter extends RecyclerView.Adapter<AppSelectionAdapte
             this.itemView.setOnClickListener(v -> {
                 binding.cbProtected.toggle();
             });
+
+            // 4. Long press opens the per-app policy (schedule, grace, re-lock mode)
+            this.itemView.setOnLongClickListener(v -> {
+                if (listener != null) {
+                    listener.onAppPolicyRequested(app);
+                }
+                return true;
+            });
         }
     }
 }
\ No newline at end of file
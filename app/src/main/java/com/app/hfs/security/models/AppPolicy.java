@@ -0,0 +1,88 @@
+package com.hfs.security.models;
+
+/**
+ * Protection policy of a single protected app.
+ * Stored as JSON by HFSDatabaseHelper and compiled into the guard's
+ * PolicyTable; apps without a policy use the defaults below.
+ */
+public class AppPolicy {
+
+    /** The session ends a grace period after the owner leaves the app. */
+    public static final int REARM_ON_LEAVE = 0;
+    /** The session lasts until the screen turns off. */
+    public static final int REARM_ON_SCREEN_OFF = 1;
+
+    /** Value of the active-hours fields when the app is protected all day. */
+    public static final int ALL_DAY = -1;
+
+    public static final long DEFAULT_GRACE_MS = 10000; // 10 Seconds
+
+    private String packageName;
+    private int activeFromMinute = ALL_DAY;
+    private int activeToMinute = ALL_DAY;
+    private long graceMs = DEFAULT_GRACE_MS;
+    private int rearmMode = REARM_ON_LEAVE;
+    private boolean lockAlways = false;
+
+    /**
+     * @param packageName System ID of the app the policy belongs to
+     */
+    public AppPolicy(String packageName) {
+        this.packageName = packageName;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Minute of the day (0-1439) protection starts, or {@link #ALL_DAY}.
+     */
+    public int getActiveFromMinute() {
+        return activeFromMinute;
+    }
+
+    /**
+     * Minute of the day protection ends (exclusive); may be before the start
+     * for schedules that run past midnight.
+     */
+    public int getActiveToMinute() {
+        return activeToMinute;
+    }
+
+    public void setActiveHours(int fromMinute, int toMinute) {
+        this.activeFromMinute = fromMinute;
+        this.activeToMinute = toMinute;
+    }
+
+    public boolean hasActiveHours() {
+        return activeFromMinute != ALL_DAY && activeToMinute != ALL_DAY && activeFromMinute != activeToMinute;
+    }
+
+    public long getGraceMs() {
+        return graceMs;
+    }
+
+    public void setGraceMs(long graceMs) {
+        this.graceMs = Math.max(0, graceMs);
+    }
+
+    public int getRearmMode() {
+        return rearmMode;
+    }
+
+    public void setRearmMode(int rearmMode) {
+        this.rearmMode = rearmMode;
+    }
+
+    /**
+     * True if every visit must authenticate, without any grace period.
+     */
+    public boolean isLockAlways() {
+        return lockAlways;
+    }
+
+    public void setLockAlways(boolean lockAlways) {
+        this.lockAlways = lockAlways;
+    }
+}
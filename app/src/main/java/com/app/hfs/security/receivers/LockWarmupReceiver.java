@@ -0,0 +1,21 @@
+package com.hfs.security.receivers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.hfs.security.ui.LockScreenWarmup;
+
+/**
+ * Runs the lock screen warm-up in the UI process on behalf of the guard.
+ * The guard lives in its own ":guard" process, so warming up there would
+ * neither help LockScreenActivity nor keep CameraX out of the guard's memory.
+ */
+public class LockWarmupReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        // Delivered on the main thread, where the warm-up has to run
+        LockScreenWarmup.warmUp(context);
+    }
+}
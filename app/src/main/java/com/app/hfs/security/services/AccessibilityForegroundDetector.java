@@ -0,0 +1,64 @@
+package com.hfs.security.services;
+
+/**
+ * Push backend: fed by HFSAccessibilityService on every TYPE_WINDOW_STATE_CHANGED.
+ * Only usable while the user has the HFS accessibility service enabled.
+ *
+ * Window state events only name the focused app. The other windows on screen
+ * (split-screen, freeform, picture-in-picture) still come from a polling
+ * backend that is updated on each tick, so the multi-window protection keeps
+ * working without giving the service access to window content.
+ */
+public class AccessibilityForegroundDetector implements ForegroundDetector {
+
+    private final ForegroundDetector windowSource;
+
+    /**
+     * @param windowSource Backend whose visible windows are reported; not started elsewhere
+     */
+    public AccessibilityForegroundDetector(ForegroundDetector windowSource) {
+        this.windowSource = windowSource;
+    }
+
+    public static boolean isAvailable() {
+        return HFSAccessibilityService.isConnected();
+    }
+
+    @Override
+    public void start(Listener listener) {
+        windowSource.start(null);
+        HFSAccessibilityService.setForegroundListener(listener);
+    }
+
+    @Override
+    public void stop() {
+        HFSAccessibilityService.setForegroundListener(null);
+        windowSource.stop();
+    }
+
+    @Override
+    public String getForegroundPackage(long now) {
+        windowSource.getForegroundPackage(now);
+        return HFSAccessibilityService.getForegroundPackage();
+    }
+
+    @Override
+    public String getForegroundClass() {
+        return HFSAccessibilityService.getForegroundClass();
+    }
+
+    @Override
+    public long getForegroundSinceMs() {
+        return HFSAccessibilityService.getForegroundSinceMs();
+    }
+
+    @Override
+    public VisibleWindowSet getVisibleWindows() {
+        return windowSource.getVisibleWindows();
+    }
+
+    @Override
+    public boolean isPushBased() {
+        return true;
+    }
+}
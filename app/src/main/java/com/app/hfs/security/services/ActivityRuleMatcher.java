@@ -0,0 +1,160 @@
+package com.hfs.security.services;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Activity-level protection rules compiled into a character trie.
+ * A rule is "package/classPrefix" and matches when the package in front is
+ * that package and the resumed activity's class name starts with the prefix.
+ * A prefix starting with '.' is relative to the package, like in the manifest.
+ * Matching walks the trie once over "package/className" without allocating;
+ * the result for the last pair is cached, since the detectors hand back the
+ * same String instances until the foreground changes.
+ * Immutable once built, except for that cache (monitor thread only).
+ */
+public final class ActivityRuleMatcher {
+
+    /**
+     * Settings pages that could switch HFS off (app info, security, device
+     * admins) and the uninstall dialog of the package installer.
+     */
+    public static final String[] SYSTEM_PAGE_RULES = {
+            "com.android.settings/.applications",
+            "com.android.settings/.Settings$ManageApplicationsActivity",
+            "com.android.settings/.Settings$AppInfoDashboardActivity",
+            "com.android.settings/.Settings$SecurityDashboardActivity",
+            "com.android.settings/.Settings$SecuritySettingsActivity",
+            "com.android.settings/.Settings$DeviceAdminSettingsActivity",
+            "com.android.settings/.DeviceAdminAdd",
+            "com.android.packageinstaller/com.android.packageinstaller.UninstallerActivity",
+            "com.google.android.packageinstaller/com.android.packageinstaller.UninstallerActivity",
+    };
+
+    private static final int NONE = -1;
+
+    // Flat trie: node 0 is the root, children are linked through nextSibling
+    private char[] label;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private boolean[] terminal;
+    private int nodeCount;
+    private final int ruleCount;
+
+    private String lastPackage = null;
+    private String lastClass = null;
+    private boolean lastResult = false;
+
+    private ActivityRuleMatcher(int capacity, int ruleCount) {
+        label = new char[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        terminal = new boolean[capacity];
+        Arrays.fill(firstChild, NONE);
+        Arrays.fill(nextSibling, NONE);
+        nodeCount = 1;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * Builds the trie. Malformed rules (no '/' or no package) are skipped.
+     */
+    public static ActivityRuleMatcher compile(Collection<String> rules) {
+        int capacity = 1;
+        for (String rule : rules) {
+            capacity += rule.length() * 2;
+        }
+        ActivityRuleMatcher matcher = new ActivityRuleMatcher(capacity, rules.size());
+
+        for (String rule : rules) {
+            int slash = rule.indexOf('/');
+            if (slash <= 0) continue;
+            String packageName = rule.substring(0, slash);
+            String classPrefix = rule.substring(slash + 1);
+            if (classPrefix.startsWith(".")) {
+                classPrefix = packageName + classPrefix;
+            }
+            matcher.insert(packageName + "/" + classPrefix);
+        }
+        return matcher;
+    }
+
+    private void insert(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            node = childOrCreate(node, key.charAt(i));
+        }
+        terminal[node] = true;
+    }
+
+    private int childOrCreate(int node, char c) {
+        int child = child(node, c);
+        if (child != NONE) return child;
+
+        if (nodeCount == label.length) {
+            int grown = label.length * 2;
+            label = Arrays.copyOf(label, grown);
+            terminal = Arrays.copyOf(terminal, grown);
+            firstChild = Arrays.copyOf(firstChild, grown);
+            nextSibling = Arrays.copyOf(nextSibling, grown);
+            Arrays.fill(firstChild, nodeCount, grown, NONE);
+            Arrays.fill(nextSibling, nodeCount, grown, NONE);
+        }
+        child = nodeCount++;
+        label[child] = c;
+        nextSibling[child] = firstChild[node];
+        firstChild[node] = child;
+        return child;
+    }
+
+    private int child(int node, char c) {
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (label[child] == c) return child;
+        }
+        return NONE;
+    }
+
+    public boolean isEmpty() {
+        return nodeCount == 1;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @return true if the activity in front is covered by a rule
+     */
+    public boolean matches(String packageName, String className) {
+        if (packageName == lastPackage && className == lastClass) {
+            return lastResult;
+        }
+        lastPackage = packageName;
+        lastClass = className;
+        lastResult = lookup(packageName, className);
+        return lastResult;
+    }
+
+    /**
+     * Uncached trie walk over "packageName/className".
+     */
+    boolean lookup(String packageName, String className) {
+        if (nodeCount == 1 || packageName.isEmpty() || className.isEmpty()) return false;
+
+        int node = 0;
+        for (int i = 0; i < packageName.length(); i++) {
+            node = child(node, packageName.charAt(i));
+            if (node == NONE) return false;
+        }
+        node = child(node, '/');
+        if (node == NONE) return false;
+        if (terminal[node]) return true;
+
+        for (int i = 0; i < className.length(); i++) {
+            node = child(node, className.charAt(i));
+            if (node == NONE) return false;
+            if (terminal[node]) return true;
+        }
+        return false;
+    }
+}
@@ -5,16 +5,24 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
-import android.app.usage.UsageEvents;
 import android.app.usage.UsageStatsManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
+import android.content.IntentFilter;
+import android.content.pm.ResolveInfo;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -22,9 +30,14 @@ import androidx.core.app.NotificationCompat;
 
 import com.hfs.security.HFSApplication;
 import com.hfs.security.R;
-import com.hfs.security.ui.LockScreenActivity;
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.receivers.LockWarmupReceiver;
+import com.hfs.security.utils.AppLabelCache;
 import com.hfs.security.utils.HFSDatabaseHelper;
+import com.hfs.security.utils.PermissionHelper;
 
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -34,37 +47,176 @@ import java.util.Set;
  * 2. Implements strict app monitoring with high-frequency polling.
  * 3. Manages owner sessions to prevent re-locking loops.
  */
-public class AppMonitorService extends Service {
+public class AppMonitorService extends Service implements LockOverlayController.Listener {
 
     private static final String TAG = "HFS_GuardService";
     private static final int NOTIFICATION_ID = 2002;
-    private static final long MONITOR_TICK_MS = 500; 
+    private static final int COVERAGE_NOTIFICATION_ID = 2003;
+    // UI-process activities, named by string so their classes never load in the guard process
+    private static final String LOCK_ACTIVITY = "com.hfs.security.ui.LockScreenActivity";
+    private static final String MAIN_ACTIVITY = "com.hfs.security.ui.MainActivity";
+    // Legacy recents surface; newer devices show recents inside the launcher
+    private static final String SYSTEM_UI_PACKAGE = "com.android.systemui";
 
+    private HandlerThread monitorThread;
     private Handler monitorHandler;
-    private Runnable monitorRunnable;
+    private Handler mainHandler;
+    private volatile Runnable monitorRunnable;
     private HFSDatabaseHelper db;
-    
-    // LOOP CONTROL FLAGS
-    public static boolean isLockActive = false;
-    private static String unlockedPackage = "";
-    private static long lastUnlockTimestamp = 0;
-    private static final long SESSION_GRACE_MS = 10000; // 10 Seconds
+    private AppLabelCache appLabelCache;
+    // Only exists while overlay lock is enabled and allowed; created and released on the main thread
+    private volatile LockOverlayController lockOverlay;
+    private UsageStatsForegroundDetector pollingDetector;
+    private AccessibilityForegroundDetector pushDetector;
+    private ForegroundDetector foregroundDetector;
+    private TickScheduler tickScheduler;
+    private MonitorEngine engine;
+    private CoverageTracker coverage;
+    // Channel from the UI process; handled on the monitor thread between two ticks
+    private Messenger uiChannel;
 
-    /**
-     * Signals the service that the owner has successfully bypassed the lock.
-     * This stops the service from re-locking the app for 10 seconds.
-     */
-    public static void unlockSession(String packageName) {
-        unlockedPackage = packageName;
-        lastUnlockTimestamp = System.currentTimeMillis();
-        Log.d(TAG, "Owner Verified. Grace Period active for: " + packageName);
-    }
+    // Open sessions mirrored into the shared state file for the lock screen (monitor thread)
+    private GuardStateFile stateFile;
+    private int publishedSessionChanges = -1;
+    private final String[] sessionNames = new String[64];
+    private final long[] sessionExpiries = new long[64];
+
+    // Unlock sessions and the single-flight launch guard, shared with the lock UIs
+    private final UnlockSessionTable sessions = UnlockSessionTable.getInstance();
+    private final LockTriggerCoordinator lockTriggers = LockTriggerCoordinator.getInstance();
+    // Token of the UI process whose lock screen last reported (monitor thread)
+    private IBinder lockReporter = null;
 
     @Override
     public void onCreate() {
         super.onCreate();
         db = HFSDatabaseHelper.getInstance(this);
-        monitorHandler = new Handler(Looper.getMainLooper());
+        appLabelCache = AppLabelCache.getInstance(this);
+        pollingDetector = new UsageStatsForegroundDetector(
+                (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE));
+        // Accessibility events only name the focused app; the other windows come from UsageStats
+        pushDetector = new AccessibilityForegroundDetector(pollingDetector);
+
+        // The guard loop runs on its own thread; only activity launches touch the main thread
+        monitorThread = new HandlerThread("HFS_Monitor", Process.THREAD_PRIORITY_BACKGROUND);
+        monitorThread.start();
+        monitorHandler = new Handler(monitorThread.getLooper());
+        mainHandler = new Handler(Looper.getMainLooper());
+
+        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        tickScheduler = new TickScheduler(resolveLauncherPackages(), pm == null || pm.isInteractive());
+
+        // HFS itself never re-arms a session (the lock screen belongs to it)
+        engine = new MonitorEngine(System::currentTimeMillis, foregroundSource, policySource,
+                engineActions, sessions, lockTriggers, tickScheduler, getPackageName());
+
+        uiChannel = new Messenger(new Handler(monitorThread.getLooper(), this::handleUiMessage));
+        stateFile = GuardStateFile.getInstance(getFilesDir());
+
+        // A start without a clean stop before it means the guard was killed; find out for how long
+        coverage = CoverageTracker.getInstance(this);
+        long now = System.currentTimeMillis();
+        CoverageTracker.Gap gap = coverage.onGuardStarted(now, now - SystemClock.elapsedRealtime());
+        if (gap != null) {
+            monitorHandler.post(() -> reportCoverageGap(gap));
+        }
+        monitorHandler.postDelayed(heartbeatRunnable, CoverageTracker.HEARTBEAT_MS);
+
+        // Screen broadcasts are delivered on the monitor thread, next to the loop they control
+        IntentFilter screenFilter = new IntentFilter();
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        screenFilter.addAction(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_USER_PRESENT);
+        registerReceiver(screenStateReceiver, screenFilter, null, monitorHandler);
+    }
+
+    /**
+     * Low-rate heartbeat into the coverage file; independent of the tick loop
+     * and never wakes the device on its own.
+     */
+    private final Runnable heartbeatRunnable = new Runnable() {
+        @Override
+        public void run() {
+            coverage.beat(System.currentTimeMillis(), tickScheduler.isScreenOn());
+            monitorHandler.postDelayed(this, CoverageTracker.HEARTBEAT_MS);
+        }
+    };
+
+    /**
+     * Lists the protected apps opened while the guard was down and alerts the
+     * owner if there were any. Monitor thread.
+     */
+    private void reportCoverageGap(CoverageTracker.Gap gap) {
+        UsageStatsManager usm = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
+        if (usm != null) {
+            CoverageTracker.analyzeGap(usm, gap, db.getProtectedPackages(),
+                    db.getPackageRuleMatcher());
+        }
+        coverage.recordGap(gap);
+        Log.w(TAG, "Guard was down for " + gap.getDurationMs() / 1000 + "s, protected opens: " + gap.protectedOpens);
+
+        if (gap.protectedOpens == 0) return;
+
+        Intent intent = new Intent().setClassName(this, MAIN_ACTIVITY);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 1, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        Notification notification = new NotificationCompat.Builder(this, HFSApplication.COVERAGE_CHANNEL_ID)
+                .setSmallIcon(R.drawable.hfs)
+                .setContentTitle("HFS Guard was offline for " + Math.max(1, gap.getDurationMs() / 60_000) + " min")
+                .setContentText("Opened unprotected: " + gap.describeApps(appLabelCache))
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true)
+                .build();
+
+        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager != null) {
+            notificationManager.notify(COVERAGE_NOTIFICATION_ID, notification);
+        }
+    }
+
+    /**
+     * Suspends polling while the screen is off and resumes it immediately on wake.
+     */
+    private final BroadcastReceiver screenStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (monitorRunnable == null) return;
+
+            if (Intent.ACTION_SCREEN_OFF.equals(intent.getAction())) {
+                tickScheduler.setScreenOn(false);
+                monitorHandler.removeCallbacks(monitorRunnable);
+                sessions.clearAll();
+                publishSessions();
+                coverage.beat(System.currentTimeMillis(), false);
+                MonitorStats.onSuspended();
+            } else {
+                boolean wasSuspended = !tickScheduler.isScreenOn();
+                tickScheduler.setScreenOn(true);
+                if (wasSuspended) {
+                    monitorHandler.removeCallbacks(monitorRunnable);
+                    monitorHandler.post(monitorRunnable);
+                    coverage.beat(System.currentTimeMillis(), true);
+                    MonitorStats.onWakeup();
+                }
+            }
+        }
+    };
+
+    /**
+     * Collects the packages that host the home screen and recents.
+     * An app launch is likely while one of them is in front.
+     */
+    private Set<String> resolveLauncherPackages() {
+        Set<String> packages = new HashSet<>();
+        Intent homeIntent = new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_HOME);
+        for (ResolveInfo info : getPackageManager().queryIntentActivities(homeIntent, 0)) {
+            packages.add(info.activityInfo.packageName);
+        }
+        packages.add(SYSTEM_UI_PACKAGE);
+        return packages;
     }
 
     @Override
@@ -73,6 +225,7 @@ public class AppMonitorService extends Service {
         startForeground(NOTIFICATION_ID, createSecurityNotification());
 
         // Start the monitoring loop
+        MonitorStats.onGuardStarted();
         startMonitoringLoop();
 
         return START_STICKY; 
@@ -83,7 +236,7 @@ public class AppMonitorService extends Service {
      * Redirects clicks to the Lock Screen to prevent security bypass.
      */
     private Notification createSecurityNotification() {
-        Intent lockIntent = new Intent(this, LockScreenActivity.class);
+        Intent lockIntent = new Intent().setClassName(this, LOCK_ACTIVITY);
         lockIntent.putExtra("TARGET_APP_NAME", "HFS Settings");
         lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
 
@@ -106,106 +259,402 @@ public class AppMonitorService extends Service {
 
     /**
      * Main detection loop.
+     * Each tick is decided by the MonitorEngine; the delay to the next one
+     * comes from its TickScheduler.
      */
     private void startMonitoringLoop() {
+        // onStartCommand can be delivered again; never run two loops side by side
+        if (monitorRunnable != null) {
+            monitorHandler.removeCallbacks(monitorRunnable);
+        }
+
         monitorRunnable = new Runnable() {
             @Override
             public void run() {
-                // 1. Skip check if the Lock Screen is already visible
-                if (isLockActive) {
-                    monitorHandler.postDelayed(this, MONITOR_TICK_MS);
-                    return;
+                MonitorStats.onTick();
+
+                long delay = engine.tick();
+                publishSessions();
+                if (delay != TickScheduler.SUSPENDED) {
+                    monitorHandler.postDelayed(this, delay);
                 }
+            }
+        };
+        monitorHandler.post(monitorRunnable);
+    }
 
-                String currentApp = getForegroundPackageName();
-                Set<String> protectedApps = db.getProtectedPackages();
+    /**
+     * Writes the open sessions to the state file when they changed; a plain
+     * counter compare on the ticks where nothing did.
+     */
+    private void publishSessions() {
+        int changes = sessions.getChangeCount();
+        if (stateFile == null || changes == publishedSessionChanges) return;
+        int count = sessions.copyOpenSessions(System.currentTimeMillis(), sessionNames, sessionExpiries);
+        stateFile.writeSessions(sessionNames, sessionExpiries, count);
+        publishedSessionChanges = changes;
+    }
 
-                // 2. RE-ARM LOGIC: If user leaves the app, reset the session instantly
-                if (!currentApp.equals(unlockedPackage) && !currentApp.equals(getPackageName())) {
-                    if (!unlockedPackage.isEmpty()) {
-                        Log.d(TAG, "User left protected area. Security Re-armed.");
-                        unlockedPackage = "";
-                    }
-                }
+    /**
+     * Identifies the current app on screen through the best available detector.
+     */
+    private final MonitorEngine.ForegroundSource foregroundSource = new MonitorEngine.ForegroundSource() {
+        @Override
+        public String getForegroundPackage(long now) {
+            return selectDetector().getForegroundPackage(now);
+        }
 
-                // 3. TRIGGER LOGIC
-                if (protectedApps.contains(currentApp)) {
-                    // Check if current session is valid
-                    boolean isSessionValid = currentApp.equals(unlockedPackage) && 
-                            (System.currentTimeMillis() - lastUnlockTimestamp < SESSION_GRACE_MS);
+        @Override
+        public String getForegroundClassName() {
+            return foregroundDetector.getForegroundClass();
+        }
 
-                    if (!isSessionValid) {
-                        Log.i(TAG, "Security Breach: Triggering System Lock for " + currentApp);
-                        triggerLockOverlay(currentApp);
-                    }
-                }
+        @Override
+        public long getForegroundSinceMs() {
+            return foregroundDetector.getForegroundSinceMs();
+        }
+
+        @Override
+        public VisibleWindowSet getVisibleWindows() {
+            return foregroundDetector.getVisibleWindows();
+        }
+    };
+
+    /**
+     * Protected set, policies and rules as cached by HFSDatabaseHelper.
+     */
+    private final MonitorEngine.PolicySource policySource = new MonitorEngine.PolicySource() {
+        @Override
+        public Set<String> getProtectedPackages() {
+            return db.getProtectedPackages();
+        }
 
-                monitorHandler.postDelayed(this, MONITOR_TICK_MS);
+        @Override
+        public Map<String, AppPolicy> getAppPolicies() {
+            return db.getAppPolicies();
+        }
+
+        @Override
+        public PackageRuleMatcher getPackageRuleMatcher() {
+            return db.getPackageRuleMatcher();
+        }
+
+        @Override
+        public Set<String> getActivityRules() {
+            return db.getActivityRules();
+        }
+    };
+
+    /**
+     * Carries out the engine's decisions on the real device.
+     */
+    private final MonitorEngine.Actions engineActions = new MonitorEngine.Actions() {
+        @Override
+        public void onLockTriggered(String packageName, long eventTs, long triggerTs) {
+            Log.i(TAG, "Security Breach: Triggering System Lock for " + packageName);
+            triggerLockOverlay(packageName, eventTs, triggerTs);
+        }
+
+        @Override
+        public void onLockActiveTick() {
+            if (isOverlayShowing()) {
+                dismissOverlayIfLeft();
+            } else {
+                releaseLockIfLeft();
             }
-        };
-        monitorHandler.post(monitorRunnable);
+        }
+
+        @Override
+        public void onWarmUpHint() {
+            // The lock screen runs in the UI process; warm it up there
+            sendBroadcast(new Intent(AppMonitorService.this, LockWarmupReceiver.class));
+        }
+    };
+
+    private String getForegroundPackageName() {
+        return foregroundSource.getForegroundPackage(System.currentTimeMillis());
     }
 
     /**
-     * Identifies the current app on screen.
+     * Prefers the push-based accessibility backend while it is connected and
+     * falls back to UsageStats polling otherwise. Re-checked on every tick, so
+     * enabling or disabling the accessibility service takes effect at once.
      */
-    private String getForegroundPackageName() {
-        UsageStatsManager usm = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
-        long time = System.currentTimeMillis();
-        UsageEvents events = usm.queryEvents(time - 5000, time);
-        UsageEvents.Event event = new UsageEvents.Event();
-        String currentPkg = "";
-
-        while (events.hasNextEvent()) {
-            events.getNextEvent(event);
-            if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                currentPkg = event.getPackageName();
+    private ForegroundDetector selectDetector() {
+        ForegroundDetector best = AccessibilityForegroundDetector.isAvailable() ? pushDetector : pollingDetector;
+        if (best != foregroundDetector) {
+            if (foregroundDetector != null) {
+                foregroundDetector.stop();
             }
+            best.start(this::onForegroundPushed);
+            foregroundDetector = best;
+            Log.i(TAG, "Foreground detector: " + (best.isPushBased() ? "accessibility" : "usage stats"));
+        }
+        return foregroundDetector;
+    }
+
+    /**
+     * Push backends report a switch as it happens; evaluate it now instead of on the next tick.
+     */
+    private void onForegroundPushed(String packageName) {
+        Runnable runnable = monitorRunnable;
+        if (runnable != null) {
+            monitorHandler.removeCallbacks(runnable);
+            monitorHandler.post(runnable);
         }
-        return currentPkg;
     }
 
     /**
      * Launches the Lock Screen Overlay.
+     * Uses the window overlay when enabled and permitted, otherwise
+     * LockScreenActivity. Called on the monitor thread; only the attach or the
+     * activity start is handed to the main thread. The overlay view is inflated
+     * on its first use, so a guard with overlay lock off never loads it.
      */
-    private void triggerLockOverlay(String packageName) {
+    private void triggerLockOverlay(String packageName, long eventTs, long triggerTs) {
         String appName = getAppNameFromPackage(packageName);
-        
-        Intent lockIntent = new Intent(this, LockScreenActivity.class);
+        boolean useOverlay = db.isOverlayLockEnabled() && PermissionHelper.canDrawOverlays(this);
+
+        Intent lockIntent = createLockIntent(packageName, appName);
+
+        // Time-to-lock instrumentation: completed by the lock screen on its first frame
+        lockIntent.putExtra("FOREGROUND_EVENT_TS", eventTs);
+        lockIntent.putExtra("LOCK_TRIGGER_TS", triggerTs);
+
+        mainHandler.post(() -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            if (!useOverlay) {
+                releaseOverlay();
+            } else if (lockOverlay == null) {
+                lockOverlay = new LockOverlayController(this, this);
+            }
+            if (useOverlay && lockOverlay.show(packageName, appName, eventTs, triggerTs)) {
+                lockTriggers.onLockCreated(System.currentTimeMillis());
+            } else if (!startActivitySafely(lockIntent)) {
+                lockTriggers.onLockClosed();
+            }
+            MonitorStats.onMainThreadWork(start);
+        });
+    }
+
+    private boolean isOverlayShowing() {
+        LockOverlayController overlay = lockOverlay;
+        return overlay != null && overlay.isShowing();
+    }
+
+    /**
+     * Drops the overlay view once overlay lock is turned off. A view still on
+     * screen is kept until the next trigger so the current lock is not lifted.
+     * Main thread.
+     */
+    private void releaseOverlay() {
+        if (lockOverlay != null && !lockOverlay.isShowing()) {
+            lockOverlay = null;
+        }
+    }
+
+    private Intent createLockIntent(String packageName, String appName) {
+        Intent lockIntent = new Intent().setClassName(this, LOCK_ACTIVITY);
         lockIntent.putExtra("TARGET_APP_PACKAGE", packageName);
         lockIntent.putExtra("TARGET_APP_NAME", appName);
-        
+        // Lets the lock screen report back before it could bind to the guard
+        lockIntent.putExtra(GuardClient.EXTRA_GUARD_MESSENGER, uiChannel);
         lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK 
                           | Intent.FLAG_ACTIVITY_SINGLE_TOP 
                           | Intent.FLAG_ACTIVITY_CLEAR_TOP
                           | Intent.FLAG_ACTIVITY_NO_USER_ACTION);
-        
+        return lockIntent;
+    }
+
+    private boolean startActivitySafely(Intent intent) {
         try {
-            startActivity(lockIntent);
+            startActivity(intent);
+            return true;
         } catch (Exception e) {
             Log.e(TAG, "Failed to start lock overlay: " + e.getMessage());
+            return false;
         }
     }
 
-    private String getAppNameFromPackage(String packageName) {
-        PackageManager pm = getPackageManager();
-        try {
-            ApplicationInfo ai = pm.getApplicationInfo(packageName, 0);
-            return (String) pm.getApplicationLabel(ai);
-        } catch (PackageManager.NameNotFoundException e) {
-            return packageName; 
+    /**
+     * Home and recents gestures still work above an overlay, and the overlay
+     * would keep covering whatever comes next. Detach it once the protected app
+     * is no longer in front; it stays armed for the next visit.
+     */
+    private void dismissOverlayIfLeft() {
+        String currentApp = getForegroundPackageName();
+        LockOverlayController overlay = lockOverlay;
+        if (overlay == null) return;
+        String target = overlay.getTargetPackage();
+        // A target still shown in another window (split-screen) has not been left
+        if (!currentApp.isEmpty() && !currentApp.equals(target)
+                && !engine.isExempt(engine.resolveForegroundId(currentApp))
+                && !foregroundDetector.getVisibleWindows().contains(target)) {
+            mainHandler.post(() -> {
+                if (overlay.isShowing() && target.equals(overlay.getTargetPackage())) {
+                    overlay.dismiss();
+                    lockTriggers.onLockClosed();
+                }
+            });
+        }
+    }
+
+    /**
+     * A lock screen counted as shown must still be in front. If it died
+     * without a close report, the protected app is back in front and the
+     * slot is released so the next tick locks it again.
+     */
+    private void releaseLockIfLeft() {
+        String currentApp = getForegroundPackageName();
+        boolean lockInFront = currentApp.isEmpty() || currentApp.equals(getPackageName());
+        if (lockTriggers.releaseIfLeft(lockInFront, System.currentTimeMillis())) {
+            Log.w(TAG, "Lock screen left the foreground without closing; now in front: " + currentApp);
         }
     }
 
+    @Override
+    public void onEscalateToActivity(String packageName, String appName, boolean intruderAttempt) {
+        Intent lockIntent = createLockIntent(packageName, appName);
+        lockIntent.putExtra("INTRUDER_ATTEMPT", intruderAttempt);
+        if (!startActivitySafely(lockIntent)) {
+            lockTriggers.onLockClosed();
+        }
+    }
+
+    @Override
+    public void onOverlayDismissed(String packageName) {
+        lockTriggers.onLockClosed();
+        Intent home = new Intent(Intent.ACTION_MAIN);
+        home.addCategory(Intent.CATEGORY_HOME);
+        home.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivitySafely(home);
+    }
+
+    private String getAppNameFromPackage(String packageName) {
+        return appLabelCache.getLabel(packageName);
+    }
+
     @Override
     public void onDestroy() {
+        if (lockOverlay != null) {
+            lockOverlay.dismiss();
+        }
         if (monitorHandler != null && monitorRunnable != null) {
             monitorHandler.removeCallbacks(monitorRunnable);
         }
+        if (monitorHandler != null) {
+            monitorHandler.removeCallbacks(heartbeatRunnable);
+        }
+        // Stopped on purpose: the time until the next start is not a coverage gap
+        coverage.onGuardStopped(System.currentTimeMillis());
+        unregisterReceiver(screenStateReceiver);
+        if (foregroundDetector != null) {
+            foregroundDetector.stop();
+        }
+        if (monitorThread != null) {
+            monitorThread.quitSafely();
+        }
+        Log.d(TAG, "Guard stopped: " + MonitorStats.summary());
         super.onDestroy();
     }
 
     @Nullable
     @Override
-    public IBinder onBind(Intent intent) { return null; }
+    public IBinder onBind(Intent intent) {
+        return uiChannel.getBinder();
+    }
+
+    /**
+     * Messages sent by GuardClient from the UI process.
+     */
+    private boolean handleUiMessage(Message message) {
+        Bundle data = message.getData();
+        switch (message.what) {
+            case GuardClient.MSG_CONFIG:
+                db.importGuardConfig(data);
+                if (!db.isOverlayLockEnabled()) {
+                    mainHandler.post(this::releaseOverlay);
+                }
+                break;
+            case GuardClient.MSG_LOCK_CREATED:
+                lockTriggers.onLockCreated(data.getLong(GuardClient.KEY_TIME));
+                watchLockReporter(data.getBinder(GuardClient.KEY_TOKEN));
+                break;
+            case GuardClient.MSG_FIRST_FRAME:
+                lockTriggers.onFirstFrame(data.getLong(GuardClient.KEY_TIME));
+                watchLockReporter(data.getBinder(GuardClient.KEY_TOKEN));
+                break;
+            case GuardClient.MSG_OWNER_VERIFIED:
+                String packageName = data.getString(GuardClient.KEY_PACKAGE);
+                if (packageName != null) {
+                    sessions.unlock(packageName);
+                    publishSessions();
+                    Log.d(TAG, "Owner Verified. Session open for: " + packageName);
+                }
+                unwatchLockReporter();
+                lockTriggers.onLockClosed();
+                // The lock screen stays up until the session is open here
+                reply(message.replyTo, Message.obtain(null, GuardClient.MSG_OWNER_VERIFIED_ACK));
+                break;
+            case GuardClient.MSG_LOCK_CLOSED:
+                unwatchLockReporter();
+                lockTriggers.onLockClosed();
+                break;
+            case GuardClient.MSG_GET_STATS:
+                replyStats(message.replyTo);
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Links to the process of the lock screen that reported, so a lock that
+     * dies with it frees the slot instead of blocking every later lock.
+     * Monitor thread.
+     */
+    private void watchLockReporter(IBinder token) {
+        if (token == null || token == lockReporter) return;
+        unwatchLockReporter();
+        try {
+            token.linkToDeath(lockReporterDeath, 0);
+            lockReporter = token;
+        } catch (RemoteException e) {
+            // Already dead: its lock is gone too
+            lockTriggers.onLockClosed();
+        }
+    }
+
+    private void unwatchLockReporter() {
+        if (lockReporter != null) {
+            lockReporter.unlinkToDeath(lockReporterDeath, 0);
+            lockReporter = null;
+        }
+    }
+
+    private final IBinder.DeathRecipient lockReporterDeath = () -> monitorHandler.post(() -> {
+        lockReporter = null;
+        if (!isOverlayShowing()) {
+            Log.w(TAG, "Lock screen process died; releasing the lock slot");
+            lockTriggers.onLockClosed();
+        }
+    });
+
+    private void replyStats(Messenger replyTo) {
+        Message reply = Message.obtain(null, GuardClient.MSG_STATS);
+        Bundle data = new Bundle();
+        data.putString(GuardClient.KEY_STATS, MonitorStats.summary());
+        reply.setData(data);
+        reply(replyTo, reply);
+    }
+
+    private void reply(Messenger replyTo, Message reply) {
+        if (replyTo == null) return;
+        try {
+            replyTo.send(reply);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Requester gone: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
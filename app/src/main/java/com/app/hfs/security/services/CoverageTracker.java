@@ -0,0 +1,345 @@
+package com.hfs.security.services;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.util.Log;
+
+import com.hfs.security.utils.AppLabelCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records how much of the time the Background Guard was actually running.
+ * The guard writes a heartbeat into a small memory-mapped file once a minute;
+ * a write is a plain memory store and the kernel flushes the page, so it
+ * survives the process being killed. When the service is recreated after a
+ * kill, the time since the last heartbeat is an unmonitored gap. The gap is
+ * replayed through UsageEvents to list the protected apps opened while
+ * nobody was watching.
+ * The guard process writes the file and the UI process reads it, so every
+ * access holds a lock on the file besides the per-process monitor.
+ */
+public class CoverageTracker {
+
+    private static final String TAG = "HFS_Coverage";
+    private static final String FILE_NAME = "guard_coverage.bin";
+
+    /** Heartbeat period; a gap is known to within this much. */
+    public static final long HEARTBEAT_MS = 60_000;
+    // Restarts faster than this are not worth a gap record
+    private static final long MIN_GAP_MS = 5_000;
+
+    // A zeroed (new) file has no state, so its first start is not a gap
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_RUNNING_SCREEN_OFF = 2;
+    private static final int STATE_STOPPED = 3;
+
+    // File layout: header followed by a ring of CAPACITY gap records
+    private static final int MAGIC = 0x48465343;
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_STATE = 4;
+    private static final int OFF_LAST_BEAT = 8;
+    private static final int OFF_MONITORED = 16;
+    private static final int OFF_GAP_TOTAL = 24;
+    private static final int OFF_NEXT = 32;
+    private static final int OFF_COUNT = 36;
+    private static final int HEADER_SIZE = 64;
+    private static final int CAPACITY = 32;
+    private static final int RECORD_SIZE = 128;
+    private static final int MAX_NAMES_BYTES = RECORD_SIZE - 22;
+    private static final int FILE_SIZE = HEADER_SIZE + CAPACITY * RECORD_SIZE;
+
+    private static CoverageTracker instance;
+
+    private MappedByteBuffer buffer;
+    // Kept open for the cross-process lock
+    private FileChannel channel;
+
+    /**
+     * A period during which the guard was not running although it should have been.
+     */
+    public static class Gap {
+        public long startMs;
+        public final long endMs;
+        // The screen was off at the last heartbeat; the gap only starts once it came back on
+        final boolean startedScreenOff;
+        public int protectedOpens;
+        // "package:opens" pairs, comma separated
+        public String packages = "";
+
+        Gap(long startMs, long endMs, boolean startedScreenOff) {
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.startedScreenOff = startedScreenOff;
+        }
+
+        public long getDurationMs() {
+            return endMs - startMs;
+        }
+
+        /**
+         * @return The protected apps opened during the gap, e.g. "WhatsApp x2, Gallery x1"
+         */
+        public String describeApps(AppLabelCache labels) {
+            if (packages.isEmpty()) return "";
+            StringBuilder sb = new StringBuilder();
+            for (String pair : packages.split(",")) {
+                int colon = pair.lastIndexOf(':');
+                if (colon <= 0) continue;
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(labels.getLabel(pair.substring(0, colon))).append(" x").append(pair.substring(colon + 1));
+            }
+            return sb.toString();
+        }
+    }
+
+    private CoverageTracker(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        try {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            // Both processes may open the file first; only one of them may set it up
+            try (FileLock lock = channel.lock()) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+                if (buffer.getInt(OFF_MAGIC) != MAGIC) {
+                    for (int i = 0; i < FILE_SIZE; i += 8) {
+                        buffer.putLong(i, 0);
+                    }
+                    buffer.putInt(OFF_MAGIC, MAGIC);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Coverage file unavailable: " + e.getMessage());
+            buffer = null;
+        }
+    }
+
+    private FileLock lock(boolean shared) throws IOException {
+        return channel.lock(0, FILE_SIZE, shared);
+    }
+
+    public static synchronized CoverageTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new CoverageTracker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Marks the guard as running.
+     *
+     * @param bootTimeMs Wall-clock time of the last boot; a powered-off device is not a gap
+     * @return The gap since the previous run if that run was killed, or null
+     */
+    public synchronized Gap onGuardStarted(long now, long bootTimeMs) {
+        if (buffer == null) return null;
+
+        try (FileLock lock = lock(false)) {
+            return markStarted(now, bootTimeMs);
+        } catch (IOException e) {
+            Log.e(TAG, "Coverage file not locked: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Gap markStarted(long now, long bootTimeMs) {
+        int state = buffer.getInt(OFF_STATE);
+        long lastBeat = buffer.getLong(OFF_LAST_BEAT);
+        Gap gap = null;
+        if ((state == STATE_RUNNING || state == STATE_RUNNING_SCREEN_OFF) && lastBeat > 0) {
+            boolean rebooted = bootTimeMs > lastBeat;
+            long start = rebooted ? bootTimeMs : lastBeat;
+            if (now - start >= MIN_GAP_MS) {
+                gap = new Gap(start, now, !rebooted && state == STATE_RUNNING_SCREEN_OFF);
+            }
+        }
+
+        buffer.putLong(OFF_LAST_BEAT, now);
+        buffer.putInt(OFF_STATE, STATE_RUNNING);
+        return gap;
+    }
+
+    /**
+     * Heartbeat from the monitor thread; also called on screen on/off.
+     */
+    public synchronized void beat(long now, boolean screenOn) {
+        if (buffer == null) return;
+
+        try (FileLock lock = lock(false)) {
+            writeBeat(now, screenOn);
+        } catch (IOException e) {
+            Log.e(TAG, "Coverage file not locked: " + e.getMessage());
+        }
+    }
+
+    private void writeBeat(long now, boolean screenOn) {
+        long lastBeat = buffer.getLong(OFF_LAST_BEAT);
+        if (lastBeat > 0 && now > lastBeat) {
+            buffer.putLong(OFF_MONITORED, buffer.getLong(OFF_MONITORED) + (now - lastBeat));
+        }
+        buffer.putLong(OFF_LAST_BEAT, now);
+        buffer.putInt(OFF_STATE, screenOn ? STATE_RUNNING : STATE_RUNNING_SCREEN_OFF);
+    }
+
+    /**
+     * The guard was stopped on purpose; the time until the next start is not a gap.
+     */
+    public synchronized void onGuardStopped(long now) {
+        if (buffer == null) return;
+
+        try (FileLock lock = lock(false)) {
+            writeBeat(now, true);
+            buffer.putInt(OFF_STATE, STATE_STOPPED);
+            buffer.force();
+        } catch (IOException e) {
+            Log.e(TAG, "Coverage file not locked: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the protected apps opened during a gap and narrows its start to
+     * the moment the screen came back on. Runs a UsageEvents query over the
+     * whole gap, so call it off the main thread.
+     *
+     * @param patterns Package rules of the guard, may be empty
+     */
+    public static void analyzeGap(UsageStatsManager usm, Gap gap, Set<String> protectedPackages,
+                                  PackageRuleMatcher patterns) {
+        UsageEvents events = usm.queryEvents(gap.startMs, gap.endMs);
+        if (events == null) return;
+
+        Map<String, Integer> opens = new LinkedHashMap<>();
+        UsageEvents.Event event = new UsageEvents.Event();
+        boolean screenOff = gap.startedScreenOff;
+        while (events.hasNextEvent()) {
+            events.getNextEvent(event);
+            int type = event.getEventType();
+            if (screenOff && (type == UsageEvents.Event.SCREEN_INTERACTIVE
+                    || type == UsageEvents.Event.ACTIVITY_RESUMED)) {
+                // Nothing could be opened while the screen stayed off
+                screenOff = false;
+                gap.startMs = event.getTimeStamp();
+            }
+
+            String packageName = event.getPackageName();
+            if (type != UsageEvents.Event.ACTIVITY_RESUMED || packageName == null) continue;
+
+            if (protectedPackages.contains(packageName) || patterns.matches(packageName)) {
+                Integer count = opens.get(packageName);
+                opens.put(packageName, count == null ? 1 : count + 1);
+            }
+        }
+
+        int total = 0;
+        StringBuilder names = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : opens.entrySet()) {
+            total += entry.getValue();
+            if (names.length() > 0) names.append(',');
+            names.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        gap.protectedOpens = total;
+        gap.packages = names.toString();
+        if (screenOff) {
+            // The screen never came back on before the guard did
+            gap.startMs = gap.endMs;
+        }
+    }
+
+    /**
+     * Adds an analysed gap to the log and to the coverage total.
+     * Gaps too short to matter once narrowed are dropped.
+     */
+    public synchronized void recordGap(Gap gap) {
+        if (buffer == null || gap.getDurationMs() < MIN_GAP_MS) return;
+
+        try (FileLock lock = lock(false)) {
+            writeGap(gap);
+        } catch (IOException e) {
+            Log.e(TAG, "Coverage file not locked: " + e.getMessage());
+        }
+    }
+
+    private void writeGap(Gap gap) {
+        int next = buffer.getInt(OFF_NEXT);
+        int count = buffer.getInt(OFF_COUNT);
+        if (next < 0 || next >= CAPACITY) next = 0;
+
+        byte[] names = gap.packages.getBytes(StandardCharsets.UTF_8);
+        int namesLength = Math.min(names.length, MAX_NAMES_BYTES);
+        int base = HEADER_SIZE + next * RECORD_SIZE;
+        buffer.putLong(base, gap.startMs);
+        buffer.putLong(base + 8, gap.endMs);
+        buffer.putInt(base + 16, gap.protectedOpens);
+        buffer.putShort(base + 20, (short) namesLength);
+        for (int i = 0; i < namesLength; i++) {
+            buffer.put(base + 22 + i, names[i]);
+        }
+
+        buffer.putLong(OFF_GAP_TOTAL, buffer.getLong(OFF_GAP_TOTAL) + gap.getDurationMs());
+        buffer.putInt(OFF_NEXT, (next + 1) % CAPACITY);
+        buffer.putInt(OFF_COUNT, Math.min(count + 1, CAPACITY));
+        // Rare and worth keeping across a power loss, unlike the heartbeat
+        buffer.force();
+    }
+
+    /**
+     * @return Share of the time the guard was running, 0-1, or -1 if nothing was tracked yet
+     */
+    public synchronized double getCoverage() {
+        if (buffer == null) return -1;
+
+        long monitored;
+        long gaps;
+        try (FileLock lock = lock(true)) {
+            monitored = buffer.getLong(OFF_MONITORED);
+            gaps = buffer.getLong(OFF_GAP_TOTAL);
+        } catch (IOException e) {
+            Log.e(TAG, "Coverage file not locked: " + e.getMessage());
+            return -1;
+        }
+        return monitored + gaps == 0 ? -1 : (double) monitored / (monitored + gaps);
+    }
+
+    /**
+     * @return The logged gaps, newest first
+     */
+    public synchronized List<Gap> getGaps() {
+        List<Gap> gaps = new ArrayList<>();
+        if (buffer == null) return gaps;
+
+        try (FileLock lock = lock(true)) {
+            readGaps(gaps);
+        } catch (IOException e) {
+            Log.e(TAG, "Coverage file not locked: " + e.getMessage());
+        }
+        return gaps;
+    }
+
+    private void readGaps(List<Gap> gaps) {
+        int next = buffer.getInt(OFF_NEXT);
+        int count = Math.min(buffer.getInt(OFF_COUNT), CAPACITY);
+        for (int i = 1; i <= count; i++) {
+            int base = HEADER_SIZE + Math.floorMod(next - i, CAPACITY) * RECORD_SIZE;
+            Gap gap = new Gap(buffer.getLong(base), buffer.getLong(base + 8), false);
+            gap.protectedOpens = buffer.getInt(base + 16);
+            int namesLength = Math.max(0, Math.min(buffer.getShort(base + 20), MAX_NAMES_BYTES));
+            byte[] names = new byte[namesLength];
+            for (int j = 0; j < namesLength; j++) {
+                names[j] = buffer.get(base + 22 + j);
+            }
+            gap.packages = new String(names, StandardCharsets.UTF_8);
+            gaps.add(gap);
+        }
+    }
+}
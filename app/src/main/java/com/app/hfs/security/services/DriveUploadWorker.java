@@ -15,6 +15,7 @@ import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveScopes;
 import com.hfs.security.utils.DriveHelper;
+import com.hfs.security.utils.SmsHelper;
 
 import java.io.File;
 import java.util.Collections;
@@ -28,11 +29,17 @@ import java.util.Collections;
  * 2. Authenticates with the saved Google Account.
  * 3. Uses DriveHelper to upload the file and generate a public link.
  * 4. Retries automatically if the network is unstable.
+ * 5. Texts the link as a follow-up when the task names the alert it belongs to.
  */
 public class DriveUploadWorker extends Worker {
 
     private static final String TAG = "HFS_DriveWorker";
 
+    public static final String KEY_FILE_PATH = "file_path";
+    // Optional: the intruder alert already sent, completed with the link
+    public static final String KEY_ALERT_APP = "alert_app";
+    public static final String KEY_ALERT_MAP_LINK = "alert_map_link";
+
     public DriveUploadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
     }
@@ -41,7 +48,7 @@ public class DriveUploadWorker extends Worker {
     @Override
     public Result doWork() {
         // 1. Retrieve the file path passed from LockScreenActivity
-        String filePath = getInputData().getString("file_path");
+        String filePath = getInputData().getString(KEY_FILE_PATH);
         if (filePath == null) {
             return Result.failure();
         }
@@ -82,13 +89,13 @@ public class DriveUploadWorker extends Worker {
 
             if (shareableLink != null) {
                 Log.i(TAG, "Background upload successful! Link: " + shareableLink);
-                
-                /*
-                 * Optional: Since this happens after the initial SMS (which likely said 'Pending'),
-                 * we could trigger a second SMS here with the actual link if required.
-                 * For now, we ensure the file is safe in the cloud.
-                 */
-                
+
+                // The alert itself went out without waiting for the evidence; send its link now
+                String alertApp = getInputData().getString(KEY_ALERT_APP);
+                if (alertApp != null) {
+                    SmsHelper.sendAlertSms(getApplicationContext(), alertApp,
+                            getInputData().getString(KEY_ALERT_MAP_LINK), "Security Breach", shareableLink);
+                }
                 return Result.success();
             } else {
                 return Result.retry();
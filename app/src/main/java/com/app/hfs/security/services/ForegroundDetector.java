@@ -0,0 +1,45 @@
+package com.hfs.security.services;
+
+/**
+ * Source of "which app is in front" for the Background Guard.
+ * Polling backends answer on every tick; push backends additionally report
+ * a change the moment it happens so the guard can react before the next tick.
+ */
+public interface ForegroundDetector {
+
+    /**
+     * Receives foreground changes from push-based detectors.
+     */
+    interface Listener {
+        void onForegroundChanged(String packageName);
+    }
+
+    void start(Listener listener);
+
+    void stop();
+
+    /**
+     * @param now Current wall-clock time in ms
+     * @return The package currently in front, or "" if unknown
+     */
+    String getForegroundPackage(long now);
+
+    /**
+     * @return Class name of the activity in front as of the last
+     *         {@link #getForegroundPackage} call, or "" if unknown
+     */
+    String getForegroundClass();
+
+    /**
+     * @return Wall-clock time at which the current foreground package came to the front, or 0
+     */
+    long getForegroundSinceMs();
+
+    /**
+     * @return Every package on screen as of the last {@link #getForegroundPackage}
+     *         call; empty if the backend only knows the focused one
+     */
+    VisibleWindowSet getVisibleWindows();
+
+    boolean isPushBased();
+}
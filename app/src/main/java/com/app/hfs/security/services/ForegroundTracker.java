@@ -0,0 +1,195 @@
+package com.hfs.security.services;
+
+import android.app.usage.UsageEvents;
+
+import java.util.Arrays;
+
+/**
+ * Incremental foreground tracker for the Background Guard.
+ * Keeps a cursor on the UsageEvents stream so that every tick only asks the
+ * system for the events recorded since the previous tick, instead of
+ * re-decoding the whole look-back window each time.
+ * UsageStatsService records events asynchronously with the time they
+ * happened, so an event can become visible after a query that covered its
+ * timestamp. Each query therefore reaches {@link #OVERLAP_MS} back, and the
+ * events already applied in that overlap are recognised and skipped.
+ * Besides the last resumed package it folds resume/pause/stop pairs into a
+ * VisibleWindowSet, so apps shown in split-screen or freeform windows next
+ * to the focused one are seen too.
+ */
+public class ForegroundTracker {
+
+    // Window scanned on the very first query, before any state is known
+    private static final long INITIAL_LOOKBACK_MS = 5000;
+
+    // How late an event may show up in the stream and still be applied
+    static final long OVERLAP_MS = 1500;
+
+    // Events remembered for the overlap; far more than a 1.5 s window holds
+    private static final int SEEN_CAPACITY = 64;
+
+    /**
+     * Where the events come from: UsageStatsManager on the device, a recorded
+     * stream in tests.
+     */
+    public interface EventSource {
+        /**
+         * Hands every event with {@code beginMs <= timestamp < endMs} to
+         * {@link ForegroundTracker#offer}, oldest first.
+         */
+        void queryEvents(long beginMs, long endMs, ForegroundTracker tracker);
+    }
+
+    private final VisibleWindowSet windows = new VisibleWindowSet();
+    private final boolean stopEventsReported;
+
+    // End of the last query; the next one starts OVERLAP_MS before it
+    private long cursorMs = 0;
+    private long queryBeginMs = 0;
+
+    // Ring of the events applied recently, to skip them when the overlap returns them again
+    private final long[] seenTimes = new long[SEEN_CAPACITY];
+    private final int[] seenTypes = new int[SEEN_CAPACITY];
+    private final String[] seenPackages = new String[SEEN_CAPACITY];
+    private final String[] seenClasses = new String[SEEN_CAPACITY];
+    private int seenNext = 0;
+
+    private String foregroundPackage = "";
+    private String foregroundClass = "";
+    private long foregroundSinceMs = 0;
+
+    /**
+     * @param stopEventsReported True on Android 10+, where ACTIVITY_STOPPED
+     *                           follows the pause of an activity that leaves the screen
+     */
+    public ForegroundTracker(boolean stopEventsReported) {
+        this.stopEventsReported = stopEventsReported;
+    }
+
+    /**
+     * Pulls the events recorded since the last call, and those that showed
+     * up late for the overlap before it, and folds them into the tracked state.
+     *
+     * @return The package currently in the foreground, or "" if unknown.
+     */
+    public String update(EventSource source, long now) {
+        // First run, or the wall clock moved backwards: re-seed the window
+        if (cursorMs == 0 || now < cursorMs) {
+            cursorMs = now - INITIAL_LOOKBACK_MS;
+            queryBeginMs = cursorMs;
+        } else {
+            queryBeginMs = cursorMs - OVERLAP_MS;
+        }
+        if (now > cursorMs) {
+            source.queryEvents(queryBeginMs, now, this);
+            cursorMs = now;
+        }
+        // Paused windows become visible by time alone, so refresh even without events
+        windows.refresh(now);
+        return foregroundPackage;
+    }
+
+    /**
+     * Takes one event of the current query. Events the overlap returns a
+     * second time are dropped; the rest are applied.
+     */
+    void offer(int eventType, String packageName, String className, long timestamp) {
+        if (packageName == null) return;
+        if (className == null) className = "";
+
+        if (timestamp < cursorMs && wasApplied(eventType, packageName, className, timestamp)) return;
+        seenTimes[seenNext] = timestamp;
+        seenTypes[seenNext] = eventType;
+        seenPackages[seenNext] = packageName;
+        seenClasses[seenNext] = className;
+        seenNext = (seenNext + 1) % SEEN_CAPACITY;
+
+        onEvent(eventType, packageName, className, timestamp);
+    }
+
+    private boolean wasApplied(int eventType, String packageName, String className, long timestamp) {
+        for (int i = 0; i < SEEN_CAPACITY; i++) {
+            if (seenTimes[i] == timestamp && seenTypes[i] == eventType && packageName.equals(seenPackages[i])
+                    && className.equals(seenClasses[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Applies a single usage event to the tracked state.
+     * Kept free of framework calls so recorded event streams can be replayed.
+     */
+    void onEvent(int eventType, String packageName, String className, long timestamp) {
+        switch (eventType) {
+            // ACTIVITY_RESUMED/PAUSED have the values of MOVE_TO_FOREGROUND/BACKGROUND before Q
+            case UsageEvents.Event.ACTIVITY_RESUMED:
+                // Keep the same instance while the package is on screen; the guard compares references
+                String tracked = windows.onResumed(packageName, className, timestamp);
+                // A resume that showed up late still counts as visible, but does not
+                // take the focus from an app resumed after it
+                if (timestamp < foregroundSinceMs) break;
+                if (!tracked.equals(foregroundPackage)) {
+                    foregroundPackage = tracked;
+                    foregroundSinceMs = timestamp;
+                }
+                foregroundClass = className;
+                break;
+            case UsageEvents.Event.ACTIVITY_PAUSED:
+                windows.onPaused(packageName, className, timestamp, stopEventsReported);
+                break;
+            case UsageEvents.Event.ACTIVITY_STOPPED:
+                windows.onStopped(packageName, className);
+                break;
+        }
+    }
+
+    public String getForegroundPackage() {
+        return foregroundPackage;
+    }
+
+    /**
+     * @return Class name of the last resumed activity, or "" if unknown
+     */
+    public String getForegroundClass() {
+        return foregroundClass;
+    }
+
+    /**
+     * @return Wall-clock timestamp of the event that brought the current package to the front
+     */
+    public long getForegroundSinceMs() {
+        return foregroundSinceMs;
+    }
+
+    /**
+     * @return Packages on screen as of the last update, the focused one included
+     */
+    public VisibleWindowSet getVisibleWindows() {
+        return windows;
+    }
+
+    /**
+     * @return Start of the window the last update queried
+     */
+    long getQueryBeginMs() {
+        return queryBeginMs;
+    }
+
+    /**
+     * Drops all state so the next update re-scans the initial window.
+     */
+    public void reset() {
+        cursorMs = 0;
+        queryBeginMs = 0;
+        Arrays.fill(seenPackages, null);
+        Arrays.fill(seenClasses, null);
+        Arrays.fill(seenTimes, 0);
+        seenNext = 0;
+        foregroundPackage = "";
+        foregroundClass = "";
+        foregroundSinceMs = 0;
+        windows.clear();
+    }
+}
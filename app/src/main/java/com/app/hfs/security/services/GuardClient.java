@@ -0,0 +1,250 @@
+package com.hfs.security.services;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.hfs.security.utils.HFSDatabaseHelper;
+
+/**
+ * UI-process end of the channel to the Background Guard, which runs in its
+ * own ":guard" process. Messages travel over the guard's Messenger (a Binder)
+ * and are handled in order on its monitor thread, between two ticks.
+ *
+ * The UI binds without creating the service, so the binding follows the
+ * guard's lifecycle: every (re)connection pushes the current configuration.
+ * A lock screen launched by the guard gets the Messenger in its intent and
+ * can report at once, before any binding completes. Lock reports carry a
+ * token Binder of this process, so the guard learns when a shown lock dies
+ * with it. An owner verification is kept until the guard acknowledges it,
+ * and sent again when the guard (re)connects meanwhile.
+ */
+public final class GuardClient {
+
+    private static final String TAG = "HFS_GuardClient";
+
+    static final int MSG_CONFIG = 1;
+    static final int MSG_LOCK_CREATED = 2;
+    static final int MSG_FIRST_FRAME = 3;
+    static final int MSG_OWNER_VERIFIED = 4;
+    static final int MSG_LOCK_CLOSED = 5;
+    static final int MSG_GET_STATS = 6;
+    static final int MSG_STATS = 7;
+    static final int MSG_OWNER_VERIFIED_ACK = 8;
+
+    static final String KEY_TIME = "time";
+    static final String KEY_PACKAGE = "package";
+    static final String KEY_STATS = "stats";
+    static final String KEY_TOKEN = "token";
+
+    // A verification older than this is not replayed: the owner may have left the device since
+    private static final long VERIFICATION_REPLAY_MS = 10_000;
+
+    /** Intent extra carrying the guard's Messenger into the lock screen. */
+    public static final String EXTRA_GUARD_MESSENGER = "GUARD_MESSENGER";
+
+    /**
+     * Receives the guard's counters, on the main thread.
+     */
+    public interface StatsCallback {
+        void onStats(String summary);
+    }
+
+    private static GuardClient instance;
+
+    private final Context context;
+    private final HFSDatabaseHelper db;
+    private volatile Messenger guard;
+    private boolean bound = false;
+
+    // Dies with the UI process; the guard links to it while a lock is up
+    private final Binder processToken = new Binder();
+
+    // Owner verification not acknowledged by the guard yet (main thread)
+    private Bundle pendingVerification = null;
+    private long pendingVerifiedAt = 0;
+    private Runnable pendingAck = null;
+    private final Messenger ackChannel = new Messenger(new Handler(Looper.getMainLooper(), this::handleAck));
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            guard = new Messenger(service);
+            pushConfig();
+            resendVerification();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // The binding survives; onServiceConnected runs again when the guard restarts
+            guard = null;
+        }
+    };
+
+    private GuardClient(Context context) {
+        this.context = context;
+        this.db = HFSDatabaseHelper.getInstance(context);
+    }
+
+    public static synchronized GuardClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new GuardClient(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Follows the guard and forwards configuration changes to it.
+     * UI process only; main thread.
+     */
+    public void start() {
+        if (bound) return;
+        db.seedSharedState();
+        db.setGuardConfigListener(this::pushConfig);
+        // No BIND_AUTO_CREATE: wait for the guard to be started instead of starting it
+        bound = context.bindService(new Intent(context, AppMonitorService.class), connection, 0);
+    }
+
+    /**
+     * Uses the Messenger a lock launch intent carries, if not connected yet.
+     */
+    public void attach(Intent intent) {
+        Messenger messenger = intent.getParcelableExtra(EXTRA_GUARD_MESSENGER);
+        if (messenger != null && guard == null) {
+            guard = messenger;
+        }
+    }
+
+    public void pushConfig() {
+        send(MSG_CONFIG, db.exportGuardConfig());
+    }
+
+    public void onLockCreated(long now) {
+        send(MSG_LOCK_CREATED, lockReport(now));
+    }
+
+    public void onFirstFrame(long now) {
+        send(MSG_FIRST_FRAME, lockReport(now));
+    }
+
+    /**
+     * Opens the session of a package and releases the lock slot in one step.
+     * Main thread.
+     *
+     * @param onAcknowledged Runs once the guard has opened the session; not
+     *                       at all if the guard stays unreachable
+     * @return false if the guard could not be reached yet
+     */
+    public boolean onOwnerVerified(String packageName, Runnable onAcknowledged) {
+        Bundle data = new Bundle();
+        data.putString(KEY_PACKAGE, packageName);
+        pendingVerification = data;
+        pendingVerifiedAt = SystemClock.elapsedRealtime();
+        pendingAck = onAcknowledged;
+        if (!sendVerification()) {
+            Log.w(TAG, "Guard not reachable; verification kept until it connects");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The caller of {@link #onOwnerVerified} is gone; the verification itself
+     * is still delivered.
+     */
+    public void dropVerificationCallback(Runnable onAcknowledged) {
+        if (pendingAck == onAcknowledged) {
+            pendingAck = null;
+        }
+    }
+
+    private boolean sendVerification() {
+        Message message = Message.obtain(null, MSG_OWNER_VERIFIED);
+        message.setData(pendingVerification);
+        message.replyTo = ackChannel;
+        return send(message);
+    }
+
+    private void resendVerification() {
+        if (pendingVerification == null) return;
+        if (SystemClock.elapsedRealtime() - pendingVerifiedAt > VERIFICATION_REPLAY_MS) {
+            clearVerification();
+            return;
+        }
+        sendVerification();
+    }
+
+    private boolean handleAck(Message message) {
+        if (message.what != MSG_OWNER_VERIFIED_ACK) return false;
+        Runnable ack = pendingAck;
+        clearVerification();
+        if (ack != null) ack.run();
+        return true;
+    }
+
+    private void clearVerification() {
+        pendingVerification = null;
+        pendingAck = null;
+    }
+
+    public void onLockClosed() {
+        send(MSG_LOCK_CLOSED, null);
+    }
+
+    /**
+     * Asks the guard for its MonitorStats summary.
+     *
+     * @return false if the guard is not running
+     */
+    public boolean requestStats(StatsCallback callback) {
+        Message message = Message.obtain(null, MSG_GET_STATS);
+        message.replyTo = new Messenger(new Handler(Looper.getMainLooper(), reply -> {
+            callback.onStats(reply.getData().getString(KEY_STATS, ""));
+            return true;
+        }));
+        return send(message);
+    }
+
+    private Bundle lockReport(long now) {
+        Bundle data = new Bundle();
+        data.putLong(KEY_TIME, now);
+        data.putBinder(KEY_TOKEN, processToken);
+        return data;
+    }
+
+    private boolean send(int what, Bundle data) {
+        Message message = Message.obtain(null, what);
+        if (data != null) {
+            message.setData(data);
+        }
+        return send(message);
+    }
+
+    /**
+     * Messages for a guard that is not running are dropped: it rebuilds its
+     * state from the configuration pushed on the next connection.
+     */
+    private boolean send(Message message) {
+        Messenger target = guard;
+        if (target == null) return false;
+        try {
+            target.send(message);
+            return true;
+        } catch (RemoteException e) {
+            Log.w(TAG, "Guard process gone: " + e.getMessage());
+            guard = null;
+            return false;
+        }
+    }
+}
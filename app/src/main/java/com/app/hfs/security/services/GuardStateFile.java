@@ -0,0 +1,404 @@
+package com.hfs.security.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary state shared by the UI and ":guard" processes through one
+ * memory-mapped file: the protected packages, the feature toggles and the
+ * open unlock sessions. Unlike SharedPreferences there is no XML to parse on
+ * first access and no full rewrite per change; a reader whose data did not
+ * change pays a single 8-byte load.
+ *
+ * The file has two sections, each with exactly one writing process: the UI
+ * writes the configuration, the guard the sessions. A section is a seqlock
+ * over two slots. The writer fills the inactive slot (generation, length,
+ * payload, CRC), then bumps the sequence to odd, flips the active slot and
+ * bumps it back to even. Readers retry while the sequence is odd or moved.
+ *
+ * ByteBuffer accesses carry no ordering guarantees, so the CRC, not the
+ * sequence alone, decides whether a slot is complete. A writer killed mid-
+ * write leaves the previous slot intact: either the old or the new state is
+ * read, never a mix. A sequence left odd by a killed writer is repaired the
+ * next time the file is opened, and readers meanwhile take the valid slot
+ * with the highest generation. Opening the file (format and repair) holds a
+ * lock on it, so two processes starting together cannot format it twice.
+ *
+ * Package names are stored, not PackageRegistry IDs: those are handed out per
+ * process. Plain Java, so unit tests can run it over a heap buffer.
+ */
+public class GuardStateFile {
+
+    public static final String FILE_NAME = "guard_state.bin";
+
+    public static final int TOGGLE_OVERLAY_LOCK = 1;
+    public static final int TOGGLE_STEALTH_MODE = 1 << 1;
+    public static final int TOGGLE_FAKE_GALLERY = 1 << 2;
+    public static final int TOGGLE_DRIVE_SYNC = 1 << 3;
+    // The protected set did not fit; readers must use their own copy
+    private static final int FLAG_PACKAGES_TRUNCATED = 1 << 31;
+
+    private static final int MAGIC = 0x48465347;
+    private static final int LAYOUT_VERSION = 1;
+
+    // Header: magic, layout version, then one 16-byte record per section
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_LAYOUT = 4;
+    private static final int HEADER_SIZE = 64;
+    private static final int SECTION_SEQ = 0;
+    private static final int SECTION_ACTIVE = 8;
+
+    // Slot: generation, payload length, CRC of all three, payload
+    private static final int SLOT_GENERATION = 0;
+    private static final int SLOT_LENGTH = 8;
+    private static final int SLOT_CRC = 12;
+    private static final int SLOT_PAYLOAD = 16;
+
+    static final int CONFIG_SLOT_SIZE = 32 * 1024;
+    static final int SESSION_SLOT_SIZE = 4 * 1024;
+    static final int FILE_SIZE = HEADER_SIZE + 2 * CONFIG_SLOT_SIZE + 2 * SESSION_SLOT_SIZE;
+
+    private static final Section CONFIG = new Section(16, HEADER_SIZE, CONFIG_SLOT_SIZE);
+    private static final Section SESSIONS = new Section(32, HEADER_SIZE + 2 * CONFIG_SLOT_SIZE, SESSION_SLOT_SIZE);
+
+    // Reader retries before falling back to the newest valid slot
+    private static final int MAX_READ_ATTEMPTS = 64;
+
+    private static GuardStateFile instance;
+
+    private final ByteBuffer buffer;
+
+    // Decoded configuration, valid for configSeq
+    private long configSeq = -1;
+    private Set<String> protectedPackages = null;
+    private int toggles = 0;
+
+    // Decoded sessions, valid for sessionSeq
+    private long sessionSeq = -1;
+    private String[] sessionNames = new String[0];
+    private long[] sessionExpiries = new long[0];
+
+    private final CRC32 crc = new CRC32();
+    private byte[] scratch = new byte[SESSION_SLOT_SIZE];
+
+    private static final class Section {
+        final int header;
+        final int firstSlot;
+        final int slotSize;
+
+        Section(int header, int firstSlot, int slotSize) {
+            this.header = header;
+            this.firstSlot = firstSlot;
+            this.slotSize = slotSize;
+        }
+
+        int slot(int index) {
+            return firstSlot + index * slotSize;
+        }
+    }
+
+    /**
+     * Uses an existing buffer of at least {@link #FILE_SIZE} bytes, formatting
+     * it if it holds no state of this layout.
+     */
+    GuardStateFile(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(OFF_MAGIC) != MAGIC || buffer.getInt(OFF_LAYOUT) != LAYOUT_VERSION) {
+            for (int i = 0; i < FILE_SIZE; i += 8) {
+                buffer.putLong(i, 0);
+            }
+            buffer.putInt(OFF_LAYOUT, LAYOUT_VERSION);
+            buffer.putInt(OFF_MAGIC, MAGIC);
+        }
+        repair(CONFIG);
+        repair(SESSIONS);
+    }
+
+    /**
+     * @param filesDir The app's files directory, shared by both processes
+     * @return The state file, or null if it cannot be mapped
+     */
+    public static synchronized GuardStateFile getInstance(File filesDir) {
+        if (instance == null) {
+            try (RandomAccessFile raf = new RandomAccessFile(new File(filesDir, FILE_NAME), "rw");
+                 FileLock lock = raf.getChannel().lock()) {
+                // The mapping stays valid after the channel is closed
+                instance = new GuardStateFile(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return instance;
+    }
+
+    // --- CONFIGURATION (written by the UI process) ---
+
+    /**
+     * Publishes the protected packages and toggles. A set too large for the
+     * slot is published as truncated, so readers fall back to their own copy.
+     */
+    public synchronized void writeConfig(Collection<String> packages, int toggleBits) {
+        int size = 8;
+        for (String packageName : packages) {
+            size += 2 + utf8Length(packageName);
+        }
+        boolean truncated = size > CONFIG_SLOT_SIZE - SLOT_PAYLOAD;
+
+        ByteBuffer payload = ByteBuffer.allocate(truncated ? 8 : size);
+        payload.putInt(truncated ? toggleBits | FLAG_PACKAGES_TRUNCATED : toggleBits);
+        payload.putInt(truncated ? 0 : packages.size());
+        if (!truncated) {
+            for (String packageName : packages) {
+                byte[] name = packageName.getBytes(StandardCharsets.UTF_8);
+                payload.putShort((short) name.length);
+                payload.put(name);
+            }
+        }
+        write(CONFIG, payload.array(), payload.position());
+        // Rare, and worth keeping across a power loss
+        force();
+    }
+
+    /**
+     * @return True once a configuration was published
+     */
+    public synchronized boolean hasConfig() {
+        refreshConfig();
+        return configSeq > 0;
+    }
+
+    /**
+     * @return The published protected set (immutable, the same instance until it
+     *         changes), or null if none was published or it did not fit
+     */
+    public synchronized Set<String> getProtectedPackages() {
+        refreshConfig();
+        return protectedPackages;
+    }
+
+    public synchronized int getToggles() {
+        refreshConfig();
+        return toggles & ~FLAG_PACKAGES_TRUNCATED;
+    }
+
+    private void refreshConfig() {
+        long seq = buffer.getLong(CONFIG.header + SECTION_SEQ);
+        if (seq == configSeq) return;
+
+        int slot = readSlot(CONFIG);
+        if (slot < 0) {
+            configSeq = 0;
+            protectedPackages = null;
+            toggles = 0;
+            return;
+        }
+        ByteBuffer payload = ByteBuffer.wrap(scratch, 0, buffer.getInt(slot + SLOT_LENGTH));
+        int bits = payload.getInt();
+        int count = payload.getInt();
+        Set<String> packages = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int length = payload.getShort();
+            packages.add(new String(scratch, payload.position(), length, StandardCharsets.UTF_8));
+            payload.position(payload.position() + length);
+        }
+
+        toggles = bits;
+        protectedPackages = (bits & FLAG_PACKAGES_TRUNCATED) != 0 ? null : Collections.unmodifiableSet(packages);
+        configSeq = Math.max(1, seq);
+    }
+
+    // --- SESSIONS (written by the guard) ---
+
+    /**
+     * Publishes the open sessions as package name and wall-clock expiry pairs.
+     * Sessions beyond the slot capacity are left out; readers then see them
+     * as locked, which fails safe.
+     */
+    public synchronized void writeSessions(String[] names, long[] expiries, int count) {
+        ByteBuffer payload = ByteBuffer.allocate(SESSION_SLOT_SIZE - SLOT_PAYLOAD);
+        payload.putInt(0);
+        int written = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+            if (payload.remaining() < 10 + name.length) break;
+            payload.putLong(expiries[i]);
+            payload.putShort((short) name.length);
+            payload.put(name);
+            written++;
+        }
+        payload.putInt(0, written);
+        write(SESSIONS, payload.array(), payload.position());
+    }
+
+    /**
+     * @return True if the guard has an unlock session for the package open at {@code now}
+     */
+    public synchronized boolean isSessionOpen(String packageName, long now) {
+        refreshSessions();
+        for (int i = 0; i < sessionNames.length; i++) {
+            if (sessionNames[i].equals(packageName)) return sessionExpiries[i] > now;
+        }
+        return false;
+    }
+
+    private void refreshSessions() {
+        long seq = buffer.getLong(SESSIONS.header + SECTION_SEQ);
+        if (seq == sessionSeq) return;
+
+        int slot = readSlot(SESSIONS);
+        int count = 0;
+        ByteBuffer payload = null;
+        if (slot >= 0) {
+            payload = ByteBuffer.wrap(scratch, 0, buffer.getInt(slot + SLOT_LENGTH));
+            count = payload.getInt();
+        }
+        String[] names = new String[count];
+        long[] expiries = new long[count];
+        for (int i = 0; i < count; i++) {
+            expiries[i] = payload.getLong();
+            int length = payload.getShort();
+            names[i] = new String(scratch, payload.position(), length, StandardCharsets.UTF_8);
+            payload.position(payload.position() + length);
+        }
+        sessionNames = names;
+        sessionExpiries = expiries;
+        sessionSeq = seq;
+    }
+
+    // --- SEQLOCK ---
+
+    private void write(Section section, byte[] payload, int length) {
+        long seq = buffer.getLong(section.header + SECTION_SEQ);
+        int active = buffer.getInt(section.header + SECTION_ACTIVE);
+        int target = section.slot(1 - active);
+        long generation = buffer.getLong(section.slot(active) + SLOT_GENERATION) + 1;
+
+        // 1. Fill the inactive slot; readers are still on the active one
+        for (int i = 0; i < length; i++) {
+            store(target + SLOT_PAYLOAD + i, payload[i]);
+        }
+        storeLong(target + SLOT_GENERATION, generation);
+        storeInt(target + SLOT_LENGTH, length);
+        storeInt(target + SLOT_CRC, checksum(generation, length, payload, 0));
+
+        // 2. Publish it
+        storeLong(section.header + SECTION_SEQ, seq + 1);
+        storeInt(section.header + SECTION_ACTIVE, 1 - active);
+        storeLong(section.header + SECTION_SEQ, seq + 2);
+    }
+
+    /**
+     * Copies a consistent slot payload into {@link #scratch}.
+     *
+     * @return Offset of the slot read, or -1 if the section holds no valid slot
+     */
+    private int readSlot(Section section) {
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            long before = buffer.getLong(section.header + SECTION_SEQ);
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            int slot = section.slot(buffer.getInt(section.header + SECTION_ACTIVE) & 1);
+            boolean valid = copyIfValid(section, slot);
+            if (valid && buffer.getLong(section.header + SECTION_SEQ) == before) return slot;
+        }
+        // The writer was killed mid-publish or keeps rewriting: take the newest complete slot
+        return newestValidSlot(section);
+    }
+
+    private int newestValidSlot(Section section) {
+        int best = -1;
+        long bestGeneration = 0;
+        for (int index = 0; index < 2; index++) {
+            int slot = section.slot(index);
+            long generation = buffer.getLong(slot + SLOT_GENERATION);
+            if (generation > bestGeneration && copyIfValid(section, slot)) {
+                best = slot;
+                bestGeneration = generation;
+            }
+        }
+        return best >= 0 && copyIfValid(section, best) ? best : -1;
+    }
+
+    /**
+     * Copies the slot's payload into {@link #scratch} and checks its CRC.
+     * An empty (never written) slot is not valid.
+     */
+    private boolean copyIfValid(Section section, int slot) {
+        long generation = buffer.getLong(slot + SLOT_GENERATION);
+        int length = buffer.getInt(slot + SLOT_LENGTH);
+        int expected = buffer.getInt(slot + SLOT_CRC);
+        if (generation <= 0 || length < 0 || length > section.slotSize - SLOT_PAYLOAD) return false;
+
+        if (scratch.length < length) {
+            scratch = new byte[section.slotSize];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(slot + SLOT_PAYLOAD + i);
+        }
+        return checksum(generation, length, scratch, 0) == expected;
+    }
+
+    private int checksum(long generation, int length, byte[] payload, int offset) {
+        crc.reset();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (generation >>> shift));
+        }
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            crc.update(length >>> shift);
+        }
+        crc.update(payload, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A sequence left odd means its writer was killed while publishing;
+     * settle it on the newest complete slot. If the writer is in fact alive
+     * and mid-publish, its slot is already complete and both end up on it.
+     */
+    private void repair(Section section) {
+        long seq = buffer.getLong(section.header + SECTION_SEQ);
+        if ((seq & 1) == 0) return;
+        int newest = newestValidSlot(section);
+        if (newest >= 0) {
+            buffer.putInt(section.header + SECTION_ACTIVE, (newest - section.firstSlot) / section.slotSize);
+        }
+        buffer.putLong(section.header + SECTION_SEQ, seq + 1);
+    }
+
+    // Every store of a write goes through these; tests override them to kill the writer midway
+
+    void store(int offset, byte value) {
+        buffer.put(offset, value);
+    }
+
+    void storeInt(int offset, int value) {
+        buffer.putInt(offset, value);
+    }
+
+    void storeLong(int offset, long value) {
+        buffer.putLong(offset, value);
+    }
+
+    private void force() {
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,110 @@
+package com.hfs.security.services;
+
+import android.accessibilityservice.AccessibilityService;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.accessibility.AccessibilityEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Optional push source for foreground detection.
+ * When enabled by the user, window changes reach the guard immediately
+ * instead of waiting for the next UsageStats poll.
+ */
+public class HFSAccessibilityService extends AccessibilityService {
+
+    private static final String TAG = "HFS_Accessibility";
+
+    private static volatile boolean connected = false;
+    private static volatile String foregroundPackage = "";
+    private static volatile String foregroundClass = "";
+    private static volatile long foregroundSinceMs = 0;
+    private static volatile ForegroundDetector.Listener listener;
+
+    // Window classes seen so far -> whether they are real activities (main thread only)
+    private final Map<String, Boolean> activityClassCache = new HashMap<>();
+
+    public static boolean isConnected() {
+        return connected;
+    }
+
+    public static String getForegroundPackage() {
+        return foregroundPackage;
+    }
+
+    public static String getForegroundClass() {
+        return foregroundClass;
+    }
+
+    public static long getForegroundSinceMs() {
+        return foregroundSinceMs;
+    }
+
+    static void setForegroundListener(ForegroundDetector.Listener foregroundListener) {
+        listener = foregroundListener;
+    }
+
+    @Override
+    protected void onServiceConnected() {
+        super.onServiceConnected();
+        connected = true;
+        Log.i(TAG, "Instant foreground detection connected");
+    }
+
+    @Override
+    public void onAccessibilityEvent(AccessibilityEvent event) {
+        if (event.getEventType() != AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) return;
+        if (event.getPackageName() == null || event.getClassName() == null) return;
+
+        String packageName = event.getPackageName().toString();
+        String className = event.getClassName().toString();
+
+        // Dialogs, toasts and keyboards also change window state; only activities move the foreground
+        if (!isActivity(packageName, className)) return;
+        if (className.equals(foregroundClass) && packageName.equals(foregroundPackage)) return;
+
+        // Activity changes inside the same app are reported too, for activity-level rules
+        if (!packageName.equals(foregroundPackage)) {
+            // Event time is on the uptime clock; convert it to wall-clock like UsageEvents
+            foregroundSinceMs = System.currentTimeMillis() - (SystemClock.uptimeMillis() - event.getEventTime());
+            foregroundPackage = packageName;
+        }
+        foregroundClass = className;
+        ForegroundDetector.Listener current = listener;
+        if (current != null) {
+            current.onForegroundChanged(packageName);
+        }
+    }
+
+    private boolean isActivity(String packageName, String className) {
+        String key = packageName + "/" + className;
+        Boolean cached = activityClassCache.get(key);
+        if (cached == null) {
+            try {
+                getPackageManager().getActivityInfo(new ComponentName(packageName, className), 0);
+                cached = true;
+            } catch (PackageManager.NameNotFoundException e) {
+                cached = false;
+            }
+            activityClassCache.put(key, cached);
+        }
+        return cached;
+    }
+
+    @Override
+    public void onInterrupt() {}
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        connected = false;
+        foregroundPackage = "";
+        foregroundClass = "";
+        Log.i(TAG, "Instant foreground detection disconnected");
+        return super.onUnbind(intent);
+    }
+}
@@ -0,0 +1,165 @@
+package com.hfs.security.services;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.KeyEvent;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+
+import com.hfs.security.R;
+import com.hfs.security.databinding.ViewLockOverlayBinding;
+import com.hfs.security.utils.HFSDatabaseHelper;
+import com.hfs.security.utils.LatencyRecorder;
+
+/**
+ * Window-overlay lock mode.
+ * Keeps a pre-inflated lock view and attaches it with WindowManager on trigger,
+ * avoiding the task switch, theme and layout inflation of a full activity launch.
+ * Biometric and system credential flows are handed over to LockScreenActivity.
+ * All methods must be called on the main thread, except {@link #isShowing()}
+ * and {@link #getTargetPackage()}.
+ */
+public class LockOverlayController {
+
+    private static final String TAG = "HFS_LockOverlay";
+
+    /**
+     * Receives the outcomes the overlay cannot handle on its own.
+     */
+    public interface Listener {
+        /**
+         * The overlay needs LockScreenActivity, either for system authentication
+         * or to record an intruder after a wrong PIN.
+         */
+        void onEscalateToActivity(String packageName, String appName, boolean intruderAttempt);
+
+        /**
+         * The user backed out of the protected app without unlocking.
+         */
+        void onOverlayDismissed(String packageName);
+    }
+
+    private final Context context;
+    private final WindowManager windowManager;
+    private final HFSDatabaseHelper db;
+    private final Listener listener;
+    private final ViewLockOverlayBinding binding;
+    private final WindowManager.LayoutParams layoutParams;
+
+    private volatile boolean showing = false;
+    private volatile String targetPackage = "";
+    private String targetAppName = "";
+
+    public LockOverlayController(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        this.windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        this.db = HFSDatabaseHelper.getInstance(context);
+
+        // Inflate once up front so a trigger only has to attach the view
+        Context themed = new ContextThemeWrapper(context, R.style.Theme_HFS_NoActionBar);
+        binding = ViewLockOverlayBinding.inflate(LayoutInflater.from(themed));
+
+        layoutParams = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY,
+                WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN,
+                PixelFormat.OPAQUE);
+        layoutParams.softInputMode = WindowManager.LayoutParams.SOFT_INPUT_ADJUST_RESIZE;
+
+        binding.btnOverlayUnlockPin.setOnClickListener(v -> checkMpin());
+        binding.btnOverlaySystemUnlock.setOnClickListener(v -> escalate(false));
+
+        // Back leaves the protected app instead of revealing it
+        View.OnKeyListener backListener = (v, keyCode, event) -> {
+            if (keyCode == KeyEvent.KEYCODE_BACK && event.getAction() == KeyEvent.ACTION_UP) {
+                String packageName = targetPackage;
+                dismiss();
+                listener.onOverlayDismissed(packageName);
+                return true;
+            }
+            return false;
+        };
+        binding.getRoot().setOnKeyListener(backListener);
+        binding.etOverlayPin.setOnKeyListener(backListener);
+    }
+
+    public boolean isShowing() {
+        return showing;
+    }
+
+    public String getTargetPackage() {
+        return targetPackage;
+    }
+
+    /**
+     * Attaches the pre-inflated lock view above the protected app.
+     *
+     * @return false if the view could not be attached and the caller should fall back to the activity
+     */
+    public boolean show(String packageName, String appName, long eventTs, long triggerTs) {
+        targetPackage = packageName;
+        targetAppName = appName;
+        binding.tvOverlayAppName.setText(appName + " is protected by HFS. Authenticate to proceed.");
+        binding.etOverlayPin.setText("");
+
+        if (showing) return true;
+
+        View root = binding.getRoot();
+        try {
+            windowManager.addView(root, layoutParams);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Overlay attach failed: " + e.getMessage());
+            return false;
+        }
+        showing = true;
+
+        // The first traversal runs on a later frame, so the listener still sees the first draw
+        root.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                root.getViewTreeObserver().removeOnPreDrawListener(this);
+                LockTriggerCoordinator.getInstance().onFirstFrame(System.currentTimeMillis());
+                LatencyRecorder.record(context, packageName, eventTs, triggerTs,
+                        System.currentTimeMillis(), LatencyRecorder.MODE_OVERLAY);
+                return true;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Detaches the lock view if it is attached.
+     */
+    public void dismiss() {
+        if (!showing) return;
+        showing = false;
+        try {
+            windowManager.removeViewImmediate(binding.getRoot());
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Overlay detach failed: " + e.getMessage());
+        }
+    }
+
+    private void checkMpin() {
+        String pin = binding.etOverlayPin.getText() == null ? "" : binding.etOverlayPin.getText().toString();
+        if (pin.equals(db.getMasterPin())) {
+            UnlockSessionTable.getInstance().unlock(targetPackage);
+            LockTriggerCoordinator.getInstance().onLockClosed();
+            dismiss();
+        } else {
+            escalate(true);
+        }
+    }
+
+    private void escalate(boolean intruderAttempt) {
+        // The activity takes over the lock; keep the lock slot claimed until it is up
+        listener.onEscalateToActivity(targetPackage, targetAppName, intruderAttempt);
+        dismiss();
+    }
+}
@@ -0,0 +1,162 @@
+package com.hfs.security.services;
+
+import java.util.Locale;
+
+/**
+ * Single-flight guard for lock launches.
+ * A trigger claims the lock slot and the launch is tracked until the lock UI
+ * draws its first frame. While a launch is in flight or a lock is visible,
+ * further triggers are refused. Those refused during the launch are counted
+ * as suppressed launches: coalesced into the pending launch for the same
+ * package, or blocked until the slot is free for another one. A launch that
+ * never produced a lock UI gives the slot back after {@link #LAUNCH_TIMEOUT_MS}.
+ * The lock screen runs in another process than the guard, so a shown lock
+ * may also vanish without a close report; the host then releases the slot
+ * through {@link #releaseIfLeft}.
+ * Plain Java so the TraceSimulator can run it off-device.
+ */
+public final class LockTriggerCoordinator {
+
+    static final long LAUNCH_TIMEOUT_MS = 3000;
+
+    // How long a shown lock may be out of the foreground before its slot is reclaimed
+    static final long SHOWN_SETTLE_MS = 2000;
+
+    private static final int IDLE = 0;
+    private static final int LAUNCHING = 1;
+    private static final int SHOWN = 2;
+
+    private static final LockTriggerCoordinator instance = new LockTriggerCoordinator();
+
+    // Slot state (guarded by this)
+    private int state = IDLE;
+    private String pendingPackage = "";
+    private long launchStartedAt = 0;
+    private long shownSeenAt = 0;
+
+    // Counters (guarded by this)
+    private long triggers = 0;
+    private long coalesced = 0;
+    private long blocked = 0;
+    private long timeouts = 0;
+    private long orphans = 0;
+    private long launchMsSum = 0;
+    private long launchCount = 0;
+
+    // The app uses the shared instance; the simulator creates its own
+    LockTriggerCoordinator() {}
+
+    public static LockTriggerCoordinator getInstance() {
+        return instance;
+    }
+
+    /**
+     * Claims the lock slot for a package.
+     *
+     * @return true if the caller must launch a lock UI now, false if the request was suppressed
+     */
+    public synchronized boolean tryTrigger(String packageName, long now) {
+        expireLaunch(now);
+        if (state == SHOWN) {
+            return false;
+        }
+        if (state == LAUNCHING) {
+            if (pendingPackage.equals(packageName)) {
+                coalesced++;
+            } else {
+                blocked++;
+            }
+            return false;
+        }
+        state = LAUNCHING;
+        pendingPackage = packageName;
+        launchStartedAt = now;
+        triggers++;
+        return true;
+    }
+
+    /**
+     * A lock UI was created, whoever launched it. Claims the slot if it was
+     * free and restarts the launch timeout.
+     */
+    public synchronized void onLockCreated(long now) {
+        if (state == IDLE) {
+            pendingPackage = "";
+        }
+        if (state != SHOWN) {
+            state = LAUNCHING;
+            launchStartedAt = now;
+        }
+    }
+
+    /**
+     * The lock UI drew its first frame; the launch is complete.
+     */
+    public synchronized void onFirstFrame(long now) {
+        if (state == LAUNCHING && launchStartedAt > 0) {
+            launchMsSum += now - launchStartedAt;
+            launchCount++;
+        }
+        state = SHOWN;
+        shownSeenAt = now;
+    }
+
+    /**
+     * Frees the slot when the lock UI goes away or its launch failed.
+     */
+    public synchronized void onLockClosed() {
+        state = IDLE;
+        pendingPackage = "";
+    }
+
+    /**
+     * Checks a shown lock against what is in front. A lock UI that has not
+     * been in front for {@link #SHOWN_SETTLE_MS} is gone (its process died or
+     * its close report was lost) and frees the slot.
+     *
+     * @param lockInFront true if the foreground is the lock UI, or unknown
+     * @return true if the slot was released
+     */
+    public synchronized boolean releaseIfLeft(boolean lockInFront, long now) {
+        if (state != SHOWN) return false;
+        if (lockInFront) {
+            shownSeenAt = now;
+            return false;
+        }
+        if (now - shownSeenAt <= SHOWN_SETTLE_MS) return false;
+        orphans++;
+        state = IDLE;
+        pendingPackage = "";
+        return true;
+    }
+
+    /**
+     * @return true while a launch is in flight or a lock UI is visible
+     */
+    public synchronized boolean isActive(long now) {
+        expireLaunch(now);
+        return state != IDLE;
+    }
+
+    /**
+     * @return Triggers dropped because a lock was already in flight or visible
+     */
+    public synchronized long getSuppressed() {
+        return coalesced + blocked;
+    }
+
+    public synchronized String summary() {
+        return String.format(Locale.US,
+                "lockLaunches=%d, coalesced=%d, blocked=%d, launchTimeouts=%d, orphanedLocks=%d, launchAvgMs=%s",
+                triggers, coalesced, blocked, timeouts, orphans,
+                launchCount == 0 ? "-" : String.valueOf(launchMsSum / launchCount));
+    }
+
+    private void expireLaunch(long now) {
+        if (state == LAUNCHING && now - launchStartedAt > LAUNCH_TIMEOUT_MS) {
+            timeouts++;
+            state = IDLE;
+            pendingPackage = "";
+        }
+    }
+}
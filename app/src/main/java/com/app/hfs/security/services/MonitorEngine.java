@@ -0,0 +1,288 @@
+package com.hfs.security.services;
+
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.utils.PackageRegistry;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Per-tick decision logic of the Background Guard, free of Android dependencies.
+ * AppMonitorService feeds it the real clock, detector and database; the
+ * TraceSimulator feeds it a virtual clock and a recorded or synthetic trace.
+ * Monitor thread only (or the simulator's single thread).
+ */
+public class MonitorEngine {
+
+    public interface Clock {
+        long now();
+    }
+
+    /**
+     * Answers "which app is in front" for one tick.
+     */
+    public interface ForegroundSource {
+        /**
+         * @return The package currently in front, or "" if unknown
+         */
+        String getForegroundPackage(long now);
+
+        /**
+         * @return Class name of the activity in front, or "" if unknown
+         */
+        String getForegroundClassName();
+
+        /**
+         * @return Wall-clock time at which the current foreground package came to the front, or 0
+         */
+        long getForegroundSinceMs();
+
+        /**
+         * @return Every package on screen, the focused one included; a set of
+         *         at most one package means a single window
+         */
+        VisibleWindowSet getVisibleWindows();
+    }
+
+    /**
+     * Supplies the protected set, the per-app policies, the package patterns
+     * and the activity-level rules. The engine only recompiles them when a
+     * different instance is returned, so sources must publish immutable snapshots.
+     * The package patterns come already compiled: their DFA can take far
+     * longer to build than a tick may last.
+     */
+    public interface PolicySource {
+        Set<String> getProtectedPackages();
+
+        Map<String, AppPolicy> getAppPolicies();
+
+        /**
+         * @return The package patterns, compiled off the monitor thread when they changed
+         */
+        PackageRuleMatcher getPackageRuleMatcher();
+
+        Set<String> getActivityRules();
+    }
+
+    /**
+     * Side effects of a tick, carried out by the host.
+     */
+    public interface Actions {
+        /**
+         * A protected app is in front without a session. The lock slot is
+         * already claimed; the host must show a lock UI or close the slot.
+         */
+        void onLockTriggered(String packageName, long eventTs, long triggerTs);
+
+        /**
+         * A tick ran while a lock UI is in flight or visible.
+         */
+        void onLockActiveTick();
+
+        /**
+         * The launcher or recents came to the front; a lock is likely soon.
+         * Sent at most once per {@link MonitorEngine#WARM_UP_HINT_INTERVAL_MS}.
+         */
+        void onWarmUpHint();
+    }
+
+    /** Minimum time between two warm-up hints. */
+    static final long WARM_UP_HINT_INTERVAL_MS = 30_000;
+
+    private final Clock clock;
+    private final ForegroundSource foregroundSource;
+    private final PolicySource policySource;
+    private final Actions actions;
+    private final UnlockSessionTable sessions;
+    private final LockTriggerCoordinator triggers;
+    private final TickScheduler tickScheduler;
+
+    // Hot-path state keyed by PackageRegistry IDs
+    private final PackageRegistry registry = PackageRegistry.getInstance();
+    private final BitSet exemptIds = new BitSet();
+    private PolicyTable policyTable = PolicyTable.EMPTY;
+    private Set<String> protectedSource = null;
+    private Map<String, AppPolicy> policiesSource = null;
+    private ActivityRuleMatcher activityRules = null;
+    private Set<String> activityRulesSource = null;
+    private String lastForegroundName = null;
+    private int foregroundId = PackageRegistry.NO_ID;
+    private int[] otherVisibleIds = new int[8];
+    private boolean onLauncherSurface = false;
+    private long lastWarmUpHintMs = -1;
+
+    // Local time zone offset, refreshed once per hour for DST changes
+    private long zoneOffsetMs = 0;
+    private long zoneCheckedAt = -1;
+
+    /**
+     * @param ownPackage HFS' own package; its windows (the lock UI) never re-arm a session
+     */
+    public MonitorEngine(Clock clock, ForegroundSource foregroundSource,
+                         PolicySource policySource, Actions actions,
+                         UnlockSessionTable sessions, LockTriggerCoordinator triggers,
+                         TickScheduler tickScheduler, String ownPackage) {
+        this.clock = clock;
+        this.foregroundSource = foregroundSource;
+        this.policySource = policySource;
+        this.actions = actions;
+        this.sessions = sessions;
+        this.triggers = triggers;
+        this.tickScheduler = tickScheduler;
+        exemptIds.set(registry.idFor(ownPackage));
+    }
+
+    /**
+     * Runs one guard tick.
+     *
+     * @return Delay before the next tick in ms, or {@link TickScheduler#SUSPENDED}
+     */
+    public long tick() {
+        long now = clock.now();
+        String currentApp = foregroundSource.getForegroundPackage(now);
+        int currentId = resolveForegroundId(currentApp);
+        PolicyTable policies = getPolicyTable();
+        PackageRuleMatcher patterns = policySource.getPackageRuleMatcher();
+        ActivityRuleMatcher rules = getActivityRules();
+
+        VisibleWindowSet windows = foregroundSource.getVisibleWindows();
+        boolean multiWindow = windows.size() > 1;
+        int minute = minuteOfDay(now);
+
+        // 1. RE-ARM LOGIC: Leaving an unlocked app starts its grace period;
+        // HFS' own windows do not count as leaving
+        if (!isExempt(currentId)) {
+            if (multiWindow) {
+                sessions.onVisible(currentId, otherVisibleIds, collectOtherVisibleIds(windows, currentId), now);
+            } else {
+                sessions.onForeground(currentId, now);
+            }
+        }
+
+        // 2. TRIGGER LOGIC: the coordinator coalesces repeats while a launch is in flight.
+        // A package is locked as a whole (selected or matched by a pattern),
+        // or only on the activities a rule covers
+        String lockApp = null;
+        long lockSince = 0;
+        if (needsLock(policies, patterns, rules, currentId, currentApp,
+                foregroundSource.getForegroundClassName(), minute, now)) {
+            lockApp = currentApp;
+            lockSince = foregroundSource.getForegroundSinceMs();
+        } else if (multiWindow) {
+            // Split-screen / freeform: every other visible package in the same pass
+            for (int i = 0; i < windows.size(); i++) {
+                int id = windows.idAt(i);
+                if (id == currentId || isExempt(id)) continue;
+                String packageName = windows.packageAt(i);
+                if (needsLock(policies, patterns, rules, id, packageName, windows.classAt(i), minute, now)) {
+                    lockApp = packageName;
+                    lockSince = windows.sinceAt(i);
+                    break;
+                }
+            }
+        }
+
+        if (lockApp != null && triggers.tryTrigger(lockApp, now)) {
+            actions.onLockTriggered(lockApp, lockSince, now);
+        } else if (triggers.isActive(now)) {
+            // 3. A lock is launching or visible; the host checks whether it was left
+            actions.onLockActiveTick();
+            return TickScheduler.BASE_TICK_MS;
+        }
+
+        // 4. WARM-UP: a protected app is likely next while the launcher or recents is showing
+        // The UI process is killed and cold-started regularly, so every visit re-sends it
+        boolean launcher = tickScheduler.isLauncherSurface(currentApp);
+        if (launcher && !onLauncherSurface
+                && (lastWarmUpHintMs < 0 || now - lastWarmUpHintMs >= WARM_UP_HINT_INTERVAL_MS)) {
+            lastWarmUpHintMs = now;
+            actions.onWarmUpHint();
+        }
+        onLauncherSurface = launcher;
+
+        return tickScheduler.nextDelay(currentApp);
+    }
+
+    private boolean needsLock(PolicyTable policies, PackageRuleMatcher patterns, ActivityRuleMatcher rules,
+                              int id, String packageName, String className, int minute, long now) {
+        return (policies.isProtectedAt(id, minute)
+                        || patterns.matches(id, packageName)
+                        || (!rules.isEmpty() && rules.matches(packageName, className)))
+                && !sessions.isUnlocked(id, now);
+    }
+
+    /**
+     * Fills otherVisibleIds with the visible packages besides the focused one.
+     *
+     * @return Number of IDs written
+     */
+    private int collectOtherVisibleIds(VisibleWindowSet windows, int currentId) {
+        if (otherVisibleIds.length < windows.size()) {
+            otherVisibleIds = new int[windows.size()];
+        }
+        int count = 0;
+        for (int i = 0; i < windows.size(); i++) {
+            int id = windows.idAt(i);
+            if (id != currentId && !isExempt(id)) {
+                otherVisibleIds[count++] = id;
+            }
+        }
+        return count;
+    }
+
+    public boolean isExempt(int id) {
+        return PackageRegistry.contains(exemptIds, id);
+    }
+
+    /**
+     * Maps the foreground package to its registry ID.
+     * The tracker hands back the same String instance until the foreground
+     * changes, so the registry is only consulted on an actual switch.
+     */
+    public int resolveForegroundId(String currentApp) {
+        if (currentApp != lastForegroundName) {
+            lastForegroundName = currentApp;
+            foregroundId = registry.idFor(currentApp);
+        }
+        return foregroundId;
+    }
+
+    /**
+     * Returns the compiled protected set and policies.
+     * Recompiled only when the source publishes a new snapshot.
+     */
+    private PolicyTable getPolicyTable() {
+        Set<String> protectedSnapshot = policySource.getProtectedPackages();
+        Map<String, AppPolicy> policiesSnapshot = policySource.getAppPolicies();
+        if (protectedSnapshot != protectedSource || policiesSnapshot != policiesSource) {
+            protectedSource = protectedSnapshot;
+            policiesSource = policiesSnapshot;
+            policyTable = PolicyTable.compile(protectedSnapshot, policiesSnapshot);
+            sessions.setPolicies(policyTable);
+        }
+        return policyTable;
+    }
+
+    /**
+     * Returns the activity-level rules compiled into a trie.
+     * Recompiled only when the source publishes a new snapshot.
+     */
+    private ActivityRuleMatcher getActivityRules() {
+        Set<String> snapshot = policySource.getActivityRules();
+        if (snapshot != activityRulesSource || activityRules == null) {
+            activityRulesSource = snapshot;
+            activityRules = ActivityRuleMatcher.compile(snapshot);
+        }
+        return activityRules;
+    }
+
+    private int minuteOfDay(long now) {
+        if (zoneCheckedAt < 0 || Math.abs(now - zoneCheckedAt) > 3_600_000L) {
+            zoneOffsetMs = TimeZone.getDefault().getOffset(now);
+            zoneCheckedAt = now;
+        }
+        return (int) (Math.floorMod(now + zoneOffsetMs, 86_400_000L) / 60_000L);
+    }
+}
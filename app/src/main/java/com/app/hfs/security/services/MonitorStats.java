@@ -0,0 +1,96 @@
+package com.hfs.security.services;
+
+import android.os.Debug;
+import android.os.SystemClock;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight counters for the Background Guard.
+ * Used to verify how much work the monitor pushes onto the main thread
+ * and how often it wakes the device up to poll.
+ */
+public final class MonitorStats {
+
+    private static final AtomicLong ticks = new AtomicLong();
+    private static final AtomicLong wakeups = new AtomicLong();
+    private static final AtomicLong suspensions = new AtomicLong();
+    private static final AtomicLong mainThreadTasks = new AtomicLong();
+    private static final AtomicLong mainThreadNanos = new AtomicLong();
+
+    private static volatile long startedAtMs = 0;
+
+    private MonitorStats() {}
+
+    /**
+     * Marks the start of a monitoring period; rates are computed from here.
+     */
+    public static void onGuardStarted() {
+        if (startedAtMs == 0) {
+            startedAtMs = SystemClock.elapsedRealtime();
+        }
+    }
+
+    public static void onTick() {
+        ticks.incrementAndGet();
+    }
+
+    /**
+     * The suspended loop was resumed by a screen-on or unlock broadcast.
+     */
+    public static void onWakeup() {
+        wakeups.incrementAndGet();
+    }
+
+    /**
+     * The loop stopped polling because the screen went off.
+     */
+    public static void onSuspended() {
+        suspensions.incrementAndGet();
+    }
+
+    /**
+     * Records one unit of guard work that had to run on the main thread.
+     *
+     * @param startNanos Value of SystemClock.elapsedRealtimeNanos() when the work began
+     */
+    public static void onMainThreadWork(long startNanos) {
+        mainThreadTasks.incrementAndGet();
+        mainThreadNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - startNanos);
+    }
+
+    public static long getTicks() {
+        return ticks.get();
+    }
+
+    public static long getWakeups() {
+        return wakeups.get();
+    }
+
+    public static long getSuspensions() {
+        return suspensions.get();
+    }
+
+    public static long getTicksPerHour() {
+        if (startedAtMs == 0) return 0;
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - startedAtMs);
+        return getTicks() * 3_600_000L / elapsed;
+    }
+
+    public static long getMainThreadTasks() {
+        return mainThreadTasks.get();
+    }
+
+    public static long getMainThreadMillis() {
+        return mainThreadNanos.get() / 1_000_000L;
+    }
+
+    public static String summary() {
+        return String.format(Locale.US,
+                "ticks=%d, ticksPerHour=%d, wakeups=%d, suspensions=%d, mainThreadTasks=%d, mainThreadMs=%d, pssKb=%d\n%s",
+                getTicks(), getTicksPerHour(), getWakeups(), getSuspensions(),
+                getMainThreadTasks(), getMainThreadMillis(), Debug.getPss(),
+                LockTriggerCoordinator.getInstance().summary());
+    }
+}
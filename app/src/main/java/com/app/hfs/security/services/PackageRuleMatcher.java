@@ -0,0 +1,281 @@
+package com.hfs.security.services;
+
+import com.hfs.security.utils.PackageRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Package-name protection rules: exact names ("com.whatsapp"), prefixes
+ * ("com.bank.*") and globs with '*' (any run of characters) and '?' (one character).
+ *
+ * The patterns are built into a character trie whose '*' nodes loop on any
+ * character, and the trie is then determinized into a DFA. Resolving a
+ * package walks the DFA once per character, so it takes time linear in the
+ * name length whatever the number of rules. Overlapping globs such as
+ * "*a*b*c*" can need exponentially many DFA states; past
+ * {@link #MAX_DFA_STATES} the construction stops and the trie is walked as
+ * an NFA instead, which stays linear in the name length times the trie size.
+ * Results are memoized per PackageRegistry ID; a package installed later is
+ * matched the first time the guard sees it, without any rescan.
+ * Compile it off the guard's tick: see HFSDatabaseHelper#getPackageRuleMatcher.
+ * Immutable once built, except for the memo (monitor thread only).
+ */
+public final class PackageRuleMatcher {
+
+    private static final char STAR = '*';
+    private static final char ANY_ONE = '?';
+
+    // Package names only use [A-Za-z0-9._]; everything else shares one class
+    private static final int CLASS_COUNT = 65;
+    private static final int OTHER_CLASS = 64;
+
+    private static final int DEAD = 0;
+
+    // Caps the DFA at about 530 KB of transitions
+    static final int MAX_DFA_STATES = 2048;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCH = 1;
+    private static final byte NO_MATCH = 2;
+
+    // DFA: CLASS_COUNT transitions per state, state 0 is the dead state; null in NFA mode
+    private final int[] transitions;
+    private final boolean[] accepting;
+    private final int startState;
+    // Pattern trie walked directly when the DFA would have been too large; null in DFA mode
+    private final Trie nfa;
+    private final int ruleCount;
+
+    private byte[] memo = new byte[256];
+
+    private PackageRuleMatcher(int[] transitions, boolean[] accepting, int startState, int ruleCount) {
+        this.transitions = transitions;
+        this.accepting = accepting;
+        this.startState = startState;
+        this.nfa = null;
+        this.ruleCount = ruleCount;
+    }
+
+    private PackageRuleMatcher(Trie nfa, int ruleCount) {
+        this.transitions = null;
+        this.accepting = null;
+        this.startState = DEAD;
+        this.nfa = nfa;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * Builds the DFA, or the NFA fallback if the DFA would exceed
+     * {@link #MAX_DFA_STATES}. Blank patterns are skipped.
+     */
+    public static PackageRuleMatcher compile(Collection<String> patterns) {
+        Trie trie = new Trie();
+        int count = 0;
+        for (String pattern : patterns) {
+            String trimmed = pattern.trim();
+            if (trimmed.isEmpty()) continue;
+            trie.insert(trimmed);
+            count++;
+        }
+        PackageRuleMatcher dfa = trie.determinize(count);
+        return dfa != null ? dfa : new PackageRuleMatcher(trie, count);
+    }
+
+    public boolean isEmpty() {
+        return ruleCount == 0;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @return false if the rules were too large for a DFA and are matched as an NFA
+     */
+    public boolean isDeterministic() {
+        return nfa == null;
+    }
+
+    /**
+     * Memoized match for a package seen by the guard.
+     */
+    public boolean matches(int id, String packageName) {
+        if (id == PackageRegistry.NO_ID || ruleCount == 0) return false;
+        if (id >= memo.length) {
+            memo = Arrays.copyOf(memo, Math.max(id + 1, memo.length * 2));
+        }
+        byte cached = memo[id];
+        if (cached == UNKNOWN) {
+            cached = matches(packageName) ? MATCH : NO_MATCH;
+            memo[id] = cached;
+        }
+        return cached == MATCH;
+    }
+
+    /**
+     * Uncached DFA (or NFA) walk.
+     */
+    public boolean matches(String packageName) {
+        if (nfa != null) return nfa.matches(packageName);
+        int state = startState;
+        for (int i = 0; i < packageName.length() && state != DEAD; i++) {
+            state = transitions[state * CLASS_COUNT + classOf(packageName.charAt(i))];
+        }
+        return accepting[state];
+    }
+
+    private static int classOf(char c) {
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        if (c >= 'A' && c <= 'Z') return 26 + c - 'A';
+        if (c >= '0' && c <= '9') return 52 + c - '0';
+        if (c == '.') return 62;
+        if (c == '_') return 63;
+        return OTHER_CLASS;
+    }
+
+    private static char representative(int cls) {
+        if (cls < 26) return (char) ('a' + cls);
+        if (cls < 52) return (char) ('A' + cls - 26);
+        if (cls < 62) return (char) ('0' + cls - 52);
+        if (cls == 62) return '.';
+        if (cls == 63) return '_';
+        return '-';
+    }
+
+    /**
+     * Pattern trie used as an NFA: '*' children match any run of characters
+     * (including none) and '?' children match any single character.
+     */
+    private static final class Trie {
+        private final List<Map<Character, Integer>> children = new ArrayList<>();
+        private final List<Boolean> terminal = new ArrayList<>();
+        private final List<Boolean> star = new ArrayList<>();
+
+        Trie() {
+            newNode(false);
+        }
+
+        private int newNode(boolean isStar) {
+            children.add(new HashMap<>());
+            terminal.add(false);
+            star.add(isStar);
+            return children.size() - 1;
+        }
+
+        void insert(String pattern) {
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                // "**" behaves like "*"
+                if (c == STAR && star.get(node)) continue;
+                Integer child = children.get(node).get(c);
+                if (child == null) {
+                    child = newNode(c == STAR);
+                    children.get(node).put(c, child);
+                }
+                node = child;
+            }
+            terminal.set(node, true);
+        }
+
+        /**
+         * Adds a node and, since '*' also matches nothing, its '*' descendants.
+         */
+        private void addWithClosure(BitSet set, int node) {
+            if (set.get(node)) return;
+            set.set(node);
+            Integer starChild = children.get(node).get(STAR);
+            if (starChild != null) {
+                addWithClosure(set, starChild);
+            }
+        }
+
+        private BitSet step(BitSet from, char c) {
+            BitSet to = new BitSet();
+            for (int node = from.nextSetBit(0); node >= 0; node = from.nextSetBit(node + 1)) {
+                if (star.get(node)) {
+                    addWithClosure(to, node);
+                }
+                Map<Character, Integer> next = children.get(node);
+                Integer literal = next.get(c);
+                if (literal != null) addWithClosure(to, literal);
+                Integer any = next.get(ANY_ONE);
+                if (any != null) addWithClosure(to, any);
+            }
+            return to;
+        }
+
+        private boolean isAccepting(BitSet set) {
+            for (int node = set.nextSetBit(0); node >= 0; node = set.nextSetBit(node + 1)) {
+                if (terminal.get(node)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Simulates the NFA over a name; used when the DFA was too large.
+         */
+        boolean matches(String packageName) {
+            BitSet set = new BitSet();
+            addWithClosure(set, 0);
+            for (int i = 0; i < packageName.length() && !set.isEmpty(); i++) {
+                set = step(set, representative(classOf(packageName.charAt(i))));
+            }
+            return isAccepting(set);
+        }
+
+        /**
+         * Subset construction over the character classes.
+         *
+         * @return null if the DFA would exceed {@link #MAX_DFA_STATES}
+         */
+        PackageRuleMatcher determinize(int ruleCount) {
+            Map<BitSet, Integer> stateIds = new HashMap<>();
+            List<BitSet> states = new ArrayList<>();
+
+            // State 0 is the dead state (empty set)
+            BitSet dead = new BitSet();
+            stateIds.put(dead, DEAD);
+            states.add(dead);
+
+            BitSet start = new BitSet();
+            addWithClosure(start, 0);
+            int startState = stateIds.containsKey(start) ? stateIds.get(start) : states.size();
+            if (startState == states.size()) {
+                stateIds.put(start, startState);
+                states.add(start);
+            }
+
+            int[] transitions = new int[16 * CLASS_COUNT];
+            for (int s = 0; s < states.size(); s++) {
+                if (transitions.length < (s + 1) * CLASS_COUNT) {
+                    transitions = Arrays.copyOf(transitions, transitions.length * 2);
+                }
+                for (int cls = 0; cls < CLASS_COUNT; cls++) {
+                    BitSet target = step(states.get(s), representative(cls));
+                    Integer id = stateIds.get(target);
+                    if (id == null) {
+                        if (states.size() == MAX_DFA_STATES) return null;
+                        id = states.size();
+                        stateIds.put(target, id);
+                        states.add(target);
+                    }
+                    transitions[s * CLASS_COUNT + cls] = id;
+                }
+            }
+
+            boolean[] accepting = new boolean[states.size()];
+            for (int s = 0; s < states.size(); s++) {
+                accepting[s] = isAccepting(states.get(s));
+            }
+            return new PackageRuleMatcher(Arrays.copyOf(transitions, states.size() * CLASS_COUNT),
+                    accepting, startState, ruleCount);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.hfs.security.services;
+
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.utils.PackageRegistry;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Protected set and per-app policies compiled into flat arrays indexed by
+ * PackageRegistry ID. Built once per settings change; the guard's per-tick
+ * questions are answered with array reads only, however many policies exist.
+ * Immutable once built, so it can be shared with the UI thread.
+ */
+public final class PolicyTable {
+
+    /** Grace value of apps whose session only ends when the screen turns off. */
+    public static final long UNTIL_SCREEN_OFF = Long.MAX_VALUE;
+
+    private static final int FLAG_PROTECTED = 1;
+    private static final int FLAG_SCHEDULED = 1 << 1;
+
+    public static final PolicyTable EMPTY = new PolicyTable(0);
+
+    private final int[] flags;
+    private final long[] graceMs;
+    private final short[] activeFrom;
+    private final short[] activeTo;
+
+    private PolicyTable(int size) {
+        flags = new int[size];
+        graceMs = new long[size];
+        activeFrom = new short[size];
+        activeTo = new short[size];
+    }
+
+    /**
+     * Compiles the protected set and its policies. Policies of apps that are
+     * not protected are ignored.
+     */
+    public static PolicyTable compile(Set<String> protectedPackages, Map<String, AppPolicy> policies) {
+        PackageRegistry registry = PackageRegistry.getInstance();
+        int size = 0;
+        for (String packageName : protectedPackages) {
+            size = Math.max(size, registry.idFor(packageName) + 1);
+        }
+
+        PolicyTable table = new PolicyTable(size);
+        for (String packageName : protectedPackages) {
+            int id = registry.idFor(packageName);
+            if (id == PackageRegistry.NO_ID) continue;
+
+            table.flags[id] = FLAG_PROTECTED;
+            table.graceMs[id] = AppPolicy.DEFAULT_GRACE_MS;
+
+            AppPolicy policy = policies.get(packageName);
+            if (policy == null) continue;
+
+            if (policy.isLockAlways()) {
+                table.graceMs[id] = 0;
+            } else if (policy.getRearmMode() == AppPolicy.REARM_ON_SCREEN_OFF) {
+                table.graceMs[id] = UNTIL_SCREEN_OFF;
+            } else {
+                table.graceMs[id] = policy.getGraceMs();
+            }
+
+            if (policy.hasActiveHours()) {
+                table.flags[id] |= FLAG_SCHEDULED;
+                table.activeFrom[id] = (short) policy.getActiveFromMinute();
+                table.activeTo[id] = (short) policy.getActiveToMinute();
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @param minuteOfDay Local minute of the day, 0-1439
+     * @return true if the app is protected and its schedule is active
+     */
+    public boolean isProtectedAt(int id, int minuteOfDay) {
+        if (id < 0 || id >= flags.length) return false;
+        int f = flags[id];
+        if ((f & FLAG_SCHEDULED) == 0) {
+            return f != 0;
+        }
+        int from = activeFrom[id];
+        int to = activeTo[id];
+        // Schedules past midnight wrap around
+        return from < to
+                ? minuteOfDay >= from && minuteOfDay < to
+                : minuteOfDay >= from || minuteOfDay < to;
+    }
+
+    /**
+     * @return How long a session survives after leaving the app: 0 for
+     *         lock-always, {@link #UNTIL_SCREEN_OFF}, or a duration in ms
+     */
+    public long graceMs(int id) {
+        return id >= 0 && id < graceMs.length && flags[id] != 0 ? graceMs[id] : AppPolicy.DEFAULT_GRACE_MS;
+    }
+
+    public int size() {
+        return flags.length;
+    }
+}
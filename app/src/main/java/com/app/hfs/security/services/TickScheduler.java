@@ -0,0 +1,58 @@
+package com.hfs.security.services;
+
+import java.util.Set;
+
+/**
+ * Decides how long the Background Guard sleeps between two ticks.
+ * Polls fast while the launcher or recents is showing, keeps the base rate
+ * while any other app is in front, and stops completely while the screen is
+ * off. The base rate is never relaxed: a protected app can be reached
+ * without passing the launcher (notification, share sheet, deep link,
+ * quick-switch gesture), and its time to lock is bounded by that rate.
+ */
+public class TickScheduler {
+
+    /** Returned by {@link #nextDelay} when the loop should stay suspended. */
+    public static final long SUSPENDED = -1;
+
+    static final long FAST_TICK_MS = 300;
+    static final long BASE_TICK_MS = 500;
+
+    private final Set<String> launcherPackages;
+
+    private volatile boolean screenOn;
+
+    /**
+     * @param launcherPackages Home and recents packages; an app launch is likely while one is in front
+     * @param screenOn Current interactive state of the device
+     */
+    public TickScheduler(Set<String> launcherPackages, boolean screenOn) {
+        this.launcherPackages = launcherPackages;
+        this.screenOn = screenOn;
+    }
+
+    public void setScreenOn(boolean screenOn) {
+        this.screenOn = screenOn;
+    }
+
+    public boolean isScreenOn() {
+        return screenOn;
+    }
+
+    public boolean isLauncherSurface(String packageName) {
+        return launcherPackages.contains(packageName);
+    }
+
+    /**
+     * Computes the delay before the next tick.
+     *
+     * @param foregroundPackage Package seen in front during this tick
+     * @return Delay in ms, or {@link #SUSPENDED} while the screen is off
+     */
+    public long nextDelay(String foregroundPackage) {
+        if (!screenOn) {
+            return SUSPENDED;
+        }
+        return isLauncherSurface(foregroundPackage) ? FAST_TICK_MS : BASE_TICK_MS;
+    }
+}
@@ -0,0 +1,179 @@
+package com.hfs.security.services;
+
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.utils.PackageRegistry;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe table of owner unlock sessions, one per protected package.
+ * Replaces the single static "unlocked package" of the guard, so several
+ * protected apps can stay unlocked at once and switching between them does
+ * not re-lock on every switch.
+ *
+ * Re-arm rules:
+ * - A session stays open while its app is in front, or visible in another
+ *   window (split-screen, freeform) next to the focused app.
+ * - Leaving the app starts its grace period (from the PolicyTable); returning
+ *   within it resumes the session. Lock-always apps have no grace, screen-off
+ *   apps an unlimited one.
+ * - Screen-off closes every session.
+ *
+ * Plain Java so the TraceSimulator can run it off-device.
+ */
+public final class UnlockSessionTable {
+
+    // Expiry value for a session whose app is currently in front
+    private static final long IN_FOREGROUND = Long.MAX_VALUE;
+
+    private static final UnlockSessionTable instance = new UnlockSessionTable();
+
+    // Session expiry per PackageRegistry ID, 0 = locked (guarded by this)
+    private long[] expiryById = new long[64];
+    private int foregroundId = PackageRegistry.NO_ID;
+    // Every visible ID, the focused one included
+    private int[] visibleIds = new int[8];
+    private int visibleCount = 0;
+    // Bumped whenever an expiry changes, so the guard knows when to republish
+    private int changeCount = 0;
+
+    private volatile PolicyTable policies = PolicyTable.EMPTY;
+
+    // The app uses the shared instance; the simulator creates its own
+    UnlockSessionTable() {}
+
+    public static UnlockSessionTable getInstance() {
+        return instance;
+    }
+
+    /**
+     * Installs the compiled policies that define each app's grace period.
+     */
+    public void setPolicies(PolicyTable policies) {
+        this.policies = policies;
+    }
+
+    /**
+     * Opens a session after the owner authenticated for a package.
+     */
+    public void unlock(String packageName) {
+        unlock(PackageRegistry.getInstance().idFor(packageName), System.currentTimeMillis());
+    }
+
+    public synchronized void unlock(int id, long now) {
+        if (id == PackageRegistry.NO_ID) return;
+        ensureCapacity(id);
+        // If the app is not (yet) seen in front, the session still runs out after the grace,
+        // but never before the owner had the time to get back into it
+        expiryById[id] = isVisible(id)
+                ? IN_FOREGROUND
+                : expiryAfter(now, Math.max(policies.graceMs(id), AppPolicy.DEFAULT_GRACE_MS));
+        changeCount++;
+    }
+
+    public synchronized boolean isUnlocked(int id, long now) {
+        return id >= 0 && id < expiryById.length && expiryById[id] > now;
+    }
+
+    /**
+     * Tracks the app in front to apply the re-arm rules.
+     * HFS' own windows (the lock UI) must not be reported here.
+     */
+    public void onForeground(int id, long now) {
+        onVisible(id, null, 0, now);
+    }
+
+    /**
+     * Multi-window variant of {@link #onForeground}: the apps in the other
+     * windows keep their sessions open as well.
+     *
+     * @param otherIds IDs visible next to the focused app; may contain duplicates
+     */
+    public synchronized void onVisible(int focusedId, int[] otherIds, int otherCount, long now) {
+        // Single window and no switch: the common tick
+        if (otherCount == 0 && focusedId == foregroundId && visibleCount <= 1) return;
+
+        // The apps no longer visible keep their session for the grace period only
+        for (int i = 0; i < visibleCount; i++) {
+            int id = visibleIds[i];
+            if (id == focusedId || contains(otherIds, otherCount, id)) continue;
+            if (id < expiryById.length && expiryById[id] == IN_FOREGROUND) {
+                expiryById[id] = expiryAfter(now, policies.graceMs(id));
+                changeCount++;
+            }
+        }
+
+        foregroundId = focusedId;
+        visibleCount = 0;
+        addVisible(focusedId, now);
+        for (int i = 0; i < otherCount; i++) {
+            addVisible(otherIds[i], now);
+        }
+    }
+
+    private void addVisible(int id, long now) {
+        if (id < 0 || isVisible(id)) return;
+        if (visibleCount == visibleIds.length) {
+            visibleIds = Arrays.copyOf(visibleIds, visibleCount * 2);
+        }
+        visibleIds[visibleCount++] = id;
+
+        // Coming back within the grace period resumes the session
+        if (id < expiryById.length && expiryById[id] > now && expiryById[id] != IN_FOREGROUND) {
+            expiryById[id] = IN_FOREGROUND;
+            changeCount++;
+        }
+    }
+
+    private boolean isVisible(int id) {
+        return contains(visibleIds, visibleCount, id);
+    }
+
+    private static boolean contains(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Re-arms every package, e.g. when the screen turns off.
+     */
+    public synchronized void clearAll() {
+        Arrays.fill(expiryById, 0);
+        changeCount++;
+    }
+
+    public synchronized int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Copies the sessions open at {@code now} for publishing to other processes.
+     *
+     * @return Number of sessions copied, at most {@code names.length}
+     */
+    public synchronized int copyOpenSessions(long now, String[] names, long[] expiries) {
+        PackageRegistry registry = PackageRegistry.getInstance();
+        int count = 0;
+        for (int id = 0; id < expiryById.length && count < names.length; id++) {
+            if (expiryById[id] > now) {
+                names[count] = registry.nameOf(id);
+                expiries[count] = expiryById[id];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long expiryAfter(long now, long graceMs) {
+        // Saturates for PolicyTable.UNTIL_SCREEN_OFF
+        return graceMs >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + graceMs;
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= expiryById.length) {
+            expiryById = Arrays.copyOf(expiryById, Math.max(id + 1, expiryById.length * 2));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.hfs.security.services;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.os.Build;
+
+/**
+ * Polling backend: reads the UsageEvents stream through a ForegroundTracker.
+ * Works everywhere Usage Access is granted, but only notices a switch on the next tick.
+ */
+public class UsageStatsForegroundDetector implements ForegroundDetector, ForegroundTracker.EventSource {
+
+    private final UsageStatsManager usageStatsManager;
+    private final UsageEvents.Event event = new UsageEvents.Event();
+    private final ForegroundTracker tracker =
+            new ForegroundTracker(Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q);
+
+    public UsageStatsForegroundDetector(UsageStatsManager usageStatsManager) {
+        this.usageStatsManager = usageStatsManager;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        tracker.reset();
+    }
+
+    @Override
+    public void stop() {}
+
+    @Override
+    public String getForegroundPackage(long now) {
+        return tracker.update(this, now);
+    }
+
+    @Override
+    public void queryEvents(long beginMs, long endMs, ForegroundTracker tracker) {
+        UsageEvents events = usageStatsManager.queryEvents(beginMs, endMs);
+        if (events == null) return;
+        while (events.hasNextEvent()) {
+            events.getNextEvent(event);
+            tracker.offer(event.getEventType(), event.getPackageName(), event.getClassName(), event.getTimeStamp());
+        }
+    }
+
+    @Override
+    public String getForegroundClass() {
+        return tracker.getForegroundClass();
+    }
+
+    @Override
+    public long getForegroundSinceMs() {
+        return tracker.getForegroundSinceMs();
+    }
+
+    @Override
+    public VisibleWindowSet getVisibleWindows() {
+        return tracker.getVisibleWindows();
+    }
+
+    @Override
+    public boolean isPushBased() {
+        return false;
+    }
+}
@@ -0,0 +1,202 @@
+package com.hfs.security.services;
+
+import com.hfs.security.utils.PackageRegistry;
+
+/**
+ * Activities currently on screen, folded from resume/pause/stop events.
+ * In split-screen, freeform or picture-in-picture the app last resumed is
+ * only one of several visible apps; this set keeps the others so the guard
+ * can check every visible package, not just the focused one.
+ *
+ * A resumed activity is visible. A paused one stays visible until it is
+ * stopped (unfocused split-screen window, activity under a dialog), but only
+ * counts once it has been paused for {@link #PAUSE_SETTLE_MS}: the
+ * pause-then-stop of an app being left must not look like a second window.
+ *
+ * Plain Java and allocation-free once warm, so the TraceSimulator can replay
+ * event streams through it. Monitor thread only.
+ */
+public final class VisibleWindowSet {
+
+    /** How long a paused activity must stay unstopped to count as visible. */
+    public static final long PAUSE_SETTLE_MS = 1000;
+
+    // Split-screen, freeform and PiP rarely show more than a handful of activities
+    private static final int CAPACITY = 8;
+
+    private static final long RESUMED = -1;
+
+    // Tracked activities
+    private final String[] packages = new String[CAPACITY];
+    private final String[] classes = new String[CAPACITY];
+    private final int[] ids = new int[CAPACITY];
+    private final long[] sinceMs = new long[CAPACITY];
+    private final long[] pausedAtMs = new long[CAPACITY];
+    private int count = 0;
+
+    // Visible packages as of the last refresh, one entry per package
+    private final String[] visiblePackages = new String[CAPACITY];
+    private final String[] visibleClasses = new String[CAPACITY];
+    private final int[] visibleIds = new int[CAPACITY];
+    private final long[] visibleSinceMs = new long[CAPACITY];
+    private int visibleCount = 0;
+
+    /**
+     * @return The package instance tracked for this name, so callers can keep
+     *         comparing references while the package stays on screen
+     */
+    public String onResumed(String packageName, String className, long timestamp) {
+        int index = indexOf(packageName, className);
+        if (index < 0) {
+            String sameName = trackedName(packageName);
+            index = count < CAPACITY ? count++ : evictionSlot();
+            packages[index] = sameName != null ? sameName : packageName;
+            classes[index] = className;
+            ids[index] = PackageRegistry.getInstance().idFor(packageName);
+            sinceMs[index] = timestamp;
+        }
+        pausedAtMs[index] = RESUMED;
+        return packages[index];
+    }
+
+    /**
+     * @param stopFollows True if an ACTIVITY_STOPPED event will report when the
+     *                    activity is no longer visible (Android 10+); otherwise
+     *                    a pause is the last event and removes the activity
+     */
+    public void onPaused(String packageName, String className, long timestamp, boolean stopFollows) {
+        int index = indexOf(packageName, className);
+        if (index < 0) return;
+        if (stopFollows) {
+            pausedAtMs[index] = timestamp;
+        } else {
+            remove(index);
+        }
+    }
+
+    public void onStopped(String packageName, String className) {
+        int index = indexOf(packageName, className);
+        if (index >= 0) {
+            remove(index);
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            packages[i] = null;
+            classes[i] = null;
+        }
+        count = 0;
+        visibleCount = 0;
+    }
+
+    /**
+     * Recomputes the visible packages. Call once per tick, after the events.
+     */
+    public void refresh(long now) {
+        visibleCount = 0;
+        for (int i = 0; i < count; i++) {
+            long pausedAt = pausedAtMs[i];
+            if (pausedAt != RESUMED && now - pausedAt < PAUSE_SETTLE_MS) continue;
+
+            int slot = visibleIndexOf(ids[i]);
+            if (slot < 0) {
+                slot = visibleCount++;
+                visiblePackages[slot] = packages[i];
+                visibleClasses[slot] = classes[i];
+                visibleIds[slot] = ids[i];
+                visibleSinceMs[slot] = sinceMs[i];
+            } else if (pausedAt == RESUMED) {
+                // A resumed activity of the package decides which class is shown
+                visibleClasses[slot] = classes[i];
+                visibleSinceMs[slot] = Math.min(visibleSinceMs[slot], sinceMs[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Number of visible packages, including the focused one
+     */
+    public int size() {
+        return visibleCount;
+    }
+
+    public String packageAt(int index) {
+        return visiblePackages[index];
+    }
+
+    public String classAt(int index) {
+        return visibleClasses[index];
+    }
+
+    /**
+     * @return PackageRegistry ID of the visible package
+     */
+    public int idAt(int index) {
+        return visibleIds[index];
+    }
+
+    /**
+     * @return Timestamp of the event that made the package visible
+     */
+    public long sinceAt(int index) {
+        return visibleSinceMs[index];
+    }
+
+    public boolean contains(String packageName) {
+        for (int i = 0; i < visibleCount; i++) {
+            if (visiblePackages[i].equals(packageName)) return true;
+        }
+        return false;
+    }
+
+    private int indexOf(String packageName, String className) {
+        for (int i = 0; i < count; i++) {
+            if (packages[i].equals(packageName) && classes[i].equals(className)) return i;
+        }
+        return -1;
+    }
+
+    private String trackedName(String packageName) {
+        for (int i = 0; i < count; i++) {
+            if (packages[i].equals(packageName)) return packages[i];
+        }
+        return null;
+    }
+
+    private int visibleIndexOf(int id) {
+        for (int i = 0; i < visibleCount; i++) {
+            if (visibleIds[i] == id) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Full set: a missed stop event must not pin an old activity forever.
+     * Replaces the paused activity paused longest ago, else the oldest one.
+     */
+    private int evictionSlot() {
+        int victim = 0;
+        for (int i = 1; i < count; i++) {
+            boolean paused = pausedAtMs[i] != RESUMED;
+            boolean victimPaused = pausedAtMs[victim] != RESUMED;
+            if (paused != victimPaused) {
+                if (paused) victim = i;
+            } else if (paused ? pausedAtMs[i] < pausedAtMs[victim] : sinceMs[i] < sinceMs[victim]) {
+                victim = i;
+            }
+        }
+        return victim;
+    }
+
+    private void remove(int index) {
+        int last = --count;
+        packages[index] = packages[last];
+        classes[index] = classes[last];
+        ids[index] = ids[last];
+        sinceMs[index] = sinceMs[last];
+        pausedAtMs[index] = pausedAtMs[last];
+        packages[last] = null;
+        classes[last] = null;
+    }
+}
@@ -5,14 +5,13 @@ import android.app.KeyguardManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.Toast;
 
@@ -20,7 +19,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.biometric.BiometricManager;
 import androidx.biometric.BiometricPrompt;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
@@ -28,31 +26,31 @@ import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.content.ContextCompat;
+import androidx.work.Constraints;
 import androidx.work.Data;
+import androidx.work.NetworkType;
 import androidx.work.OneTimeWorkRequest;
 import androidx.work.WorkManager;
 
-import com.google.android.gms.auth.api.signin.GoogleSignIn;
-import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
-import com.google.api.client.extensions.android.http.AndroidHttp;
-import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
-import com.google.api.client.json.gson.GsonFactory;
-import com.google.api.services.drive.Drive;
-import com.google.api.services.drive.DriveScopes;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import com.hfs.security.R;
 import com.hfs.security.databinding.ActivityLockScreenBinding;
-import com.hfs.security.services.AppMonitorService;
 import com.hfs.security.services.DriveUploadWorker;
-import com.hfs.security.utils.DriveHelper;
+import com.hfs.security.services.GuardClient;
+import com.hfs.security.services.GuardStateFile;
 import com.hfs.security.utils.FileSecureHelper;
+import com.hfs.security.utils.FrameRing;
+import com.hfs.security.utils.FrameScorer;
 import com.hfs.security.utils.HFSDatabaseHelper;
+import com.hfs.security.utils.LatencyRecorder;
 import com.hfs.security.utils.LocationHelper;
 import com.hfs.security.utils.SmsHelper;
 
 import java.io.File;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -70,24 +68,58 @@ public class LockScreenActivity extends AppCompatActivity {
     private static final String TAG = "HFS_LockScreen";
     private static final int SYSTEM_CREDENTIAL_REQUEST_CODE = 505;
 
+    // Pre-failure ring: about 1.5 s of analysis frames at 480p and below, within 2 MB
+    private static final int RING_FRAMES = 12;
+    private static final long RING_MEMORY_CAP_BYTES = 2L * 1024 * 1024;
+    private static final int RING_MAX_EDGE = 480;
+    // Evidence window around a failed attempt
+    private static final long EVIDENCE_BEFORE_MS = 1500;
+    private static final long EVIDENCE_AFTER_MS = 700;
+    // Save what the ring holds even if the camera delivers no more frames
+    private static final long EVIDENCE_TIMEOUT_MS = 1500;
+    // Best scored frames of the window kept as evidence
+    private static final int EVIDENCE_FRAMES = 3;
+
     private ActivityLockScreenBinding binding;
     private ExecutorService cameraExecutor;
     private HFSDatabaseHelper db;
     private String targetPackage;
     
     private boolean isActionTaken = false;
-    private boolean isCameraCaptured = false;
+    // Both parts of the cloud follow-up, each set once (guarded by this)
     private File intruderFile = null;
+    private String alertMapLink = null;
+
+    private final FrameRing frameRing = new FrameRing(RING_FRAMES, RING_MEMORY_CAP_BYTES, RING_MAX_EDGE);
+    // Time of the failed attempt (elapsedRealtime) while its evidence is pending
+    private volatile long failureAtMs = 0;
+    // A failure before the camera delivered anything; anchored on its first frame (camera thread)
+    private boolean anchorOnFirstFrame = false;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Cold vs warm start instrumentation
+    private long createdAtMs;
+    private boolean warmStart;
+    // Camera thread only
+    private boolean isFirstFrameReported = false;
 
     private Executor biometricExecutor;
+    private GuardClient guard;
+    // Closes the lock once the guard has opened the session
+    private final Runnable finishOnAck = this::finish;
     private BiometricPrompt biometricPrompt;
     private BiometricPrompt.PromptInfo promptInfo;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createdAtMs = SystemClock.elapsedRealtime();
+        warmStart = LockScreenWarmup.isWarm();
 
-        AppMonitorService.isLockActive = true;
+        // The guard runs in another process; report through its channel
+        guard = GuardClient.getInstance(this);
+        guard.attach(getIntent());
+        guard.onLockCreated(System.currentTimeMillis());
 
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED
                 | WindowManager.LayoutParams.FLAG_DISMISS_KEYGUARD
@@ -101,7 +133,16 @@ public class LockScreenActivity extends AppCompatActivity {
         cameraExecutor = Executors.newSingleThreadExecutor();
         targetPackage = getIntent().getStringExtra("TARGET_APP_PACKAGE");
 
+        // A launch that raced with an unlock: the guard already opened the session
+        GuardStateFile stateFile = GuardStateFile.getInstance(getFilesDir());
+        if (targetPackage != null && stateFile != null
+                && stateFile.isSessionOpen(targetPackage, System.currentTimeMillis())) {
+            finish();
+            return;
+        }
+
         binding.lockContainer.setVisibility(View.VISIBLE);
+        reportFirstFrame();
 
         // 1. Initialize background camera capture
         startInvisibleCamera();
@@ -116,6 +157,36 @@ public class LockScreenActivity extends AppCompatActivity {
         
         // FIX: Restored method call for the manual fingerprint button
         binding.btnFingerprint.setOnClickListener(v -> triggerSystemAuth());
+
+        // A wrong MPIN on the window overlay is handed over here to record the intruder
+        if (getIntent().getBooleanExtra("INTRUDER_ATTEMPT", false)) {
+            binding.tvErrorMsg.setText("Incorrect HFS MPIN");
+            triggerIntruderAlert();
+        }
+    }
+
+    /**
+     * Completes the time-to-lock sample started by the guard once the lock UI is about to draw,
+     * and records the cold/warm time from onCreate to that first frame.
+     */
+    private void reportFirstFrame() {
+        long eventTs = getIntent().getLongExtra("FOREGROUND_EVENT_TS", 0);
+        long triggerTs = getIntent().getLongExtra("LOCK_TRIGGER_TS", 0);
+
+        View root = binding.getRoot();
+        root.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                root.getViewTreeObserver().removeOnPreDrawListener(this);
+                guard.onFirstFrame(System.currentTimeMillis());
+                LockScreenWarmup.onLockUiDrawn(warmStart, SystemClock.elapsedRealtime() - createdAtMs);
+                if (targetPackage != null && triggerTs != 0) {
+                    LatencyRecorder.record(LockScreenActivity.this, targetPackage,
+                            eventTs, triggerTs, System.currentTimeMillis(), LatencyRecorder.MODE_ACTIVITY);
+                }
+                return true;
+            }
+        });
     }
 
     private void setupSystemSecurity() {
@@ -139,18 +210,8 @@ public class LockScreenActivity extends AppCompatActivity {
             }
         });
 
-        BiometricPrompt.PromptInfo.Builder builder = new BiometricPrompt.PromptInfo.Builder()
-                .setTitle("HFS Security")
-                .setSubtitle("Authenticate to access your app");
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            builder.setAllowedAuthenticators(BiometricManager.Authenticators.BIOMETRIC_STRONG 
-                                            | BiometricManager.Authenticators.DEVICE_CREDENTIAL);
-        } else {
-            builder.setNegativeButtonText("Use System PIN");
-        }
-
-        promptInfo = builder.build();
+        // Built once per process, possibly ahead of time by the warm-up stage
+        promptInfo = LockScreenWarmup.getPromptInfo();
     }
 
     /**
@@ -164,10 +225,73 @@ public class LockScreenActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Sends the alert at once; the evidence frames follow once the camera
+     * has seen the moments after the failure.
+     */
     private void triggerIntruderAlert() {
         if (isActionTaken) return;
         isActionTaken = true;
 
+        // Serialized with the analyzer, which decides whether frames are flowing yet
+        if (!cameraExecutor.isShutdown()) cameraExecutor.execute(this::armEvidence);
+        locateAndReport();
+    }
+
+    /**
+     * Opens the evidence window at the failure. Camera thread.
+     */
+    private void armEvidence() {
+        if (!isFirstFrameReported) {
+            // Handed over before the camera started (INTRUDER_ATTEMPT): nothing precedes the failure
+            anchorOnFirstFrame = true;
+            return;
+        }
+        openEvidenceWindow(SystemClock.elapsedRealtime());
+    }
+
+    private void openEvidenceWindow(long failureAt) {
+        failureAtMs = failureAt;
+        // Save what the ring holds even if the camera delivers no more frames
+        mainHandler.postDelayed(() -> {
+            if (!cameraExecutor.isShutdown()) cameraExecutor.execute(this::persistEvidence);
+        }, EVIDENCE_AFTER_MS + EVIDENCE_TIMEOUT_MS);
+    }
+
+    /**
+     * Queues the best scored frames around the failed attempt for the
+     * evidence writer, and hands the best one to the cloud follow-up once
+     * they are on disk. Camera thread; runs once per failure, also after
+     * the activity is gone.
+     */
+    private void persistEvidence() {
+        long failureAt = failureAtMs;
+        if (failureAt == 0) return;
+        failureAtMs = 0;
+
+        Context appContext = getApplicationContext();
+        List<CompletableFuture<File>> saved = new ArrayList<>();
+        frameRing.forEachBest(failureAt - EVIDENCE_BEFORE_MS, failureAt + EVIDENCE_AFTER_MS, EVIDENCE_FRAMES,
+                (nv21, width, height, rotation, timestamp) -> saved.add(
+                        FileSecureHelper.saveEvidenceFrame(appContext, nv21, width, height, rotation, saved.size())));
+
+        // The writer thread encodes and stores them; the camera carries on meanwhile
+        CompletableFuture.allOf(saved.toArray(new CompletableFuture[0])).whenComplete((done, error) -> {
+            Log.i(TAG, "Evidence frames queued: " + saved.size());
+            // Best first: the sharpest, best exposed frame that made it to disk goes to the cloud
+            for (CompletableFuture<File> future : saved) {
+                if (!future.isCompletedExceptionally()) {
+                    synchronized (this) {
+                        intruderFile = future.getNow(null);
+                    }
+                    queueCloudFollowUp();
+                    break;
+                }
+            }
+        });
+    }
+
+    private void locateAndReport() {
         LocationHelper.getDeviceLocation(this, new LocationHelper.LocationResultCallback() {
             @Override
             public void onLocationFound(String mapLink) {
@@ -182,82 +306,66 @@ public class LockScreenActivity extends AppCompatActivity {
     }
 
     private void processIntruderResponse(String mapLink) {
-        String appName = getIntent().getStringExtra("TARGET_APP_NAME");
-        if (appName == null) appName = "Protected Files";
-
-        boolean isDriveReady = db.isDriveEnabled() && db.getGoogleAccount() != null;
-
-        if (isDriveReady && isNetworkAvailable()) {
-            uploadToCloudAndSms(appName, mapLink);
-        } else if (isDriveReady) {
-            queueBackgroundUpload();
-            SmsHelper.sendAlertSms(this, appName, mapLink, "Security Breach", null);
-        } else {
-            SmsHelper.sendAlertSms(this, appName, mapLink, "Security Breach", null);
+        // The alert does not wait for the evidence; its Drive link follows in a second SMS
+        SmsHelper.sendAlertSms(getApplicationContext(), getTargetAppName(), mapLink, "Security Breach", null);
+        synchronized (this) {
+            alertMapLink = mapLink;
         }
+        queueCloudFollowUp();
 
         runOnUiThread(() -> {
+            if (isDestroyed()) return;
             binding.lockContainer.setVisibility(View.VISIBLE);
             Toast.makeText(this, "⚠ Security Breach Recorded", Toast.LENGTH_LONG).show();
             biometricPrompt.authenticate(promptInfo);
         });
     }
 
-    private void uploadToCloudAndSms(String appName, String mapLink) {
-        cameraExecutor.execute(() -> {
-            try {
-                if (intruderFile == null || !intruderFile.exists()) return;
-
-                GoogleSignInAccount account = GoogleSignIn.getLastSignedInAccount(this);
-                if (account == null) throw new Exception("Google Account Disconnected");
-
-                GoogleAccountCredential credential = GoogleAccountCredential.usingOAuth2(
-                        this, Collections.singleton(DriveScopes.DRIVE_FILE));
-                credential.setSelectedAccount(account.getAccount());
-
-                Drive driveService = new Drive.Builder(
-                        AndroidHttp.newCompatibleTransport(),
-                        new GsonFactory(),
-                        credential)
-                        .setApplicationName("HFS Security")
-                        .build();
-
-                DriveHelper driveHelper = new DriveHelper(this, driveService);
-                String driveLink = driveHelper.uploadFileAndGetLink(intruderFile);
-
-                SmsHelper.sendAlertSms(this, appName, mapLink, "Security Breach", driveLink);
-
-            } catch (Exception e) {
-                Log.e(TAG, "Cloud upload failed: " + e.getMessage());
-                queueBackgroundUpload();
-                SmsHelper.sendAlertSms(this, appName, mapLink, "Security Breach", null);
-            }
-        });
+    private String getTargetAppName() {
+        String appName = getIntent().getStringExtra("TARGET_APP_NAME");
+        return appName != null ? appName : "Protected Files";
     }
 
-    private void queueBackgroundUpload() {
-        if (intruderFile == null) return;
+    /**
+     * Once both the alert and the evidence are done, hands the best frame to
+     * WorkManager: it uploads it to Drive when a network is available and
+     * texts the link, whether or not this activity still exists.
+     */
+    private void queueCloudFollowUp() {
+        File file;
+        String mapLink;
+        synchronized (this) {
+            if (intruderFile == null || alertMapLink == null) return;
+            file = intruderFile;
+            mapLink = alertMapLink;
+            // Queued once
+            intruderFile = null;
+        }
+        if (!db.isDriveEnabled() || db.getGoogleAccount() == null) return;
 
         Data inputData = new Data.Builder()
-                .putString("file_path", intruderFile.getAbsolutePath())
+                .putString(DriveUploadWorker.KEY_FILE_PATH, file.getAbsolutePath())
+                .putString(DriveUploadWorker.KEY_ALERT_APP, getTargetAppName())
+                .putString(DriveUploadWorker.KEY_ALERT_MAP_LINK, mapLink)
                 .build();
 
         OneTimeWorkRequest uploadRequest = new OneTimeWorkRequest.Builder(DriveUploadWorker.class)
                 .setInputData(inputData)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
                 .build();
 
-        WorkManager.getInstance(this).enqueue(uploadRequest);
-    }
-
-    private boolean isNetworkAvailable() {
-        ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-        return activeNetwork != null && activeNetwork.isConnectedOrConnecting();
+        WorkManager.getInstance(getApplicationContext()).enqueue(uploadRequest);
     }
 
     private void startInvisibleCamera() {
+        // Already resolved when the guard warmed the lock screen up ahead of time
         ListenableFuture<ProcessCameraProvider> cameraProviderFuture = 
-                ProcessCameraProvider.getInstance(this);
+                LockScreenWarmup.getCameraProvider(this);
+
+        // Frames are scored as they are buffered, on the camera thread
+        frameRing.setScorer(new FrameScorer());
 
         cameraProviderFuture.addListener(() -> {
             try {
@@ -270,13 +378,22 @@ public class LockScreenActivity extends AppCompatActivity {
                         .build();
 
                 imageAnalysis.setAnalyzer(cameraExecutor, image -> {
-                    if (!isCameraCaptured) {
-                        isCameraCaptured = true;
-                        // FIX: Calling the new method that returns the File object
-                        intruderFile = FileSecureHelper.saveIntruderCaptureAndGetFile(this, image);
-                        image.close();
-                    } else {
-                        image.close();
+                    long now = SystemClock.elapsedRealtime();
+                    if (!isFirstFrameReported) {
+                        isFirstFrameReported = true;
+                        LockScreenWarmup.onFirstCameraFrame(warmStart, now - createdAtMs);
+                        if (anchorOnFirstFrame) {
+                            anchorOnFirstFrame = false;
+                            openEvidenceWindow(now);
+                        }
+                    }
+                    // Every frame goes through the ring; the evidence is picked on failure
+                    FileSecureHelper.bufferFrame(image, frameRing, now);
+                    image.close();
+
+                    long failureAt = failureAtMs;
+                    if (failureAt != 0 && now >= failureAt + EVIDENCE_AFTER_MS) {
+                        persistEvidence();
                     }
                 });
 
@@ -291,11 +408,12 @@ public class LockScreenActivity extends AppCompatActivity {
     }
 
     private void onOwnerVerified() {
-        AppMonitorService.isLockActive = false;
-        if (targetPackage != null) {
-            AppMonitorService.unlockSession(targetPackage);
+        // Opens the session (if any) and releases the lock slot in one message; the lock
+        // stays up until the guard confirms, or it would lock the app again on its next tick
+        if (!guard.onOwnerVerified(targetPackage, finishOnAck)) {
+            binding.tvErrorMsg.setText("Verified. Waiting for HFS Guard...");
         }
-        finish();
+        Log.d(TAG, "Owner Verified. Session requested for: " + targetPackage);
     }
 
     private void showSystemCredentialPicker() {
@@ -326,8 +444,12 @@ public class LockScreenActivity extends AppCompatActivity {
 
     @Override
     protected void onDestroy() {
+        mainHandler.removeCallbacksAndMessages(null);
+        guard.dropVerificationCallback(finishOnAck);
+        // noHistory: leaving ends the activity, possibly inside an evidence window; save what was seen
+        cameraExecutor.execute(this::persistEvidence);
         cameraExecutor.shutdown();
-        AppMonitorService.isLockActive = false;
+        guard.onLockClosed();
         super.onDestroy();
     }
 
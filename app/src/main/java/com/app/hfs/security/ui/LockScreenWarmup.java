@@ -0,0 +1,125 @@
+package com.hfs.security.ui;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+
+import androidx.biometric.BiometricManager;
+import androidx.biometric.BiometricPrompt;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.hfs.security.R;
+import com.hfs.security.databinding.ActivityLockScreenBinding;
+
+import java.util.Locale;
+
+/**
+ * Warm-up stage for LockScreenActivity.
+ * Started by the guard while the launcher or recents is in front (a protected
+ * app is likely to open next). It initializes the CameraX provider, loads the
+ * lock layout's classes and resources once, and builds the prompt
+ * configuration, so a lock skips that cold-start work.
+ * Main thread only, except the stats getters.
+ */
+public final class LockScreenWarmup {
+
+    private static final String TAG = "HFS_LockWarmup";
+
+    private static ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
+    private static BiometricPrompt.PromptInfo promptInfo;
+    private static boolean layoutWarmed = false;
+
+    // [cold, warm] sums and counts for lock UI and first camera frame, in ms
+    private static final long[] uiSum = new long[2];
+    private static final long[] uiCount = new long[2];
+    private static final long[] cameraSum = new long[2];
+    private static final long[] cameraCount = new long[2];
+
+    private LockScreenWarmup() {}
+
+    /**
+     * Runs the warm-up once per process; later calls return immediately.
+     */
+    public static void warmUp(Context context) {
+        Context appContext = context.getApplicationContext();
+        long start = SystemClock.elapsedRealtime();
+
+        getCameraProvider(appContext);
+        getPromptInfo();
+
+        if (!layoutWarmed) {
+            // Inflate and discard: later inflations hit the loaded classes and resource caches
+            Context themed = new ContextThemeWrapper(appContext, R.style.Theme_HFS_LockOverlay);
+            ActivityLockScreenBinding.inflate(LayoutInflater.from(themed));
+            layoutWarmed = true;
+            Log.d(TAG, "Lock screen warmed in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    /**
+     * @return true once the layout is warmed and the camera provider is ready
+     */
+    public static boolean isWarm() {
+        return layoutWarmed && cameraProviderFuture != null && cameraProviderFuture.isDone();
+    }
+
+    /**
+     * Returns the shared CameraX provider future, starting its initialization if needed.
+     */
+    public static ListenableFuture<ProcessCameraProvider> getCameraProvider(Context context) {
+        if (cameraProviderFuture == null) {
+            cameraProviderFuture = ProcessCameraProvider.getInstance(context.getApplicationContext());
+        }
+        return cameraProviderFuture;
+    }
+
+    public static BiometricPrompt.PromptInfo getPromptInfo() {
+        if (promptInfo == null) {
+            BiometricPrompt.PromptInfo.Builder builder = new BiometricPrompt.PromptInfo.Builder()
+                    .setTitle("HFS Security")
+                    .setSubtitle("Authenticate to access your app");
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                builder.setAllowedAuthenticators(BiometricManager.Authenticators.BIOMETRIC_STRONG
+                                                | BiometricManager.Authenticators.DEVICE_CREDENTIAL);
+            } else {
+                builder.setNegativeButtonText("Use System PIN");
+            }
+            promptInfo = builder.build();
+        }
+        return promptInfo;
+    }
+
+    /**
+     * Records the time from LockScreenActivity.onCreate to its first drawn frame.
+     */
+    public static synchronized void onLockUiDrawn(boolean warm, long elapsedMs) {
+        int i = warm ? 1 : 0;
+        uiSum[i] += elapsedMs;
+        uiCount[i]++;
+    }
+
+    /**
+     * Records the time from LockScreenActivity.onCreate to the first analysis frame.
+     */
+    public static synchronized void onFirstCameraFrame(boolean warm, long elapsedMs) {
+        int i = warm ? 1 : 0;
+        cameraSum[i] += elapsedMs;
+        cameraCount[i]++;
+    }
+
+    public static synchronized String summary() {
+        return String.format(Locale.US,
+                "Lock UI first frame avg: cold %s / warm %s\nCamera first frame avg: cold %s / warm %s",
+                average(uiSum[0], uiCount[0]), average(uiSum[1], uiCount[1]),
+                average(cameraSum[0], cameraCount[0]), average(cameraSum[1], cameraCount[1]));
+    }
+
+    private static String average(long sum, long count) {
+        return count == 0 ? "-" : (sum / count) + "ms (n=" + count + ")";
+    }
+}
@@ -17,8 +17,15 @@ import androidx.navigation.Navigation;
 import com.hfs.security.R;
 import com.hfs.security.databinding.FragmentHomeBinding;
 import com.hfs.security.services.AppMonitorService;
+import com.hfs.security.services.CoverageTracker;
+import com.hfs.security.utils.AppLabelCache;
 import com.hfs.security.utils.HFSDatabaseHelper;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
 /**
  * The Main Dashboard of the HFS App.
  * Provides the user with a master toggle to activate/deactivate 
@@ -26,6 +33,9 @@ import com.hfs.security.utils.HFSDatabaseHelper;
  */
 public class HomeFragment extends Fragment {
 
+    // Gaps listed on the dashboard; the coverage file keeps more
+    private static final int MAX_GAPS_SHOWN = 5;
+
     private FragmentHomeBinding binding;
     private HFSDatabaseHelper db;
 
@@ -92,6 +102,39 @@ public class HomeFragment extends Fragment {
         // Display summary counts from the database
         int protectedCount = db.getProtectedAppsCount();
         binding.tvProtectedAppsSummary.setText(protectedCount + " Apps currently protected");
+
+        refreshCoverage();
+    }
+
+    /**
+     * Shows how much of the time the guard was running and its latest downtime.
+     */
+    private void refreshCoverage() {
+        CoverageTracker coverage = CoverageTracker.getInstance(requireContext());
+        double share = coverage.getCoverage();
+        binding.tvCoveragePercent.setText(share < 0
+                ? "--"
+                : String.format(Locale.US, "%.1f%% of the time", share * 100));
+
+        List<CoverageTracker.Gap> gaps = coverage.getGaps();
+        if (gaps.isEmpty()) {
+            binding.tvCoverageGaps.setText("No downtime recorded");
+            return;
+        }
+
+        AppLabelCache labels = AppLabelCache.getInstance(requireContext());
+        SimpleDateFormat format = new SimpleDateFormat("dd MMM HH:mm", Locale.getDefault());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Math.min(gaps.size(), MAX_GAPS_SHOWN); i++) {
+            CoverageTracker.Gap gap = gaps.get(i);
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(format.format(new Date(gap.startMs)))
+                    .append(" - ").append(Math.max(1, gap.getDurationMs() / 60_000)).append(" min offline");
+            if (gap.protectedOpens > 0) {
+                sb.append("\n  Opened: ").append(gap.describeApps(labels));
+            }
+        }
+        binding.tvCoverageGaps.setText(sb.toString());
     }
 
     /**
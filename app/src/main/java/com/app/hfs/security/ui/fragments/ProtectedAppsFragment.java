@@ -1,6 +1,7 @@
 package com.hfs.security.ui.fragments;
 
-import android.content.pm.ApplicationInfo;
+import android.app.TimePickerDialog;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
@@ -12,19 +13,28 @@ import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
+import com.hfs.security.R;
 import com.hfs.security.adapters.AppSelectionAdapter;
+import com.hfs.security.databinding.DialogAppPolicyBinding;
+import com.hfs.security.databinding.DialogPackageRulesBinding;
 import com.hfs.security.databinding.FragmentProtectedAppsBinding;
 import com.hfs.security.models.AppInfo;
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.utils.AppLabelCache;
 import com.hfs.security.utils.HFSDatabaseHelper;
+import com.hfs.security.utils.PackageRegistry;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -41,6 +51,7 @@ public class ProtectedAppsFragment extends Fragment implements AppSelectionAdapt
     private AppSelectionAdapter adapter;
     private List<AppInfo> fullAppList;
     private HFSDatabaseHelper db;
+    private AppLabelCache labelCache;
     
     // Executor for background processing to keep the UI responsive
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
@@ -58,10 +69,12 @@ public class ProtectedAppsFragment extends Fragment implements AppSelectionAdapt
         super.onViewCreated(view, savedInstanceState);
         
         db = HFSDatabaseHelper.getInstance(requireContext());
+        labelCache = AppLabelCache.getInstance(requireContext());
         fullAppList = new ArrayList<>();
         
         setupRecyclerView();
         setupSearch();
+        binding.tvPackageRules.setOnClickListener(v -> showPackageRulesDialog());
         
         // Load all apps including system apps
         loadInstalledApps();
@@ -103,14 +116,16 @@ public class ProtectedAppsFragment extends Fragment implements AppSelectionAdapt
 
             PackageManager pm = getContext().getPackageManager();
             
-            // Fetch all applications regardless of system or user status
-            List<ApplicationInfo> packages = pm.getInstalledApplications(PackageManager.GET_META_DATA);
+            // Fetch all applications regardless of system or user status.
+            // PackageInfo carries the version code the shared label cache is keyed on.
+            List<PackageInfo> packages = pm.getInstalledPackages(0);
             List<AppInfo> tempInfoList = new ArrayList<>();
             
             // Get currently protected packages from local database
             Set<String> savedProtectedPackages = db.getProtectedPackages();
+            PackageRegistry registry = PackageRegistry.getInstance();
 
-            for (ApplicationInfo app : packages) {
+            for (PackageInfo app : packages) {
                 /* 
                  * ENHANCEMENT: 
                  * We use getLaunchIntentForPackage. This is the professional way to 
@@ -122,8 +137,11 @@ public class ProtectedAppsFragment extends Fragment implements AppSelectionAdapt
                     // Logic updated: We no longer 'continue' (skip) the HFS package.
                     // This allows you to lock the HFS app itself as requested.
 
-                    String name = app.loadLabel(pm).toString();
-                    Drawable icon = app.loadIcon(pm);
+                    // Assign the package its dense ID once, while the catalog is built
+                    registry.idFor(app.packageName);
+
+                    String name = labelCache.getLabel(app);
+                    Drawable icon = app.applicationInfo.loadIcon(pm);
                     boolean isAlreadyProtected = savedProtectedPackages.contains(app.packageName);
                     
                     tempInfoList.add(new AppInfo(name, app.packageName, icon, isAlreadyProtected));
@@ -183,6 +201,98 @@ public class ProtectedAppsFragment extends Fragment implements AppSelectionAdapt
         db.saveProtectedPackages(currentProtectedSet);
     }
 
+    /**
+     * Interface callback: Opens the protection policy of an app.
+     */
+    @Override
+    public void onAppPolicyRequested(AppInfo app) {
+        AppPolicy policy = db.getAppPolicy(app.getPackageName());
+        DialogAppPolicyBinding dialogBinding = DialogAppPolicyBinding.inflate(getLayoutInflater());
+
+        // Working copy of the schedule, edited by the time pickers
+        int[] activeHours = policy.hasActiveHours()
+                ? new int[]{policy.getActiveFromMinute(), policy.getActiveToMinute()}
+                : new int[]{22 * 60, 7 * 60};
+
+        dialogBinding.switchLockAlways.setChecked(policy.isLockAlways());
+        dialogBinding.rgRearmMode.check(policy.getRearmMode() == AppPolicy.REARM_ON_SCREEN_OFF
+                ? R.id.rbRearmOnScreenOff : R.id.rbRearmOnLeave);
+        dialogBinding.etGraceSeconds.setText(String.valueOf(policy.getGraceMs() / 1000));
+        dialogBinding.switchActiveHours.setChecked(policy.hasActiveHours());
+        updateActiveHoursButtons(dialogBinding, activeHours);
+
+        dialogBinding.btnActiveFrom.setOnClickListener(v -> pickTime(dialogBinding, activeHours, 0));
+        dialogBinding.btnActiveTo.setOnClickListener(v -> pickTime(dialogBinding, activeHours, 1));
+
+        new AlertDialog.Builder(requireContext(), R.style.Theme_HFS_Dialog)
+                .setTitle(app.getAppName())
+                .setView(dialogBinding.getRoot())
+                .setPositiveButton("SAVE", (dialog, which) -> {
+                    policy.setLockAlways(dialogBinding.switchLockAlways.isChecked());
+                    policy.setRearmMode(dialogBinding.rgRearmMode.getCheckedRadioButtonId() == R.id.rbRearmOnScreenOff
+                            ? AppPolicy.REARM_ON_SCREEN_OFF : AppPolicy.REARM_ON_LEAVE);
+                    policy.setGraceMs(parseSeconds(dialogBinding.etGraceSeconds.getText()) * 1000L);
+                    if (dialogBinding.switchActiveHours.isChecked()) {
+                        policy.setActiveHours(activeHours[0], activeHours[1]);
+                    } else {
+                        policy.setActiveHours(AppPolicy.ALL_DAY, AppPolicy.ALL_DAY);
+                    }
+                    db.saveAppPolicy(policy);
+                })
+                .setNegativeButton("CANCEL", null)
+                .show();
+    }
+
+    /**
+     * Edits the exact, prefix and glob package rules, one per line.
+     * Matching packages are locked even if they are not selected in the list.
+     */
+    private void showPackageRulesDialog() {
+        DialogPackageRulesBinding dialogBinding = DialogPackageRulesBinding.inflate(getLayoutInflater());
+        dialogBinding.etPackageRules.setText(String.join("\n", new TreeSet<>(db.getPackageRules())));
+
+        new AlertDialog.Builder(requireContext(), R.style.Theme_HFS_Dialog)
+                .setTitle("Pattern Rules")
+                .setView(dialogBinding.getRoot())
+                .setPositiveButton("SAVE", (dialog, which) -> {
+                    Set<String> rules = new HashSet<>();
+                    CharSequence text = dialogBinding.etPackageRules.getText();
+                    if (text != null) {
+                        for (String line : text.toString().split("\n")) {
+                            String rule = line.trim();
+                            if (!rule.isEmpty()) rules.add(rule);
+                        }
+                    }
+                    db.savePackageRules(rules);
+                })
+                .setNegativeButton("CANCEL", null)
+                .show();
+    }
+
+    private void pickTime(DialogAppPolicyBinding dialogBinding, int[] activeHours, int index) {
+        new TimePickerDialog(requireContext(), (view, hourOfDay, minute) -> {
+            activeHours[index] = hourOfDay * 60 + minute;
+            updateActiveHoursButtons(dialogBinding, activeHours);
+        }, activeHours[index] / 60, activeHours[index] % 60, true).show();
+    }
+
+    private void updateActiveHoursButtons(DialogAppPolicyBinding dialogBinding, int[] activeHours) {
+        dialogBinding.btnActiveFrom.setText("FROM " + formatMinute(activeHours[0]));
+        dialogBinding.btnActiveTo.setText("TO " + formatMinute(activeHours[1]));
+    }
+
+    private static String formatMinute(int minuteOfDay) {
+        return String.format(Locale.US, "%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    private static long parseSeconds(CharSequence text) {
+        try {
+            return text == null ? 0 : Long.parseLong(text.toString().trim());
+        } catch (NumberFormatException e) {
+            return AppPolicy.DEFAULT_GRACE_MS / 1000;
+        }
+    }
+
     @Override
     public void onDestroyView() {
         // Stop background loading immediately to prevent crashes
@@ -6,7 +6,9 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.os.Bundle;
+import android.provider.Settings;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -30,8 +32,17 @@ import com.google.api.services.drive.DriveScopes;
 import com.hfs.security.R;
 import com.hfs.security.databinding.FragmentSettingsBinding;
 import com.hfs.security.receivers.AdminReceiver;
+import com.hfs.security.services.ActivityRuleMatcher;
+import com.hfs.security.services.GuardClient;
+import com.hfs.security.ui.LockScreenWarmup;
 import com.hfs.security.ui.SplashActivity;
 import com.hfs.security.utils.HFSDatabaseHelper;
+import com.hfs.security.utils.LatencyRecorder;
+import com.hfs.security.utils.PermissionHelper;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Advanced Settings Screen for HFS Security.
@@ -107,10 +118,29 @@ public class SettingsFragment extends Fragment {
         // Feature Toggles
         binding.switchStealthMode.setChecked(db.isStealthModeEnabled());
         binding.switchFakeGallery.setChecked(db.isFakeGalleryEnabled());
+        binding.switchOverlayLock.setChecked(db.isOverlayLockEnabled() && PermissionHelper.canDrawOverlays(requireContext()));
+        binding.switchInstantDetection.setChecked(PermissionHelper.isAccessibilityServiceEnabled(requireContext()));
+        binding.switchLockSystemPages.setChecked(
+                db.getActivityRules().containsAll(Arrays.asList(ActivityRuleMatcher.SYSTEM_PAGE_RULES)));
 
         // Cloud Drive Status
         binding.switchCloudSync.setChecked(db.isDriveEnabled());
         updateDriveAccountUI();
+
+        updateDiagnosticsUI();
+    }
+
+    private void updateDiagnosticsUI() {
+        String report = LatencyRecorder.formatReport(requireContext())
+                + "\n\n" + LockScreenWarmup.summary();
+        binding.tvLatencyReport.setText(report + "\n\nGuard: not running");
+
+        // The counters live in the guard process; ask it for them
+        GuardClient.getInstance(requireContext()).requestStats(summary -> {
+            if (binding != null) {
+                binding.tvLatencyReport.setText(report + "\n\nGuard: " + summary);
+            }
+        });
     }
 
     private void updateDriveAccountUI() {
@@ -167,6 +197,36 @@ public class SettingsFragment extends Fragment {
             }
         });
 
+        // Fast Overlay Lock: requires the "Display over other apps" permission
+        binding.switchOverlayLock.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (isChecked && !PermissionHelper.canDrawOverlays(requireContext())) {
+                binding.switchOverlayLock.setChecked(false);
+                Toast.makeText(getContext(), "Allow HFS to display over other apps", Toast.LENGTH_LONG).show();
+                Intent intent = new Intent(Settings.ACTION_MANAGE_OVERLAY_PERMISSION,
+                        Uri.parse("package:" + requireContext().getPackageName()));
+                startActivity(intent);
+                return;
+            }
+            db.setOverlayLockEnabled(isChecked);
+        });
+
+        // Instant Detection: the state is owned by the system, so only open its settings page
+        binding.switchInstantDetection.setOnClickListener(v -> {
+            binding.switchInstantDetection.setChecked(PermissionHelper.isAccessibilityServiceEnabled(requireContext()));
+            PermissionHelper.openAccessibilitySettings(requireContext());
+        });
+
+        // System Pages Lock: locks only the Settings pages and dialogs that could disable HFS
+        binding.switchLockSystemPages.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            Set<String> rules = new HashSet<>(db.getActivityRules());
+            if (isChecked) {
+                rules.addAll(Arrays.asList(ActivityRuleMatcher.SYSTEM_PAGE_RULES));
+            } else {
+                rules.removeAll(Arrays.asList(ActivityRuleMatcher.SYSTEM_PAGE_RULES));
+            }
+            db.saveActivityRules(rules);
+        });
+
         // Anti-Uninstall Toggle
         binding.switchAntiUninstall.setOnCheckedChangeListener((buttonView, isChecked) -> {
             if (isChecked) {
@@ -220,6 +280,15 @@ public class SettingsFragment extends Fragment {
         devicePolicyManager.removeActiveAdmin(adminComponent);
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        // Reflect changes made in the system Accessibility settings
+        if (binding != null) {
+            binding.switchInstantDetection.setChecked(PermissionHelper.isAccessibilityServiceEnabled(requireContext()));
+        }
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
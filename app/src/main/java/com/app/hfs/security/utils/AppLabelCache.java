@@ -0,0 +1,110 @@
+package com.hfs.security.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.LruCache;
+
+import androidx.core.content.pm.PackageInfoCompat;
+
+/**
+ * Shared, bounded cache of app labels.
+ * Labels are resolved once per installed version and dropped again when the
+ * system reports the package as added, replaced or removed. Keeps
+ * PackageManager binder calls off the lock trigger path.
+ */
+public class AppLabelCache {
+
+    private static final int MAX_ENTRIES = 256;
+
+    private static AppLabelCache instance;
+
+    private final PackageManager packageManager;
+    private final LruCache<String, Entry> cache = new LruCache<>(MAX_ENTRIES);
+
+    private static final class Entry {
+        final String label;
+        final long versionCode;
+
+        Entry(String label, long versionCode) {
+            this.label = label;
+            this.versionCode = versionCode;
+        }
+    }
+
+    private AppLabelCache(Context context) {
+        packageManager = context.getPackageManager();
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiver(packageChangeReceiver, filter);
+    }
+
+    public static synchronized AppLabelCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AppLabelCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Invalidates the cached label whenever an install changes.
+     */
+    private final BroadcastReceiver packageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            if (data != null) {
+                invalidate(data.getSchemeSpecificPart());
+            }
+        }
+    };
+
+    /**
+     * Returns the label for a package, resolving it only on a cache miss.
+     * Falls back to the package name if the app is not installed.
+     */
+    public String getLabel(String packageName) {
+        Entry entry = cache.get(packageName);
+        if (entry != null) {
+            return entry.label;
+        }
+
+        try {
+            return getLabel(packageManager.getPackageInfo(packageName, 0));
+        } catch (PackageManager.NameNotFoundException e) {
+            return packageName;
+        }
+    }
+
+    /**
+     * Returns the label for an already loaded PackageInfo.
+     * A cached label is reused only if it belongs to the same version code.
+     */
+    public String getLabel(PackageInfo info) {
+        long versionCode = PackageInfoCompat.getLongVersionCode(info);
+        Entry entry = cache.get(info.packageName);
+        if (entry != null && entry.versionCode == versionCode) {
+            return entry.label;
+        }
+
+        String label = info.applicationInfo != null
+                ? packageManager.getApplicationLabel(info.applicationInfo).toString()
+                : info.packageName;
+        cache.put(info.packageName, new Entry(label, versionCode));
+        return label;
+    }
+
+    public void invalidate(String packageName) {
+        if (packageName != null) {
+            cache.remove(packageName);
+        }
+    }
+}
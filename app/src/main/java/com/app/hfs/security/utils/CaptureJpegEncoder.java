@@ -0,0 +1,39 @@
+package com.hfs.security.utils;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes a camera frame to its final JPEG in a single pass.
+ * The NV21 planes go straight into the platform JPEG encoder, and the
+ * rotation and front-camera mirroring are recorded as EXIF orientation
+ * rather than applied to the pixels: no intermediate JPEG, no Bitmap decode
+ * and no rotated copy of the frame.
+ */
+public final class CaptureJpegEncoder {
+
+    /** Quality of the stored evidence JPEGs. */
+    public static final int QUALITY = 90;
+
+    private CaptureJpegEncoder() {}
+
+    /**
+     * @param nv21            Frame in NV21 layout, width * height * 3 / 2 bytes
+     * @param rotationDegrees Clockwise rotation the frame needs to be upright
+     * @param mirrored        True for front camera frames
+     * @return False if the platform encoder failed
+     */
+    public static boolean encode(byte[] nv21, int width, int height, int rotationDegrees, boolean mirrored,
+                                 OutputStream out) throws IOException {
+        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+        ExifOrientationStream jpeg = new ExifOrientationStream(out,
+                ExifOrientationStream.orientationFor(rotationDegrees, mirrored));
+        boolean encoded = yuvImage.compressToJpeg(new Rect(0, 0, width, height), QUALITY, jpeg);
+        jpeg.flush();
+        return encoded;
+    }
+}
@@ -0,0 +1,152 @@
+package com.hfs.security.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes evidence files on a dedicated I/O thread, so encoding and disk
+ * writes never stall the camera thread that hands the frames over.
+ *
+ * Each file is written as "name.part" next to its final name and renamed
+ * into place once complete; the rename is atomic, so a crash mid-write
+ * never leaves a partial JPEG where the intruder history lists them. Parts
+ * left behind by a crash are removed when the writer starts.
+ *
+ * The queue is bounded: when it is full, a submission fails at once rather
+ * than blocking the caller. Plain Java, so it is tested on the JVM.
+ */
+public final class EvidenceWriter {
+
+    /** No fsync: fastest, a power cut may lose files renamed shortly before. */
+    public static final int FSYNC_NONE = 0;
+    /** Sync each file's data before its rename: a renamed file is complete on disk. */
+    public static final int FSYNC_FILE = 1;
+    /** Also sync the directory after the rename, so the new name itself survives a power cut. */
+    public static final int FSYNC_FILE_AND_DIRECTORY = 2;
+
+    static final String PART_SUFFIX = ".part";
+
+    // A burst of evidence frames plus the single capture path
+    private static final int QUEUE_CAPACITY = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static EvidenceWriter instance;
+
+    /**
+     * Produces the file's content, on the writer thread.
+     */
+    public interface Payload {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private final File directory;
+    private final int fsyncPolicy;
+    private final ThreadPoolExecutor executor;
+
+    EvidenceWriter(File directory, int queueCapacity, int fsyncPolicy) {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "HFS-EvidenceWriter");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.execute(this::removeStaleParts);
+    }
+
+    /**
+     * @param directory The intruders directory, created if missing
+     */
+    public static synchronized EvidenceWriter getInstance(File directory) {
+        if (instance == null) {
+            instance = new EvidenceWriter(directory, QUEUE_CAPACITY, FSYNC_FILE);
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a file for writing.
+     *
+     * @param fileName Final name inside the directory
+     * @return Completes with the renamed file, or exceptionally if the queue was
+     *         full or the write failed; completion runs on the writer thread
+     */
+    public CompletableFuture<File> submit(String fileName, Payload payload) {
+        CompletableFuture<File> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(write(fileName, payload));
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * @return Writes waiting for the I/O thread
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    private File write(String fileName, Payload payload) throws IOException {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        File target = new File(directory, fileName);
+        File part = new File(directory, fileName + PART_SUFFIX);
+
+        boolean renamed = false;
+        try {
+            FileOutputStream file = new FileOutputStream(part);
+            try (OutputStream out = new BufferedOutputStream(file, BUFFER_SIZE)) {
+                payload.writeTo(out);
+                out.flush();
+                if (fsyncPolicy != FSYNC_NONE) {
+                    file.getFD().sync();
+                }
+            }
+            if (!part.renameTo(target)) {
+                throw new IOException("Rename failed: " + target.getName());
+            }
+            renamed = true;
+        } finally {
+            if (!renamed) {
+                part.delete();
+            }
+        }
+
+        if (fsyncPolicy == FSYNC_FILE_AND_DIRECTORY) {
+            try (FileChannel dir = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+                dir.force(true);
+            } catch (IOException ignored) {
+                // Not every file system lets a directory be opened for sync
+            }
+        }
+        return target;
+    }
+
+    private void removeStaleParts() {
+        File[] parts = directory.listFiles((dir, name) -> name.endsWith(PART_SUFFIX));
+        if (parts == null) return;
+        for (File part : parts) {
+            part.delete();
+        }
+    }
+}
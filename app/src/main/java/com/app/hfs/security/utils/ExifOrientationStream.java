@@ -0,0 +1,97 @@
+package com.hfs.security.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes a JPEG through and inserts an EXIF APP1 segment carrying only the
+ * Orientation tag right after the SOI marker. Viewers apply the rotation and
+ * mirroring when they display the image, so the encoder never has to turn
+ * the pixels itself.
+ * Plain Java, so it is tested off-device.
+ */
+public class ExifOrientationStream extends FilterOutputStream {
+
+    /** EXIF Orientation values (TIFF tag 0x0112). */
+    public static final int NORMAL = 1;
+    public static final int FLIP_HORIZONTAL = 2;
+    public static final int ROTATE_180 = 3;
+    public static final int FLIP_VERTICAL = 4;
+    public static final int TRANSPOSE = 5;
+    public static final int ROTATE_90 = 6;
+    public static final int TRANSVERSE = 7;
+    public static final int ROTATE_270 = 8;
+
+    // SOI marker, the only thing written before the APP1 segment
+    private static final int SOI_LENGTH = 2;
+
+    private final byte[] segment;
+    private int written = 0;
+
+    /**
+     * @param orientation EXIF orientation, see {@link #orientationFor}
+     */
+    public ExifOrientationStream(OutputStream out, int orientation) {
+        super(out);
+        this.segment = buildSegment(orientation);
+    }
+
+    /**
+     * Orientation that displays a frame upright.
+     *
+     * @param rotationDegrees Clockwise rotation the frame needs (CameraX rotationDegrees)
+     * @param mirrored        True to also flip it horizontally after the rotation,
+     *                        as a front camera preview does
+     */
+    public static int orientationFor(int rotationDegrees, boolean mirrored) {
+        switch (((rotationDegrees % 360) + 360) % 360) {
+            case 90: return mirrored ? TRANSPOSE : ROTATE_90;
+            case 180: return mirrored ? FLIP_VERTICAL : ROTATE_180;
+            case 270: return mirrored ? TRANSVERSE : ROTATE_270;
+            default: return mirrored ? FLIP_HORIZONTAL : NORMAL;
+        }
+    }
+
+    /**
+     * APP1 "Exif" segment: little-endian TIFF header and one IFD with one entry.
+     */
+    private static byte[] buildSegment(int orientation) {
+        return new byte[] {
+                (byte) 0xFF, (byte) 0xE1, 0, 34,               // APP1, length incl. itself
+                'E', 'x', 'i', 'f', 0, 0,
+                'I', 'I', 42, 0, 8, 0, 0, 0,                   // TIFF header, IFD0 at 8
+                1, 0,                                          // one entry
+                0x12, 0x01, 3, 0, 1, 0, 0, 0,                  // Orientation, SHORT, count 1
+                (byte) orientation, 0, 0, 0,                   // value
+                0, 0, 0, 0                                     // no next IFD
+        };
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        if (++written == SOI_LENGTH) {
+            out.write(segment);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (written >= SOI_LENGTH) {
+            out.write(b, off, len);
+            written += len;
+            return;
+        }
+        int head = Math.min(len, SOI_LENGTH - written);
+        out.write(b, off, head);
+        written += head;
+        if (written == SOI_LENGTH) {
+            out.write(segment);
+        }
+        if (len > head) {
+            out.write(b, off + head, len - head);
+            written += len - head;
+        }
+    }
+}
@@ -1,24 +1,18 @@
 package com.hfs.security.utils;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.util.Log;
 
 import androidx.camera.core.ImageProxy;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Data Storage Utility.
@@ -30,37 +24,85 @@ public class FileSecureHelper {
     private static final String TAG = "HFS_FileSecure";
     private static final String INTRUDER_DIR = "intruders";
 
+    // Conversion scratch per camera thread; the frame buffers come from the shared pool
+    private static final ThreadLocal<YuvConverter> converter = new ThreadLocal<YuvConverter>() {
+        @Override
+        protected YuvConverter initialValue() {
+            return new YuvConverter();
+        }
+    };
+
     /**
      * NEW: Saves the capture and returns the File object for Google Drive upload.
      * Required by LockScreenActivity to process cloud sync.
+     * The frame is encoded once, with its orientation stored as EXIF.
+     * Waits for the evidence writer; the lock screen uses the asynchronous
+     * {@link #saveEvidenceFrame} instead.
      */
     public static File saveIntruderCaptureAndGetFile(Context context, ImageProxy imageProxy) {
-        Bitmap bitmap = imageProxyToBitmap(imageProxy);
-        if (bitmap == null) return null;
+        FrameBufferPool pool = FrameBufferPool.getInstance();
+        byte[] nv21 = imageProxyToNv21(imageProxy, pool);
+        CompletableFuture<File> future = submitJpeg(context, nv21, imageProxy.getWidth(), imageProxy.getHeight(),
+                imageProxy.getImageInfo().getRotationDegrees(), "");
+        // The pooled buffer goes back once the writer thread has encoded it
+        future.whenComplete((file, error) -> pool.release(nv21));
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "File creation failed: " + e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
 
-        int rotation = imageProxy.getImageInfo().getRotationDegrees();
-        bitmap = rotateBitmap(bitmap, rotation);
+    /**
+     * Buffers an analysis frame into the pre-failure ring. The full-size
+     * NV21 buffer goes back to the pool straight away.
+     */
+    public static void bufferFrame(ImageProxy imageProxy, FrameRing ring, long timestampMs) {
+        FrameBufferPool pool = FrameBufferPool.getInstance();
+        byte[] nv21 = imageProxyToNv21(imageProxy, pool);
+        ring.push(nv21, imageProxy.getWidth(), imageProxy.getHeight(),
+                imageProxy.getImageInfo().getRotationDegrees(), timestampMs);
+        pool.release(nv21);
+    }
 
+    /**
+     * Queues one frame of the ring for the evidence writer. The frame is
+     * copied, as the ring reuses its slot; encoding and writing happen on
+     * the writer thread.
+     *
+     * @param sequence Position of the frame in the saved burst, part of the file name
+     * @return Completes with the saved file once it is visible in the intruders directory
+     */
+    public static CompletableFuture<File> saveEvidenceFrame(Context context, byte[] nv21, int width, int height,
+                                                            int rotation, int sequence) {
+        byte[] copy = Arrays.copyOf(nv21, YuvConverter.bufferSize(width, height));
+        return submitJpeg(context, copy, width, height, rotation, "_" + sequence);
+    }
+
+    private static CompletableFuture<File> submitJpeg(Context context, byte[] nv21, int width, int height,
+                                                      int rotation, String suffix) {
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-        String fileName = "HFS_INTRUDER_" + timestamp + ".jpg";
+        String fileName = "HFS_INTRUDER_" + timestamp + suffix + ".jpg";
 
         File directory = new File(context.getExternalFilesDir(null), INTRUDER_DIR);
-        if (!directory.exists()) {
-            directory.mkdirs();
-        }
-
-        File file = new File(directory, fileName);
-
-        try (FileOutputStream out = new FileOutputStream(file)) {
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
-            Log.i(TAG, "Local evidence stored for upload: " + file.getAbsolutePath());
-            return file;
-        } catch (IOException e) {
-            Log.e(TAG, "File creation failed: " + e.getMessage());
-            return null;
-        } finally {
-            bitmap.recycle();
-        }
+        CompletableFuture<File> future = EvidenceWriter.getInstance(directory).submit(fileName, out -> {
+            // Intruder shots come from the front camera, shown mirrored like its preview
+            if (!CaptureJpegEncoder.encode(nv21, width, height, rotation, true, out)) {
+                throw new IOException("JPEG encoder failed");
+            }
+        });
+        future.whenComplete((file, error) -> {
+            if (error != null) {
+                Log.e(TAG, "File creation failed: " + error.getMessage());
+            } else {
+                Log.i(TAG, "Local evidence stored for upload: " + file.getAbsolutePath());
+            }
+        });
+        return future;
     }
 
     /**
@@ -71,46 +113,21 @@ public class FileSecureHelper {
     }
 
     /**
-     * Helper to convert CameraX YUV_420_888 format to Bitmap.
+     * Converts the CameraX YUV_420_888 planes to NV21 in a pooled buffer,
+     * honouring row and pixel strides. Release the buffer to the pool.
      */
-    private static Bitmap imageProxyToBitmap(ImageProxy image) {
-        try {
-            ImageProxy.PlaneProxy[] planes = image.getPlanes();
-            ByteBuffer yBuffer = planes[0].getBuffer();
-            ByteBuffer uBuffer = planes[1].getBuffer();
-            ByteBuffer vBuffer = planes[2].getBuffer();
-
-            int ySize = yBuffer.remaining();
-            int uSize = uBuffer.remaining();
-            int vSize = vBuffer.remaining();
-
-            byte[] nv21 = new byte[ySize + uSize + vSize];
-            yBuffer.get(nv21, 0, ySize);
-            vBuffer.get(nv21, ySize, vSize);
-            uBuffer.get(nv21, ySize + vSize, uSize);
-
-            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 100, out);
-
-            byte[] imageBytes = out.toByteArray();
-            return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-        } catch (Exception e) {
-            Log.e(TAG, "Bitmap conversion failed: " + e.getMessage());
-            return null;
+    private static byte[] imageProxyToNv21(ImageProxy image, FrameBufferPool pool) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        YuvConverter yuv = converter.get();
+        for (int i = 0; i < 3; i++) {
+            yuv.setPlane(i, planes[i].getBuffer(), planes[i].getRowStride(), planes[i].getPixelStride());
         }
-    }
 
-    /**
-     * Rotates a bitmap to the correct orientation based on camera sensor data.
-     */
-    private static Bitmap rotateBitmap(Bitmap bitmap, int degrees) {
-        if (degrees == 0) return bitmap;
-        Matrix matrix = new Matrix();
-        matrix.postRotate(degrees);
-        // Flip horizontally for front camera mirror effect
-        matrix.postScale(-1, 1, bitmap.getWidth() / 2f, bitmap.getHeight() / 2f);
-        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        byte[] nv21 = pool.acquire(YuvConverter.bufferSize(width, height));
+        yuv.convert(width, height, YuvConverter.NV21, nv21);
+        return nv21;
     }
 
     /**
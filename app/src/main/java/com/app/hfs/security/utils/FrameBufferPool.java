@@ -0,0 +1,70 @@
+package com.hfs.security.utils;
+
+/**
+ * Small pool of frame-sized byte arrays, so converting camera frames does
+ * not allocate a new full-frame buffer per capture. Every buffer has the
+ * size of the current analysis resolution; asking for another size drops
+ * the pooled ones and the pool re-fills at the new size.
+ * Thread-safe: buffers are taken on the camera thread and may be handed
+ * back from the thread that wrote them out.
+ */
+public final class FrameBufferPool {
+
+    // A frame in conversion, one being encoded and one spare
+    private static final int DEFAULT_CAPACITY = 3;
+
+    private static final FrameBufferPool instance = new FrameBufferPool(DEFAULT_CAPACITY);
+
+    private final byte[][] free;
+    private int freeCount = 0;
+    private int bufferSize = 0;
+    private long allocations = 0;
+
+    FrameBufferPool(int capacity) {
+        free = new byte[capacity][];
+    }
+
+    public static FrameBufferPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return A buffer of exactly {@code size} bytes with undefined contents
+     */
+    public synchronized byte[] acquire(int size) {
+        if (size != bufferSize) {
+            // Resolution changed: the pooled buffers are of no use any more
+            for (int i = 0; i < freeCount; i++) {
+                free[i] = null;
+            }
+            freeCount = 0;
+            bufferSize = size;
+        }
+        if (freeCount > 0) {
+            byte[] buffer = free[--freeCount];
+            free[freeCount] = null;
+            return buffer;
+        }
+        allocations++;
+        return new byte[size];
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers of an old size, or beyond the
+     * pool's capacity, are left to the garbage collector.
+     */
+    public synchronized void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize || freeCount == free.length) return;
+        for (int i = 0; i < freeCount; i++) {
+            if (free[i] == buffer) return;
+        }
+        free[freeCount++] = buffer;
+    }
+
+    /**
+     * @return Buffers allocated since start; flat once the pool is warm
+     */
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+}
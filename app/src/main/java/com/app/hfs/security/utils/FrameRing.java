@@ -0,0 +1,251 @@
+package com.hfs.security.utils;
+
+/**
+ * Ring of the most recent camera frames, kept downscaled in NV21, so the
+ * evidence of a failed unlock can show the moments around the failure
+ * instead of whatever the camera saw when the lock screen opened.
+ *
+ * The slots are allocated once, on the first frame, and overwritten in
+ * place from then on: buffering a frame allocates nothing. The number of
+ * slots is the requested capacity, lowered if needed so that all of them
+ * fit in the memory cap. With a {@link FrameScorer} set, each frame is
+ * scored as it comes in, so picking the best frames after a failure costs
+ * nothing more. Plain Java, so it is unit tested.
+ */
+public final class FrameRing {
+
+    /**
+     * Receives buffered frames. The array is the ring's own slot and only
+     * valid during the call.
+     */
+    public interface FrameVisitor {
+        void onFrame(byte[] nv21, int width, int height, int rotationDegrees, long timestampMs);
+    }
+
+    private final int capacity;
+    private final long memoryCapBytes;
+    private final int maxLongEdge;
+
+    // Slots, allocated for the current source size
+    private byte[][] slots = new byte[0][];
+    private final long[] timestamps;
+    private final int[] rotations;
+    private final float[] scores;
+    // Window candidates while picking the best frames
+    private final int[] candidates;
+    private FrameScorer scorer = null;
+    private int sourceWidth = 0;
+    private int sourceHeight = 0;
+    private int scale = 1;
+    private int width = 0;
+    private int height = 0;
+
+    private int next = 0;
+    private int count = 0;
+
+    /**
+     * @param capacity       Frames to keep at most
+     * @param memoryCapBytes Budget for all slots together
+     * @param maxLongEdge    Frames are downscaled by a whole factor until their
+     *                       long edge is at most this
+     */
+    public FrameRing(int capacity, long memoryCapBytes, int maxLongEdge) {
+        this.capacity = capacity;
+        this.memoryCapBytes = memoryCapBytes;
+        this.maxLongEdge = maxLongEdge;
+        timestamps = new long[capacity];
+        rotations = new int[capacity];
+        scores = new float[capacity];
+        candidates = new int[capacity];
+    }
+
+    /**
+     * Scores every frame pushed from now on; scoring runs on the pushing thread.
+     */
+    public synchronized void setScorer(FrameScorer scorer) {
+        this.scorer = scorer;
+    }
+
+    /**
+     * Downscales a full NV21 frame into the oldest slot.
+     */
+    public synchronized void push(byte[] nv21, int frameWidth, int frameHeight, int rotationDegrees,
+                                  long timestampMs) {
+        if (frameWidth != sourceWidth || frameHeight != sourceHeight) {
+            allocate(frameWidth, frameHeight);
+        }
+        if (slots.length == 0) return;
+
+        downscale(nv21, slots[next]);
+        timestamps[next] = timestampMs;
+        rotations[next] = rotationDegrees;
+        scores[next] = scorer != null ? scorer.score(slots[next], width, height) : 0f;
+        next = (next + 1) % slots.length;
+        count = Math.min(count + 1, slots.length);
+    }
+
+    /**
+     * Visits the frames taken between two times, oldest first.
+     *
+     * @return Number of frames visited
+     */
+    public synchronized int forEachBetween(long fromMs, long toMs, FrameVisitor visitor) {
+        int visited = 0;
+        for (int i = count; i > 0; i--) {
+            int index = Math.floorMod(next - i, slots.length);
+            long timestamp = timestamps[index];
+            if (timestamp < fromMs || timestamp > toMs) continue;
+            visitor.onFrame(slots[index], width, height, rotations[index], timestamp);
+            visited++;
+        }
+        return visited;
+    }
+
+    /**
+     * Visits the best scored frames taken between two times, best first.
+     * Without a scorer all frames score alike and the oldest come first.
+     *
+     * @param limit Frames to visit at most
+     * @return Number of frames visited
+     */
+    public synchronized int forEachBest(long fromMs, long toMs, int limit, FrameVisitor visitor) {
+        int found = 0;
+        for (int i = count; i > 0; i--) {
+            int index = Math.floorMod(next - i, slots.length);
+            if (timestamps[index] >= fromMs && timestamps[index] <= toMs) {
+                candidates[found++] = index;
+            }
+        }
+
+        // Partial selection sort: the ring holds a dozen frames at most
+        int visited = Math.min(limit, found);
+        for (int i = 0; i < visited; i++) {
+            int best = i;
+            for (int j = i + 1; j < found; j++) {
+                if (scores[candidates[j]] > scores[candidates[best]]) best = j;
+            }
+            int index = candidates[best];
+            candidates[best] = candidates[i];
+            candidates[i] = index;
+            visitor.onFrame(slots[index], width, height, rotations[index], timestamps[index]);
+        }
+        return visited;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return Slots the memory cap allows at the current size; 0 before the first frame
+     */
+    public synchronized int getSlotCount() {
+        return slots.length;
+    }
+
+    public synchronized long getMemoryBytes() {
+        return (long) slots.length * YuvConverter.bufferSize(width, height);
+    }
+
+    public synchronized void clear() {
+        count = 0;
+        next = 0;
+    }
+
+    private void allocate(int frameWidth, int frameHeight) {
+        sourceWidth = frameWidth;
+        sourceHeight = frameHeight;
+        scale = 1;
+        while (Math.max(frameWidth, frameHeight) / scale > maxLongEdge) {
+            scale++;
+        }
+        // Even sizes keep the chroma planes simple
+        width = (frameWidth / scale) & ~1;
+        height = (frameHeight / scale) & ~1;
+
+        int frameBytes = YuvConverter.bufferSize(width, height);
+        int slotCount = (int) Math.min(capacity, memoryCapBytes / Math.max(1, frameBytes));
+        slots = new byte[Math.max(0, slotCount)][];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new byte[frameBytes];
+        }
+        next = 0;
+        count = 0;
+    }
+
+    /**
+     * Box-filters the frame down by {@link #scale}; luma and the interleaved
+     * V/U samples alike.
+     */
+    private void downscale(byte[] src, byte[] dst) {
+        if (scale == 2) {
+            downscaleByTwo(src, dst);
+            return;
+        }
+        int area = scale * scale;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int dy = 0; dy < scale; dy++) {
+                    int row = (y * scale + dy) * sourceWidth + x * scale;
+                    for (int dx = 0; dx < scale; dx++) {
+                        sum += src[row + dx] & 0xFF;
+                    }
+                }
+                dst[y * width + x] = (byte) (sum / area);
+            }
+        }
+
+        int srcChroma = sourceWidth * sourceHeight;
+        int srcChromaWidth = (sourceWidth + 1) / 2;
+        int dstChroma = width * height;
+        int chromaWidth = width / 2;
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                int v = 0;
+                int u = 0;
+                for (int dy = 0; dy < scale; dy++) {
+                    int row = srcChroma + (y * scale + dy) * srcChromaWidth * 2 + x * scale * 2;
+                    for (int dx = 0; dx < scale; dx++) {
+                        v += src[row + 2 * dx] & 0xFF;
+                        u += src[row + 2 * dx + 1] & 0xFF;
+                    }
+                }
+                int offset = dstChroma + y * width + 2 * x;
+                dst[offset] = (byte) (v / area);
+                dst[offset + 1] = (byte) (u / area);
+            }
+        }
+    }
+
+    /**
+     * The common case (VGA analysis frames): 2x2 averages without the generic loops.
+     */
+    private void downscaleByTwo(byte[] src, byte[] dst) {
+        for (int y = 0; y < height; y++) {
+            int top = 2 * y * sourceWidth;
+            int bottom = top + sourceWidth;
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                int s = 2 * x;
+                dst[out + x] = (byte) (((src[top + s] & 0xFF) + (src[top + s + 1] & 0xFF)
+                        + (src[bottom + s] & 0xFF) + (src[bottom + s + 1] & 0xFF)) >> 2);
+            }
+        }
+
+        int srcRow = ((sourceWidth + 1) / 2) * 2;
+        int srcChroma = sourceWidth * sourceHeight;
+        int dstChroma = width * height;
+        for (int y = 0; y < height / 2; y++) {
+            int top = srcChroma + 2 * y * srcRow;
+            int bottom = top + srcRow;
+            int out = dstChroma + y * width;
+            // Pairs of V/U samples: average each with its neighbour pair, 4 bytes on
+            for (int x = 0; x < width; x++) {
+                int s = (x & ~1) * 2 + (x & 1);
+                dst[out + x] = (byte) (((src[top + s] & 0xFF) + (src[top + s + 2] & 0xFF)
+                        + (src[bottom + s] & 0xFF) + (src[bottom + s + 2] & 0xFF)) >> 2);
+            }
+        }
+    }
+}
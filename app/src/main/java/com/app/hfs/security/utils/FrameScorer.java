@@ -0,0 +1,106 @@
+package com.hfs.security.utils;
+
+import java.util.Arrays;
+
+/**
+ * Scores how useful a camera frame is as evidence, from its luma plane only:
+ * the variance of the Laplacian for sharpness (motion blur and defocus flatten
+ * it) and the luma histogram for exposure (crushed or blown-out frames show
+ * nobody). Pixels in the centre of the frame, where a face in front of the
+ * phone is, weigh four times as much as the border: the centre quarter
+ * counts a little more than the rest of the frame together.
+ *
+ * One pass over the frame, no allocation; one instance per thread. Plain Java,
+ * so it runs in plain JVM tests.
+ */
+public final class FrameScorer {
+
+    // Laplacian variance at which sharpness counts as half way there
+    private static final double SHARPNESS_KNEE = 150.0;
+
+    // Luma at or past these counts as clipped
+    private static final int DARK_LEVEL = 16;
+    private static final int BRIGHT_LEVEL = 240;
+
+    private static final int CENTRE_WEIGHT = 4;
+
+    private final int[] histogram = new int[256];
+
+    private double lastSharpness;
+    private double lastExposure;
+
+    /**
+     * @param luma NV21 or I420 frame; only the first {@code width * height} bytes are read
+     * @return Score in [0, 1], higher is better
+     */
+    public float score(byte[] luma, int width, int height) {
+        Arrays.fill(histogram, 0);
+        if (width < 3 || height < 3) {
+            lastSharpness = 0;
+            lastExposure = 0;
+            return 0f;
+        }
+
+        int left = width / 4;
+        int right = width - width / 4;
+        int top = height / 4;
+        int bottom = height - height / 4;
+
+        long weight = 0;
+        long sum = 0;
+        long sumSquares = 0;
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            boolean centreRow = y >= top && y < bottom;
+            for (int x = 1; x < width - 1; x++) {
+                int i = row + x;
+                int centre = luma[i] & 0xFF;
+                int laplacian = 4 * centre - (luma[i - 1] & 0xFF) - (luma[i + 1] & 0xFF)
+                        - (luma[i - width] & 0xFF) - (luma[i + width] & 0xFF);
+                int w = centreRow && x >= left && x < right ? CENTRE_WEIGHT : 1;
+                weight += w;
+                sum += w * laplacian;
+                sumSquares += (long) w * laplacian * laplacian;
+                histogram[centre] += w;
+            }
+        }
+
+        double mean = (double) sum / weight;
+        lastSharpness = (double) sumSquares / weight - mean * mean;
+        lastExposure = exposure(weight);
+
+        double sharpness = lastSharpness / (lastSharpness + SHARPNESS_KNEE);
+        return (float) (sharpness * lastExposure);
+    }
+
+    /**
+     * @return Laplacian variance of the frame scored last
+     */
+    public double getLastSharpness() {
+        return lastSharpness;
+    }
+
+    /**
+     * @return Exposure factor in [0, 1] of the frame scored last
+     */
+    public double getLastExposure() {
+        return lastExposure;
+    }
+
+    /**
+     * 1 for a frame with nothing clipped and a mid-grey mean, falling with the
+     * share of clipped pixels and with the distance of the mean from mid-grey.
+     */
+    private double exposure(long weight) {
+        long clipped = 0;
+        long total = 0;
+        for (int level = 0; level < 256; level++) {
+            int count = histogram[level];
+            if (level <= DARK_LEVEL || level >= BRIGHT_LEVEL) clipped += count;
+            total += (long) level * count;
+        }
+        double clippedShare = (double) clipped / weight;
+        double meanOffset = Math.abs((double) total / weight - 128.0) / 128.0;
+        return Math.max(0.0, 1.0 - 2.0 * clippedShare) * (1.0 - 0.5 * meanOffset);
+    }
+}
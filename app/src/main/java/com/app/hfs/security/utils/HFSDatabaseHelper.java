@@ -2,13 +2,23 @@ package com.hfs.security.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Bundle;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.services.GuardStateFile;
+import com.hfs.security.services.PackageRuleMatcher;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Manages local persistent storage for HFS Security.
@@ -22,11 +32,15 @@ public class HFSDatabaseHelper {
     
     // Core Security Keys
     private static final String KEY_PROTECTED_PACKAGES = "protected_packages";
+    private static final String KEY_APP_POLICIES = "app_policies";
+    private static final String KEY_ACTIVITY_RULES = "activity_rules";
+    private static final String KEY_PACKAGE_RULES = "package_rules";
     private static final String KEY_MASTER_PIN = "master_pin";
     private static final String KEY_TRUSTED_NUMBER = "trusted_number";
     private static final String KEY_SETUP_COMPLETE = "setup_complete";
     private static final String KEY_STEALTH_MODE = "stealth_mode_enabled";
     private static final String KEY_FAKE_GALLERY = "fake_gallery_enabled";
+    private static final String KEY_OVERLAY_LOCK = "overlay_lock_enabled";
     private static final String KEY_OWNER_FACE_DATA = "owner_face_template";
 
     // NEW: Google Drive Cloud Sync Keys
@@ -34,13 +48,90 @@ public class HFSDatabaseHelper {
     private static final String KEY_GOOGLE_ACCOUNT = "google_account_email";
     private static final String KEY_DRIVE_FOLDER_ID = "google_drive_folder_id";
 
+    private static final Type PACKAGE_SET_TYPE = new TypeToken<HashSet<String>>() {}.getType();
+    private static final Type POLICY_MAP_TYPE = new TypeToken<HashMap<String, AppPolicy>>() {}.getType();
+
+    // Package patterns are compiled here, never on the guard's monitor thread
+    private static final ExecutorService ruleCompiler = Executors.newSingleThreadExecutor();
+
+    // Bundle keys of the guard configuration handed to the ":guard" process
+    private static final String CONFIG_PROTECTED = "protected";
+    private static final String CONFIG_POLICIES = "policies";
+    private static final String CONFIG_ACTIVITY_RULES = "activity_rules";
+    private static final String CONFIG_PACKAGE_RULES = "package_rules";
+    private static final String CONFIG_OVERLAY_LOCK = "overlay_lock";
+    private static final String CONFIG_MASTER_PIN = "master_pin";
+
+    /**
+     * Notified when a setting the Background Guard depends on changes.
+     * SharedPreferences do not propagate between processes, so the UI process
+     * forwards these changes to the guard.
+     */
+    public interface GuardConfigListener {
+        void onGuardConfigChanged();
+    }
+
     private static HFSDatabaseHelper instance;
     private final SharedPreferences prefs;
     private final Gson gson;
 
+    // Immutable view of the protected set, read on every monitor tick
+    private volatile Set<String> protectedSnapshot;
+    // Immutable view of the per-app policies, keyed by package name
+    private volatile Map<String, AppPolicy> policySnapshot;
+    // Immutable view of the activity-level rules ("package/classPrefix")
+    private volatile Set<String> activityRuleSnapshot;
+    // Immutable view of the package patterns (exact, prefix or glob)
+    private volatile Set<String> packageRuleSnapshot;
+    // The same patterns compiled; swapped in once a changed set has been compiled
+    private volatile PackageRuleMatcher packageRuleMatcher;
+    // Read by the lock UIs and the guard, which cannot see other processes' writes
+    private volatile boolean overlayLockSnapshot;
+    private volatile String masterPinSnapshot;
+
+    private volatile GuardConfigListener guardConfigListener;
+
+    // Protected set and toggles shared with the other process; null if it cannot be mapped
+    private final GuardStateFile stateFile;
+
+    // Held strongly: SharedPreferences only keeps a weak reference to listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener prefsListener = (sharedPrefs, key) -> {
+        if (key == null || KEY_PROTECTED_PACKAGES.equals(key)) {
+            protectedSnapshot = loadProtectedPackages();
+        }
+        if (key == null || KEY_APP_POLICIES.equals(key)) {
+            policySnapshot = loadAppPolicies();
+        }
+        if (key == null || KEY_ACTIVITY_RULES.equals(key)) {
+            activityRuleSnapshot = loadStringSet(KEY_ACTIVITY_RULES);
+        }
+        if (key == null || KEY_PACKAGE_RULES.equals(key)) {
+            setPackageRuleSnapshot(loadStringSet(KEY_PACKAGE_RULES));
+        }
+        if (key == null || KEY_OVERLAY_LOCK.equals(key)) {
+            overlayLockSnapshot = prefs.getBoolean(KEY_OVERLAY_LOCK, false);
+        }
+        if (key == null || KEY_MASTER_PIN.equals(key)) {
+            masterPinSnapshot = prefs.getString(KEY_MASTER_PIN, "0000");
+        }
+        if (key == null || isGuardKey(key)) {
+            notifyGuardConfigChanged();
+        }
+    };
+
     private HFSDatabaseHelper(Context context) {
         prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
         gson = new Gson();
+        protectedSnapshot = loadProtectedPackages();
+        policySnapshot = loadAppPolicies();
+        activityRuleSnapshot = loadStringSet(KEY_ACTIVITY_RULES);
+        packageRuleSnapshot = loadStringSet(KEY_PACKAGE_RULES);
+        packageRuleMatcher = PackageRuleMatcher.compile(packageRuleSnapshot);
+        overlayLockSnapshot = prefs.getBoolean(KEY_OVERLAY_LOCK, false);
+        masterPinSnapshot = prefs.getString(KEY_MASTER_PIN, "0000");
+        prefs.registerOnSharedPreferenceChangeListener(prefsListener);
+
+        stateFile = GuardStateFile.getInstance(context.getFilesDir());
     }
 
     public static synchronized HFSDatabaseHelper getInstance(Context context) {
@@ -50,14 +141,111 @@ public class HFSDatabaseHelper {
         return instance;
     }
 
+    // --- GUARD PROCESS CONFIGURATION ---
+
+    public void setGuardConfigListener(GuardConfigListener listener) {
+        guardConfigListener = listener;
+    }
+
+    private static boolean isGuardKey(String key) {
+        return KEY_PROTECTED_PACKAGES.equals(key) || KEY_APP_POLICIES.equals(key)
+                || KEY_ACTIVITY_RULES.equals(key) || KEY_PACKAGE_RULES.equals(key)
+                || KEY_OVERLAY_LOCK.equals(key) || KEY_MASTER_PIN.equals(key);
+    }
+
+    private void notifyGuardConfigChanged() {
+        GuardConfigListener listener = guardConfigListener;
+        if (listener != null) {
+            listener.onGuardConfigChanged();
+        }
+    }
+
+    /**
+     * Packs everything the guard reads into a Bundle for the ":guard" process.
+     */
+    public Bundle exportGuardConfig() {
+        Bundle config = new Bundle();
+        config.putStringArrayList(CONFIG_PROTECTED, new ArrayList<>(protectedSnapshot));
+        config.putString(CONFIG_POLICIES, gson.toJson(policySnapshot));
+        config.putStringArrayList(CONFIG_ACTIVITY_RULES, new ArrayList<>(activityRuleSnapshot));
+        config.putStringArrayList(CONFIG_PACKAGE_RULES, new ArrayList<>(packageRuleSnapshot));
+        config.putBoolean(CONFIG_OVERLAY_LOCK, overlayLockSnapshot);
+        config.putString(CONFIG_MASTER_PIN, masterPinSnapshot);
+        return config;
+    }
+
+    /**
+     * Installs a configuration exported by the UI process. Only the in-memory
+     * snapshots change; the UI process owns the preferences file.
+     */
+    public void importGuardConfig(Bundle config) {
+        ArrayList<String> protectedList = config.getStringArrayList(CONFIG_PROTECTED);
+        if (protectedList == null) return;
+
+        protectedSnapshot = Collections.unmodifiableSet(new HashSet<>(protectedList));
+        Map<String, AppPolicy> policies = gson.fromJson(config.getString(CONFIG_POLICIES), POLICY_MAP_TYPE);
+        policySnapshot = policies == null ? Collections.emptyMap() : Collections.unmodifiableMap(policies);
+        activityRuleSnapshot = toSnapshot(config.getStringArrayList(CONFIG_ACTIVITY_RULES));
+        setPackageRuleSnapshot(toSnapshot(config.getStringArrayList(CONFIG_PACKAGE_RULES)));
+        overlayLockSnapshot = config.getBoolean(CONFIG_OVERLAY_LOCK);
+        masterPinSnapshot = config.getString(CONFIG_MASTER_PIN, "0000");
+    }
+
+    private static Set<String> toSnapshot(ArrayList<String> list) {
+        return list == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(list));
+    }
+
+    // --- SHARED STATE FILE ---
+
+    /**
+     * Writes the protected set and the toggles to the state file. Called by
+     * the setters, which only run in the UI process: the guard never edits
+     * its settings, so the configuration section keeps a single writer.
+     */
+    private void publishState() {
+        if (stateFile == null) return;
+        int toggles = 0;
+        if (overlayLockSnapshot) toggles |= GuardStateFile.TOGGLE_OVERLAY_LOCK;
+        if (prefs.getBoolean(KEY_STEALTH_MODE, false)) toggles |= GuardStateFile.TOGGLE_STEALTH_MODE;
+        if (prefs.getBoolean(KEY_FAKE_GALLERY, false)) toggles |= GuardStateFile.TOGGLE_FAKE_GALLERY;
+        if (prefs.getBoolean(KEY_DRIVE_ENABLED, false)) toggles |= GuardStateFile.TOGGLE_DRIVE_SYNC;
+        stateFile.writeConfig(protectedSnapshot, toggles);
+    }
+
+    /**
+     * Seeds the state file from the preferences on the first start with it.
+     * UI process only, like every configuration write: the guard must never
+     * publish its possibly stale copy.
+     */
+    public void seedSharedState() {
+        if (stateFile != null && !stateFile.hasConfig()) {
+            publishState();
+        }
+    }
+
+    /**
+     * The toggles are read from the state file, which sees the other
+     * process' changes at once, once it is seeded.
+     */
+    private boolean hasSharedState() {
+        return stateFile != null && stateFile.hasConfig();
+    }
+
+    private boolean sharedToggle(int toggle) {
+        return (stateFile.getToggles() & toggle) != 0;
+    }
+
     // --- GOOGLE DRIVE / CLOUD SETTINGS ---
 
     public void setDriveEnabled(boolean enabled) {
         prefs.edit().putBoolean(KEY_DRIVE_ENABLED, enabled).apply();
+        publishState();
     }
 
     public boolean isDriveEnabled() {
-        return prefs.getBoolean(KEY_DRIVE_ENABLED, false);
+        return hasSharedState()
+                ? sharedToggle(GuardStateFile.TOGGLE_DRIVE_SYNC)
+                : prefs.getBoolean(KEY_DRIVE_ENABLED, false);
     }
 
     public void saveGoogleAccount(String email) {
@@ -79,31 +267,133 @@ public class HFSDatabaseHelper {
     // --- PROTECTED APPS STORAGE ---
 
     public void saveProtectedPackages(Set<String> packages) {
+        protectedSnapshot = Collections.unmodifiableSet(new HashSet<>(packages));
         String json = gson.toJson(packages);
         prefs.edit().putString(KEY_PROTECTED_PACKAGES, json).apply();
+        publishState();
     }
 
+    /**
+     * Returns the cached protected set without touching SharedPreferences,
+     * preferring the state file so the guard sees UI changes immediately.
+     * The set is immutable and the same instance until it changes; copy it
+     * before making changes.
+     */
     public Set<String> getProtectedPackages() {
-        String json = prefs.getString(KEY_PROTECTED_PACKAGES, null);
+        Set<String> shared = stateFile != null ? stateFile.getProtectedPackages() : null;
+        return shared != null ? shared : protectedSnapshot;
+    }
+
+    private Set<String> loadProtectedPackages() {
+        return loadStringSet(KEY_PROTECTED_PACKAGES);
+    }
+
+    private Set<String> loadStringSet(String key) {
+        String json = prefs.getString(key, null);
         if (json == null) {
-            return new HashSet<>();
+            return Collections.emptySet();
         }
-        Type type = new TypeToken<HashSet<String>>() {}.getType();
-        return gson.fromJson(json, type);
+        Set<String> values = gson.fromJson(json, PACKAGE_SET_TYPE);
+        return values == null ? Collections.emptySet() : Collections.unmodifiableSet(values);
     }
 
     public int getProtectedAppsCount() {
         return getProtectedPackages().size();
     }
 
+    // --- PACKAGE PATTERN RULES ---
+
+    public void savePackageRules(Set<String> patterns) {
+        setPackageRuleSnapshot(Collections.unmodifiableSet(new HashSet<>(patterns)));
+        prefs.edit().putString(KEY_PACKAGE_RULES, gson.toJson(patterns)).apply();
+    }
+
+    /**
+     * Returns the cached package patterns without touching SharedPreferences.
+     * The set is immutable; copy it before making changes.
+     */
+    public Set<String> getPackageRules() {
+        return packageRuleSnapshot;
+    }
+
+    /**
+     * Returns the package patterns compiled into a matcher. After a change the
+     * previous matcher keeps answering until the new one is built.
+     * Guard monitor thread only: the matcher memoizes its results.
+     */
+    public PackageRuleMatcher getPackageRuleMatcher() {
+        return packageRuleMatcher;
+    }
+
+    private void setPackageRuleSnapshot(Set<String> patterns) {
+        packageRuleSnapshot = patterns;
+        ruleCompiler.execute(() -> {
+            PackageRuleMatcher compiled = PackageRuleMatcher.compile(patterns);
+            // Skip it if a newer set was published meanwhile; its own compile is queued
+            if (packageRuleSnapshot == patterns) {
+                packageRuleMatcher = compiled;
+            }
+        });
+    }
+
+    // --- ACTIVITY-LEVEL RULES ---
+
+    public void saveActivityRules(Set<String> rules) {
+        activityRuleSnapshot = Collections.unmodifiableSet(new HashSet<>(rules));
+        prefs.edit().putString(KEY_ACTIVITY_RULES, gson.toJson(rules)).apply();
+    }
+
+    /**
+     * Returns the cached activity rules without touching SharedPreferences.
+     * The set is immutable; copy it before making changes.
+     */
+    public Set<String> getActivityRules() {
+        return activityRuleSnapshot;
+    }
+
+    // --- PER-APP POLICIES ---
+
+    public void saveAppPolicy(AppPolicy policy) {
+        Map<String, AppPolicy> policies = new HashMap<>(policySnapshot);
+        policies.put(policy.getPackageName(), policy);
+        policySnapshot = Collections.unmodifiableMap(policies);
+        prefs.edit().putString(KEY_APP_POLICIES, gson.toJson(policies)).apply();
+    }
+
+    /**
+     * Returns the cached policies without touching SharedPreferences.
+     * The map and its policies must not be modified.
+     */
+    public Map<String, AppPolicy> getAppPolicies() {
+        return policySnapshot;
+    }
+
+    /**
+     * Returns an editable copy of an app's policy, or the defaults if it has none.
+     */
+    public AppPolicy getAppPolicy(String packageName) {
+        AppPolicy policy = policySnapshot.get(packageName);
+        return policy == null ? new AppPolicy(packageName) : gson.fromJson(gson.toJson(policy), AppPolicy.class);
+    }
+
+    private Map<String, AppPolicy> loadAppPolicies() {
+        String json = prefs.getString(KEY_APP_POLICIES, null);
+        if (json == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, AppPolicy> policies = gson.fromJson(json, POLICY_MAP_TYPE);
+        return policies == null ? Collections.emptyMap() : Collections.unmodifiableMap(policies);
+    }
+
     // --- SECURITY CREDENTIALS ---
 
     public void saveMasterPin(String pin) {
+        masterPinSnapshot = pin;
         prefs.edit().putString(KEY_MASTER_PIN, pin).apply();
     }
 
     public String getMasterPin() {
-        return prefs.getString(KEY_MASTER_PIN, "0000");
+        return masterPinSnapshot;
     }
 
     public void saveTrustedNumber(String number) {
@@ -130,18 +420,34 @@ public class HFSDatabaseHelper {
 
     public void setStealthMode(boolean enabled) {
         prefs.edit().putBoolean(KEY_STEALTH_MODE, enabled).apply();
+        publishState();
     }
 
     public boolean isStealthModeEnabled() {
-        return prefs.getBoolean(KEY_STEALTH_MODE, false);
+        return hasSharedState()
+                ? sharedToggle(GuardStateFile.TOGGLE_STEALTH_MODE)
+                : prefs.getBoolean(KEY_STEALTH_MODE, false);
     }
 
     public void setFakeGalleryEnabled(boolean enabled) {
         prefs.edit().putBoolean(KEY_FAKE_GALLERY, enabled).apply();
+        publishState();
     }
 
     public boolean isFakeGalleryEnabled() {
-        return prefs.getBoolean(KEY_FAKE_GALLERY, false);
+        return hasSharedState()
+                ? sharedToggle(GuardStateFile.TOGGLE_FAKE_GALLERY)
+                : prefs.getBoolean(KEY_FAKE_GALLERY, false);
+    }
+
+    public void setOverlayLockEnabled(boolean enabled) {
+        overlayLockSnapshot = enabled;
+        prefs.edit().putBoolean(KEY_OVERLAY_LOCK, enabled).apply();
+        publishState();
+    }
+
+    public boolean isOverlayLockEnabled() {
+        return hasSharedState() ? sharedToggle(GuardStateFile.TOGGLE_OVERLAY_LOCK) : overlayLockSnapshot;
     }
 
     // --- LEGACY DATA ---
@@ -155,6 +461,15 @@ public class HFSDatabaseHelper {
     }
 
     public void clearDatabase() {
+        protectedSnapshot = Collections.emptySet();
+        policySnapshot = Collections.emptyMap();
+        activityRuleSnapshot = Collections.emptySet();
+        setPackageRuleSnapshot(Collections.emptySet());
+        overlayLockSnapshot = false;
+        masterPinSnapshot = "0000";
         prefs.edit().clear().apply();
+        publishState();
+        // Older releases do not report clear() to listeners
+        notifyGuardConfigChanged();
     }
 }
\ No newline at end of file
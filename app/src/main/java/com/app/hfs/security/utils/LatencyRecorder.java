@@ -0,0 +1,228 @@
+package com.hfs.security.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Time-to-lock instrumentation.
+ * Every lock records three wall-clock timestamps: the foreground event of the
+ * protected app, the moment the guard fired the trigger, and the first frame
+ * of the lock UI. Records go to a fixed-size on-disk ring buffer and are
+ * aggregated into per-package percentiles for the diagnostics screen.
+ * Both processes record (the overlay in ":guard", the lock activity in the
+ * UI process), so every access holds a lock on the file on top of the
+ * in-process monitor.
+ */
+public class LatencyRecorder {
+
+    private static final String TAG = "HFS_Latency";
+    private static final String FILE_NAME = "lock_latency.bin";
+
+    // File layout: [magic][next slot][count] followed by CAPACITY fixed-size records
+    private static final int MAGIC = 0x48465331;
+    private static final int HEADER_SIZE = 12;
+    private static final int CAPACITY = 512;
+    private static final int RECORD_SIZE = 128;
+    private static final int MAX_PACKAGE_BYTES = 96;
+    // Lock mode lives in the last 4 bytes of a record
+    private static final int MODE_OFFSET = RECORD_SIZE - 4;
+
+    /** Lock shown by launching LockScreenActivity. */
+    public static final int MODE_ACTIVITY = 0;
+    /** Lock shown as a pre-inflated window overlay. */
+    public static final int MODE_OVERLAY = 1;
+
+    // Disk writes never run on the thread that drew the frame
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    /**
+     * Per-package aggregate of the recorded samples, all values in ms.
+     */
+    public static class Summary {
+        public final String packageName;
+        public final int samples;
+        public final long p50;
+        public final long p95;
+        public final long p99;
+        public final long detectP50;
+        public final long launchP50;
+
+        Summary(String packageName, long[] total, long[] detect, long[] launch) {
+            this.packageName = packageName;
+            this.samples = launch.length;
+            this.p50 = percentile(total, 50);
+            this.p95 = percentile(total, 95);
+            this.p99 = percentile(total, 99);
+            this.detectP50 = percentile(detect, 50);
+            this.launchP50 = percentile(launch, 50);
+        }
+    }
+
+    /**
+     * Queues one time-to-lock sample for the ring buffer.
+     *
+     * @param eventTs Foreground event timestamp of the protected app (0 if unknown)
+     * @param triggerTs Moment the guard fired the lock
+     * @param frameTs Moment the lock UI drew its first frame
+     * @param mode {@link #MODE_ACTIVITY} or {@link #MODE_OVERLAY}
+     */
+    public static void record(Context context, String packageName, long eventTs, long triggerTs,
+                              long frameTs, int mode) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        Log.d(TAG, packageName + " detect=" + (eventTs > 0 ? triggerTs - eventTs : -1)
+                + "ms launch=" + (frameTs - triggerTs) + "ms mode=" + mode);
+        writer.execute(() -> append(file, packageName, eventTs, triggerTs, frameTs, mode));
+    }
+
+    private static synchronized void append(File file, String packageName, long eventTs, long triggerTs,
+                                            long frameTs, int mode) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileLock lock = raf.getChannel().lock()) {
+            int next = 0;
+            int count = 0;
+            if (raf.length() >= HEADER_SIZE) {
+                raf.seek(0);
+                if (raf.readInt() == MAGIC) {
+                    next = raf.readInt();
+                    count = raf.readInt();
+                }
+            }
+            if (next < 0 || next >= CAPACITY) next = 0;
+
+            byte[] name = packageName.getBytes(StandardCharsets.UTF_8);
+            int nameLength = Math.min(name.length, MAX_PACKAGE_BYTES);
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            record.putLong(eventTs).putLong(triggerTs).putLong(frameTs);
+            record.putShort((short) nameLength).put(name, 0, nameLength);
+            record.putInt(MODE_OFFSET, mode);
+
+            raf.seek(HEADER_SIZE + (long) next * RECORD_SIZE);
+            raf.write(record.array());
+
+            // Header last, so a torn write only loses the newest sample
+            raf.seek(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt((next + 1) % CAPACITY);
+            raf.writeInt(Math.min(count + 1, CAPACITY));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to store latency sample: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the ring buffer and aggregates it per package.
+     */
+    public static synchronized List<Summary> loadSummaries(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        Map<String, List<long[]>> samplesByPackage = new HashMap<>();
+
+        if (file.exists()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileLock lock = raf.getChannel().lock(0, Long.MAX_VALUE, true)) {
+                if (raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC) {
+                    raf.readInt();
+                    int count = Math.min(raf.readInt(), CAPACITY);
+                    byte[] buffer = new byte[RECORD_SIZE];
+
+                    for (int i = 0; i < count; i++) {
+                        raf.seek(HEADER_SIZE + (long) i * RECORD_SIZE);
+                        raf.readFully(buffer);
+                        ByteBuffer record = ByteBuffer.wrap(buffer);
+                        long eventTs = record.getLong();
+                        long triggerTs = record.getLong();
+                        long frameTs = record.getLong();
+                        int nameLength = Math.min(record.getShort(), MAX_PACKAGE_BYTES);
+                        String name = new String(buffer, record.position(), Math.max(0, nameLength), StandardCharsets.UTF_8);
+                        if (record.getInt(MODE_OFFSET) == MODE_OVERLAY) {
+                            name += " [overlay]";
+                        }
+
+                        List<long[]> list = samplesByPackage.get(name);
+                        if (list == null) {
+                            list = new ArrayList<>();
+                            samplesByPackage.put(name, list);
+                        }
+                        list.add(new long[]{eventTs, triggerTs, frameTs});
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read latency samples: " + e.getMessage());
+            }
+        }
+
+        List<Summary> summaries = new ArrayList<>();
+        for (Map.Entry<String, List<long[]>> entry : samplesByPackage.entrySet()) {
+            List<long[]> list = entry.getValue();
+            long[] launch = new long[list.size()];
+            List<Long> total = new ArrayList<>();
+            List<Long> detect = new ArrayList<>();
+
+            for (int i = 0; i < list.size(); i++) {
+                long[] s = list.get(i);
+                launch[i] = s[2] - s[1];
+                if (s[0] > 0) {
+                    total.add(s[2] - s[0]);
+                    detect.add(s[1] - s[0]);
+                }
+            }
+            summaries.add(new Summary(entry.getKey(), toArray(total), toArray(detect), launch));
+        }
+
+        Collections.sort(summaries, (a, b) -> Integer.compare(b.samples, a.samples));
+        return summaries;
+    }
+
+    /**
+     * Human-readable report for the diagnostics section of the settings screen.
+     */
+    public static String formatReport(Context context) {
+        List<Summary> summaries = loadSummaries(context);
+        if (summaries.isEmpty()) {
+            return "No lock events recorded yet.";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Summary s : summaries) {
+            sb.append(String.format(Locale.US,
+                    "%s (n=%d)\n  time-to-lock p50/p95/p99: %d/%d/%d ms\n  detect p50: %d ms, launch p50: %d ms\n",
+                    s.packageName, s.samples, s.p50, s.p95, s.p99, s.detectP50, s.launchP50));
+        }
+        return sb.toString().trim();
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Nearest-rank percentile; returns -1 when there are no samples.
+     */
+    private static long percentile(long[] values, int percent) {
+        if (values.length == 0) return -1;
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,80 @@
+package com.hfs.security.utils;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Process-wide index that maps package names to dense int IDs.
+ * IDs are handed out once (when the app catalog is built, or the first time
+ * the guard sees a package) so the per-tick lookups can work on primitive
+ * arrays and bitsets instead of hashing and comparing Strings.
+ */
+public final class PackageRegistry {
+
+    /** ID used for "no package", e.g. an empty foreground result. */
+    public static final int NO_ID = -1;
+
+    private static final PackageRegistry instance = new PackageRegistry();
+
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[256];
+
+    private PackageRegistry() {}
+
+    public static PackageRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the ID of a package, assigning the next free one if needed.
+     */
+    public synchronized int idFor(String packageName) {
+        if (packageName == null || packageName.isEmpty()) {
+            return NO_ID;
+        }
+        Integer id = ids.get(packageName);
+        if (id != null) {
+            return id;
+        }
+
+        int newId = ids.size();
+        if (newId == names.length) {
+            String[] grown = new String[names.length * 2];
+            System.arraycopy(names, 0, grown, 0, names.length);
+            names = grown;
+        }
+        names[newId] = packageName;
+        ids.put(packageName, newId);
+        return newId;
+    }
+
+    public synchronized String nameOf(int id) {
+        return id >= 0 && id < ids.size() ? names[id] : "";
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    /**
+     * Builds a membership bitset for a set of package names.
+     */
+    public BitSet toBitSet(Set<String> packageNames) {
+        BitSet bits = new BitSet(size());
+        for (String packageName : packageNames) {
+            int id = idFor(packageName);
+            if (id != NO_ID) {
+                bits.set(id);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Bounds-safe membership test for IDs that may be {@link #NO_ID}.
+     */
+    public static boolean contains(BitSet bits, int id) {
+        return id >= 0 && bits.get(id);
+    }
+}
@@ -3,6 +3,7 @@ package com.hfs.security.utils;
 import android.Manifest;
 import android.app.AppOpsManager;
 import android.app.KeyguardManager;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -13,6 +14,8 @@ import android.provider.Settings;
 
 import androidx.core.content.ContextCompat;
 
+import com.hfs.security.services.HFSAccessibilityService;
+
 /**
  * Advanced Permission & System Security Manager.
  * UPDATED PLAN:
@@ -83,6 +86,32 @@ public class PermissionHelper {
         return mode == AppOpsManager.MODE_ALLOWED;
     }
 
+    /**
+     * Checks if the optional HFS accessibility service is enabled for instant detection.
+     */
+    public static boolean isAccessibilityServiceEnabled(Context context) {
+        String enabled = Settings.Secure.getString(context.getContentResolver(),
+                Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
+        if (enabled == null) return false;
+
+        ComponentName component = new ComponentName(context, HFSAccessibilityService.class);
+        for (String entry : enabled.split(":")) {
+            if (component.equals(ComponentName.unflattenFromString(entry))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Opens the system Accessibility settings so the user can toggle instant detection.
+     */
+    public static void openAccessibilitySettings(Context context) {
+        Intent intent = new Intent(Settings.ACTION_ACCESSIBILITY_SETTINGS);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        context.startActivity(intent);
+    }
+
     /**
      * Checks for standard Runtime Permissions (Camera and SMS).
      * Camera is still required for the silent intruder photo capture.
@@ -0,0 +1,135 @@
+package com.hfs.security.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts YUV_420_888 planes to NV21 or I420, honouring each plane's row
+ * stride (padded rows) and pixel stride (semi-planar U/V sharing one
+ * buffer). Copying the planes back to back only works for tightly packed
+ * planar layouts and garbles the frame everywhere else.
+ *
+ * Rows are bulk-copied through scratch rows owned by the converter, so a
+ * conversion into a pooled buffer allocates nothing once warm. One
+ * instance per thread; plain Java, so it is unit tested off-device.
+ */
+public final class YuvConverter {
+
+    public static final int NV21 = 0;
+    public static final int I420 = 1;
+
+    private final ByteBuffer[] buffers = new ByteBuffer[3];
+    private final int[] rowStrides = new int[3];
+    private final int[] pixelStrides = new int[3];
+
+    private byte[] rowU = new byte[0];
+    private byte[] rowV = new byte[0];
+
+    /**
+     * Output size for a frame; odd dimensions round the chroma planes up.
+     */
+    public static int bufferSize(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * @param index 0 = Y, 1 = U, 2 = V, as in Image.getPlanes()
+     */
+    public void setPlane(int index, ByteBuffer buffer, int rowStride, int pixelStride) {
+        buffers[index] = buffer;
+        rowStrides[index] = rowStride;
+        pixelStrides[index] = pixelStride;
+    }
+
+    /**
+     * Converts the planes set last into {@code out}. The plane buffers'
+     * positions are left as they were.
+     *
+     * @param out At least {@link #bufferSize} bytes
+     */
+    public void convert(int width, int height, int format, byte[] out) {
+        if (out.length < bufferSize(width, height)) {
+            throw new IllegalArgumentException("Output buffer too small for " + width + "x" + height);
+        }
+        copyLuma(width, height, out);
+        copyChroma(width, height, format, out);
+    }
+
+    private void copyLuma(int width, int height, byte[] out) {
+        ByteBuffer y = buffers[0];
+        int rowStride = rowStrides[0];
+        int pixelStride = pixelStrides[0];
+        int base = y.position();
+
+        if (pixelStride == 1 && rowStride == width) {
+            y.get(out, 0, width * height);
+        } else if (pixelStride == 1) {
+            for (int row = 0; row < height; row++) {
+                y.position(base + row * rowStride);
+                y.get(out, row * width, width);
+            }
+        } else {
+            byte[] scratch = ensureRow(rowU, (width - 1) * pixelStride + 1);
+            rowU = scratch;
+            for (int row = 0; row < height; row++) {
+                readRow(y, base, row, rowStride, pixelStride, width, scratch);
+                for (int x = 0, offset = row * width; x < width; x++) {
+                    out[offset + x] = scratch[x * pixelStride];
+                }
+            }
+        }
+        y.position(base);
+    }
+
+    private void copyChroma(int width, int height, int format, byte[] out) {
+        ByteBuffer u = buffers[1];
+        ByteBuffer v = buffers[2];
+        int uPixelStride = pixelStrides[1];
+        int vPixelStride = pixelStrides[2];
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int lumaSize = width * height;
+        int uBase = u.position();
+        int vBase = v.position();
+
+        rowU = ensureRow(rowU, (chromaWidth - 1) * uPixelStride + 1);
+        rowV = ensureRow(rowV, (chromaWidth - 1) * vPixelStride + 1);
+
+        for (int row = 0; row < chromaHeight; row++) {
+            readRow(u, uBase, row, rowStrides[1], uPixelStride, chromaWidth, rowU);
+            readRow(v, vBase, row, rowStrides[2], vPixelStride, chromaWidth, rowV);
+
+            if (format == NV21) {
+                // Interleaved V, U after the luma
+                int offset = lumaSize + row * chromaWidth * 2;
+                for (int x = 0; x < chromaWidth; x++) {
+                    out[offset + 2 * x] = rowV[x * vPixelStride];
+                    out[offset + 2 * x + 1] = rowU[x * uPixelStride];
+                }
+            } else {
+                // Full U plane, then full V plane
+                int uOffset = lumaSize + row * chromaWidth;
+                int vOffset = lumaSize + chromaWidth * chromaHeight + row * chromaWidth;
+                for (int x = 0; x < chromaWidth; x++) {
+                    out[uOffset + x] = rowU[x * uPixelStride];
+                    out[vOffset + x] = rowV[x * vPixelStride];
+                }
+            }
+        }
+        u.position(uBase);
+        v.position(vBase);
+    }
+
+    /**
+     * Bulk-copies the bytes spanned by one row's pixels. The last row of a
+     * plane often ends right after its last pixel, short of the row stride.
+     */
+    private static void readRow(ByteBuffer buffer, int base, int row, int rowStride, int pixelStride,
+                                int pixels, byte[] dst) {
+        buffer.position(base + row * rowStride);
+        buffer.get(dst, 0, (pixels - 1) * pixelStride + 1);
+    }
+
+    private static byte[] ensureRow(byte[] row, int length) {
+        return row.length >= length ? row : new byte[length];
+    }
+}
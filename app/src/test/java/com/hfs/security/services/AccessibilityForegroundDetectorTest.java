@@ -0,0 +1,165 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import android.content.ComponentName;
+import android.os.SystemClock;
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowPackageManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Push backend: window state events from the accessibility service.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34, application = Application.class)
+public class AccessibilityForegroundDetectorTest {
+
+    private static final String BANK = "com.bank.app";
+    private static final String BROWSER = "com.android.chrome";
+
+    private HFSAccessibilityService service;
+    private AccessibilityForegroundDetector detector;
+    private final WindowSource windows = new WindowSource();
+    private final List<String> pushed = new ArrayList<>();
+
+    /**
+     * Stands in for the UsageStats backend that reports the other windows.
+     */
+    private static final class WindowSource implements ForegroundDetector {
+        final VisibleWindowSet windows = new VisibleWindowSet();
+        boolean started = false;
+        long updatedAt = 0;
+
+        @Override
+        public void start(Listener listener) {
+            started = true;
+        }
+
+        @Override
+        public void stop() {
+            started = false;
+        }
+
+        @Override
+        public String getForegroundPackage(long now) {
+            updatedAt = now;
+            windows.refresh(now);
+            return "";
+        }
+
+        @Override
+        public String getForegroundClass() {
+            return "";
+        }
+
+        @Override
+        public long getForegroundSinceMs() {
+            return 0;
+        }
+
+        @Override
+        public VisibleWindowSet getVisibleWindows() {
+            return windows;
+        }
+
+        @Override
+        public boolean isPushBased() {
+            return false;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        service = Robolectric.setupService(HFSAccessibilityService.class);
+        ShadowPackageManager packageManager = Shadows.shadowOf(service.getPackageManager());
+        packageManager.addActivityIfNotPresent(new ComponentName(BANK, BANK + ".Main"));
+        packageManager.addActivityIfNotPresent(new ComponentName(BANK, BANK + ".Transfer"));
+        packageManager.addActivityIfNotPresent(new ComponentName(BROWSER, BROWSER + ".Tab"));
+
+        detector = new AccessibilityForegroundDetector(windows);
+        detector.start(pushed::add);
+    }
+
+    @After
+    public void tearDown() {
+        detector.stop();
+        // Clears the static foreground state for the next test
+        service.onUnbind(null);
+    }
+
+    private void windowStateChanged(String packageName, String className) {
+        AccessibilityEvent event = new AccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
+        event.setPackageName(packageName);
+        event.setClassName(className);
+        event.setEventTime(SystemClock.uptimeMillis());
+        service.onAccessibilityEvent(event);
+    }
+
+    @Test
+    public void activitySwitchIsPushedAtOnce() {
+        windowStateChanged(BROWSER, BROWSER + ".Tab");
+        windowStateChanged(BANK, BANK + ".Main");
+
+        assertEquals(Arrays.asList(BROWSER, BANK), pushed);
+        assertEquals(BANK, detector.getForegroundPackage(System.currentTimeMillis()));
+        assertEquals(BANK + ".Main", detector.getForegroundClass());
+        assertTrue(detector.getForegroundSinceMs() > 0);
+        assertTrue(detector.isPushBased());
+    }
+
+    @Test
+    public void dialogsAndToastsDoNotMoveTheForeground() {
+        windowStateChanged(BANK, BANK + ".Main");
+        windowStateChanged(BROWSER, "android.widget.Toast$TN");
+
+        assertEquals(Collections.singletonList(BANK), pushed);
+        assertEquals(BANK, detector.getForegroundPackage(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void activityChangeInsideTheAppIsReportedForActivityRules() {
+        windowStateChanged(BANK, BANK + ".Main");
+        long since = detector.getForegroundSinceMs();
+        windowStateChanged(BANK, BANK + ".Transfer");
+
+        assertEquals(Arrays.asList(BANK, BANK), pushed);
+        assertEquals(BANK + ".Transfer", detector.getForegroundClass());
+        assertEquals(since, detector.getForegroundSinceMs());
+    }
+
+    @Test
+    public void otherVisibleWindowsComeFromTheWindowSource() {
+        assertTrue(windows.started);
+        windowStateChanged(BANK, BANK + ".Main");
+        // Split-screen: the browser is focused, the bank stays visible in the other half
+        windows.windows.onResumed(BANK, BANK + ".Main", 1000);
+        windows.windows.onResumed(BROWSER, BROWSER + ".Tab", 2000);
+        windowStateChanged(BROWSER, BROWSER + ".Tab");
+
+        long now = System.currentTimeMillis();
+        assertEquals(BROWSER, detector.getForegroundPackage(now));
+        assertEquals(now, windows.updatedAt);
+        assertEquals(2, detector.getVisibleWindows().size());
+        assertTrue(detector.getVisibleWindows().contains(BANK));
+
+        detector.stop();
+        assertFalse(windows.started);
+    }
+}
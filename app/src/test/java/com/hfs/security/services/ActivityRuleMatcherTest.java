@@ -0,0 +1,98 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ActivityRuleMatcherTest {
+
+    @Test
+    public void relativeAndAbsolutePrefixesMatch() {
+        ActivityRuleMatcher matcher = ActivityRuleMatcher.compile(Arrays.asList(
+                "com.bank.app/.transfer",
+                "com.mail/com.mail.compose.ComposeActivity",
+                "malformed",
+                "/.noPackage"));
+
+        assertEquals(4, matcher.getRuleCount());
+        assertTrue(matcher.matches("com.bank.app", "com.bank.app.transfer.TransferActivity"));
+        assertFalse(matcher.matches("com.bank.app", "com.bank.app.ui.MainActivity"));
+        assertTrue(matcher.matches("com.mail", "com.mail.compose.ComposeActivity"));
+        // The prefix belongs to the package it was written for
+        assertFalse(matcher.matches("com.other", "com.bank.app.transfer.TransferActivity"));
+        assertFalse(matcher.matches("com.bank.app", ""));
+        assertFalse(ActivityRuleMatcher.compile(Collections.<String>emptyList()).matches("com.bank.app", ".A"));
+    }
+
+    @Test
+    public void systemPagesThatCouldDisableTheGuardMatch() {
+        ActivityRuleMatcher matcher = ActivityRuleMatcher.compile(Arrays.asList(ActivityRuleMatcher.SYSTEM_PAGE_RULES));
+
+        assertTrue(matcher.matches("com.android.settings",
+                "com.android.settings.applications.InstalledAppDetails"));
+        assertTrue(matcher.matches("com.android.settings", "com.android.settings.DeviceAdminAdd"));
+        assertTrue(matcher.matches("com.google.android.packageinstaller",
+                "com.android.packageinstaller.UninstallerActivity"));
+        assertFalse(matcher.matches("com.android.settings", "com.android.settings.wifi.WifiSettings"));
+    }
+
+    @Test
+    public void cachedResultFollowsTheForegroundChange() {
+        ActivityRuleMatcher matcher = ActivityRuleMatcher.compile(Collections.singletonList("com.bank.app/.transfer"));
+        String packageName = "com.bank.app";
+
+        assertTrue(matcher.matches(packageName, "com.bank.app.transfer.A"));
+        assertTrue(matcher.matches(packageName, "com.bank.app.transfer.A"));
+        assertFalse(matcher.matches(packageName, "com.bank.app.Main"));
+    }
+
+    @Test
+    public void lookupCostStaysLowForHundredsOfRules() {
+        Random random = new Random(7);
+        List<String> rules = new ArrayList<>();
+        String[] pages = {"applications", "security", "privacy", "accounts", "backup", "developer"};
+        for (int i = 0; i < 300; i++) {
+            String packageName = "com.vendor" + (i % 50) + ".app";
+            rules.add(packageName + "/." + pages[i % pages.length] + ".Page" + (i / 50));
+        }
+        rules.addAll(Arrays.asList(ActivityRuleMatcher.SYSTEM_PAGE_RULES));
+        ActivityRuleMatcher matcher = ActivityRuleMatcher.compile(rules);
+
+        // Half of the queries hit a page, half stop somewhere in the class name
+        String[][] queries = new String[1024][];
+        for (int i = 0; i < queries.length; i++) {
+            String packageName = "com.vendor" + random.nextInt(50) + ".app";
+            String page = pages[random.nextInt(pages.length)];
+            String className = random.nextBoolean()
+                    ? packageName + "." + page + ".Page" + random.nextInt(6) + "Activity"
+                    : packageName + ".ui.MainActivity";
+            queries[i] = new String[]{packageName, className};
+        }
+
+        int lookups = 2_000_000;
+        long hits = 0;
+        long elapsed = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            hits = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                String[] query = queries[i & 1023];
+                if (matcher.lookup(query[0], query[1])) hits++;
+            }
+            elapsed = System.nanoTime() - t0;
+        }
+
+        assertTrue(hits > 0);
+        // Measured around 110 ns uncached; the guard looks up at most once per tick
+        double nanosPerLookup = (double) elapsed / lookups;
+        assertTrue(nanosPerLookup + " ns/lookup", nanosPerLookup < 2000);
+    }
+}
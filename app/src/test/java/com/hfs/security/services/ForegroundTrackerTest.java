@@ -0,0 +1,157 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.app.usage.UsageEvents;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays recorded event streams in which events become visible to
+ * queryEvents() later than their timestamps, as UsageStatsService records
+ * them asynchronously.
+ */
+public class ForegroundTrackerTest {
+
+    private static final int RESUMED = UsageEvents.Event.ACTIVITY_RESUMED;
+    private static final int PAUSED = UsageEvents.Event.ACTIVITY_PAUSED;
+    private static final int STOPPED = UsageEvents.Event.ACTIVITY_STOPPED;
+
+    private static final String BANK = "com.bank.app";
+    private static final String LAUNCHER = "com.android.launcher3";
+    private static final String CHROME = "com.android.chrome";
+
+    /**
+     * Event stream where each event shows up in queries from its recording time on.
+     */
+    private static final class RecordedEvents implements ForegroundTracker.EventSource {
+        private final List<long[]> times = new ArrayList<>();
+        private final List<String[]> names = new ArrayList<>();
+        private final List<Integer> types = new ArrayList<>();
+        long now = 0;
+        int delivered = 0;
+
+        RecordedEvents add(long timestamp, long recordedAt, int type, String packageName, String className) {
+            times.add(new long[] {timestamp, recordedAt});
+            names.add(new String[] {packageName, className});
+            types.add(type);
+            return this;
+        }
+
+        @Override
+        public void queryEvents(long beginMs, long endMs, ForegroundTracker tracker) {
+            for (int i = 0; i < times.size(); i++) {
+                long timestamp = times.get(i)[0];
+                if (timestamp < beginMs || timestamp >= endMs || times.get(i)[1] > now) continue;
+                delivered++;
+                // Fresh instances per query, like events decoded from a new parcel
+                tracker.offer(types.get(i), new String(names.get(i)[0]), new String(names.get(i)[1]), timestamp);
+            }
+        }
+    }
+
+    /**
+     * Tracker that counts the events it actually applies.
+     */
+    private static final class CountingTracker extends ForegroundTracker {
+        int applied = 0;
+
+        CountingTracker() {
+            super(true);
+        }
+
+        @Override
+        void onEvent(int eventType, String packageName, String className, long timestamp) {
+            applied++;
+            super.onEvent(eventType, packageName, className, timestamp);
+        }
+    }
+
+    private static String tick(ForegroundTracker tracker, RecordedEvents events, long now) {
+        events.now = now;
+        return tracker.update(events, now);
+    }
+
+    @Test
+    public void eventRecordedAfterTheQueryThatCoveredItIsStillApplied() {
+        // The bank resumes at 9 900 but the event is only queryable from 10 200
+        RecordedEvents events = new RecordedEvents()
+                .add(8000, 8000, RESUMED, LAUNCHER, ".Launcher")
+                .add(9890, 9890, PAUSED, LAUNCHER, ".Launcher")
+                .add(9900, 10_200, RESUMED, BANK, ".Main");
+        ForegroundTracker tracker = new ForegroundTracker(true);
+
+        assertEquals(LAUNCHER, tick(tracker, events, 10_000));
+        assertEquals(BANK, tick(tracker, events, 10_500));
+        assertEquals(9900, tracker.getForegroundSinceMs());
+    }
+
+    @Test
+    public void overlapDoesNotApplyAnEventTwice() {
+        RecordedEvents events = new RecordedEvents()
+                .add(1000, 1000, RESUMED, BANK, ".Main")
+                .add(2000, 2000, PAUSED, BANK, ".Main")
+                .add(2010, 2010, RESUMED, LAUNCHER, ".Launcher")
+                .add(2400, 2400, STOPPED, BANK, ".Main")
+                .add(3000, 3000, PAUSED, LAUNCHER, ".Launcher")
+                .add(3010, 3010, RESUMED, CHROME, ".Tab");
+        CountingTracker tracker = new CountingTracker();
+
+        for (long now = 900; now <= 6000; now += 300) {
+            tick(tracker, events, now);
+        }
+
+        assertEquals(6, tracker.applied);
+        assertTrue("overlap re-delivered " + events.delivered, events.delivered > 6);
+        assertEquals(CHROME, tracker.getForegroundPackage());
+        assertFalse(tracker.getVisibleWindows().contains(BANK));
+    }
+
+    @Test
+    public void lateResumeStaysVisibleWithoutTakingTheFocus() {
+        RecordedEvents events = new RecordedEvents()
+                .add(2000, 2000, RESUMED, CHROME, ".Tab")
+                // The other half of a split screen, recorded late
+                .add(1990, 2300, RESUMED, BANK, ".Main");
+        ForegroundTracker tracker = new ForegroundTracker(true);
+
+        tick(tracker, events, 2100);
+        tick(tracker, events, 2400);
+
+        assertEquals(CHROME, tracker.getForegroundPackage());
+        assertEquals(2000, tracker.getForegroundSinceMs());
+        assertTrue(tracker.getVisibleWindows().contains(BANK));
+    }
+
+    @Test
+    public void queryWindowStaysBounded() {
+        RecordedEvents events = new RecordedEvents();
+        ForegroundTracker tracker = new ForegroundTracker(true);
+
+        tick(tracker, events, 100_000);
+        assertEquals(95_000, tracker.getQueryBeginMs());
+
+        // The binder payload per tick depends on the tick and the overlap, not on uptime
+        for (long now = 100_300; now < 500_000; now += 300) {
+            tick(tracker, events, now);
+            assertEquals(now - 300 - ForegroundTracker.OVERLAP_MS, tracker.getQueryBeginMs());
+        }
+    }
+
+    @Test
+    public void resetRescansTheInitialWindow() {
+        RecordedEvents events = new RecordedEvents().add(7000, 7000, RESUMED, BANK, ".Main");
+        CountingTracker tracker = new CountingTracker();
+
+        assertEquals(BANK, tick(tracker, events, 10_000));
+        tracker.reset();
+        assertEquals("", tracker.getForegroundPackage());
+        assertEquals(BANK, tick(tracker, events, 10_300));
+        assertEquals(2, tracker.applied);
+    }
+}
@@ -0,0 +1,326 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Crash consistency of the shared state file: the writer is killed after
+ * every single store, and an open reader as well as a restarted process must
+ * then see either the complete old or the complete new state.
+ */
+public class GuardStateFileTest {
+
+    private static final Set<String> OLD_PACKAGES = new HashSet<>(Arrays.asList("com.bank.app", "com.whatsapp"));
+    private static final Set<String> NEW_PACKAGES = new HashSet<>(Arrays.asList("com.android.gallery3d",
+            "com.google.android.gm", "com.signal.app"));
+    private static final int OLD_TOGGLES = GuardStateFile.TOGGLE_OVERLAY_LOCK;
+    private static final int NEW_TOGGLES = GuardStateFile.TOGGLE_STEALTH_MODE | GuardStateFile.TOGGLE_DRIVE_SYNC;
+
+    /**
+     * Writer that is killed once it has made a given number of stores.
+     */
+    private static final class CrashingWriter extends GuardStateFile {
+        int storesUntilCrash = Integer.MAX_VALUE;
+
+        CrashingWriter(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        @Override
+        void store(int offset, byte value) {
+            tick();
+            super.store(offset, value);
+        }
+
+        @Override
+        void storeInt(int offset, int value) {
+            tick();
+            super.storeInt(offset, value);
+        }
+
+        @Override
+        void storeLong(int offset, long value) {
+            tick();
+            super.storeLong(offset, value);
+        }
+
+        private void tick() {
+            if (storesUntilCrash != Integer.MAX_VALUE && storesUntilCrash-- <= 0) {
+                storesUntilCrash = Integer.MAX_VALUE;
+                throw new SimulatedCrash();
+            }
+        }
+    }
+
+    private static final class SimulatedCrash extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SimulatedCrash() {
+            super("simulated writer kill");
+        }
+    }
+
+    @Test
+    public void freshFileHasNoConfig() {
+        GuardStateFile state = new GuardStateFile(ByteBuffer.allocate(GuardStateFile.FILE_SIZE));
+
+        assertFalse(state.hasConfig());
+        assertNull(state.getProtectedPackages());
+        assertFalse(state.isSessionOpen("com.bank.app", 0));
+    }
+
+    @Test
+    public void configWriteKilledAfterAnyStoreLeavesOldOrNew() {
+        int crashPoints = 0;
+        int sawNew = 0;
+        for (int stores = 0; ; stores++) {
+            ByteBuffer buffer = ByteBuffer.allocate(GuardStateFile.FILE_SIZE);
+            CrashingWriter writer = new CrashingWriter(buffer);
+            writer.writeConfig(OLD_PACKAGES, OLD_TOGGLES);
+            GuardStateFile reader = new GuardStateFile(buffer);
+            reader.getProtectedPackages();
+
+            writer.storesUntilCrash = stores;
+            boolean crashed = false;
+            try {
+                writer.writeConfig(NEW_PACKAGES, NEW_TOGGLES);
+            } catch (SimulatedCrash e) {
+                crashed = true;
+            }
+
+            for (GuardStateFile view : new GuardStateFile[] {reader, new GuardStateFile(buffer)}) {
+                Set<String> seen = view.getProtectedPackages();
+                int toggles = view.getToggles();
+                boolean old = OLD_PACKAGES.equals(seen) && toggles == OLD_TOGGLES;
+                boolean current = NEW_PACKAGES.equals(seen) && toggles == NEW_TOGGLES;
+                assertTrue("killed after " + stores + " stores: " + seen + ", toggles " + toggles, old || current);
+                if (current) sawNew++;
+            }
+
+            // The restarted writer carries on from whatever it finds
+            new GuardStateFile(buffer).writeConfig(Collections.singleton("com.next"), 0);
+            assertEquals(Collections.singleton("com.next"), reader.getProtectedPackages());
+            if (!crashed) break;
+            crashPoints++;
+        }
+
+        assertTrue(crashPoints > 50);
+        assertTrue(sawNew > 0);
+    }
+
+    @Test
+    public void sessionWriteKilledAfterAnyStoreLeavesOldOrNew() {
+        int crashPoints = 0;
+        for (int stores = 0; ; stores++) {
+            ByteBuffer buffer = ByteBuffer.allocate(GuardStateFile.FILE_SIZE);
+            CrashingWriter writer = new CrashingWriter(buffer);
+            writer.writeSessions(new String[] {"com.bank.app"}, new long[] {Long.MAX_VALUE}, 1);
+            GuardStateFile reader = new GuardStateFile(buffer);
+
+            writer.storesUntilCrash = stores;
+            boolean crashed = false;
+            try {
+                writer.writeSessions(new String[] {"com.whatsapp", "com.signal.app"}, new long[] {5000, 9000}, 2);
+            } catch (SimulatedCrash e) {
+                crashed = true;
+            }
+
+            boolean oldState = reader.isSessionOpen("com.bank.app", 1000)
+                    && !reader.isSessionOpen("com.whatsapp", 1000);
+            boolean newState = !reader.isSessionOpen("com.bank.app", 1000)
+                    && reader.isSessionOpen("com.whatsapp", 1000) && reader.isSessionOpen("com.signal.app", 6000)
+                    && !reader.isSessionOpen("com.whatsapp", 6000);
+            assertTrue("killed after " + stores + " stores", oldState != newState);
+            if (!crashed) break;
+            crashPoints++;
+        }
+
+        assertTrue(crashPoints > 30);
+    }
+
+    @Test
+    public void corruptedActiveSlotFallsBackToThePreviousState() {
+        ByteBuffer buffer = ByteBuffer.allocate(GuardStateFile.FILE_SIZE);
+        GuardStateFile writer = new GuardStateFile(buffer);
+        writer.writeConfig(OLD_PACKAGES, 0);
+        writer.writeConfig(NEW_PACKAGES, 0);
+
+        // The first write went to slot 1, the second one back to slot 0: flip a payload byte of it
+        int slot0Payload = 64 + 16 + 10;
+        buffer.put(slot0Payload, (byte) (buffer.get(slot0Payload) ^ 0x20));
+
+        assertEquals(OLD_PACKAGES, new GuardStateFile(buffer).getProtectedPackages());
+    }
+
+    @Test
+    public void readersRacingAWriterNeverSeeAMix() throws InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocate(GuardStateFile.FILE_SIZE);
+        GuardStateFile writer = new GuardStateFile(buffer);
+        writer.writeConfig(OLD_PACKAGES, 0);
+        AtomicInteger torn = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            GuardStateFile view = new GuardStateFile(buffer);
+            readers[r] = new Thread(() -> {
+                while (!done.get()) {
+                    Set<String> seen = view.getProtectedPackages();
+                    if (!OLD_PACKAGES.equals(seen) && !NEW_PACKAGES.equals(seen)) {
+                        torn.incrementAndGet();
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        for (int i = 0; i < 100_000; i++) {
+            writer.writeConfig((i & 1) == 0 ? NEW_PACKAGES : OLD_PACKAGES, 0);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals(0, torn.get());
+    }
+
+    @Test
+    public void oversizedSetIsPublishedAsTruncated() {
+        List<String> packages = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            packages.add("com.vendor" + i + ".a.rather.long.package.name");
+        }
+        GuardStateFile state = new GuardStateFile(ByteBuffer.allocate(GuardStateFile.FILE_SIZE));
+        state.writeConfig(packages, GuardStateFile.TOGGLE_FAKE_GALLERY);
+
+        assertTrue(state.hasConfig());
+        assertNull(state.getProtectedPackages());
+        assertEquals(GuardStateFile.TOGGLE_FAKE_GALLERY, state.getToggles());
+    }
+
+    /**
+     * The state file against the SharedPreferences path it replaces, emulated
+     * off-device: the XML map file SharedPreferencesImpl rewrites on every
+     * apply() and parses on first access, with the protected set as a JSON
+     * array string like HFSDatabaseHelper stores it.
+     */
+    @Test
+    public void steadyReadIsFarCheaperThanParsingPrefs() throws IOException, XMLStreamException {
+        List<String> packages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            packages.add("com.vendor" + i + ".app");
+        }
+        File xml = File.createTempFile("hfs_prefs", ".xml");
+        File mapped = File.createTempFile("hfs_state", ".bin");
+        try {
+            int rounds = 200;
+            long prefsRead = 0;
+            long stateSteady = 0;
+            int reads = 1_000_000;
+            for (int pass = 0; pass < 3; pass++) {
+                writePrefsXml(xml, packages, (pass & 1) == 0);
+                long t0 = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    assertEquals(packages.size(), readPrefsXml(xml).size());
+                }
+                prefsRead = System.nanoTime() - t0;
+
+                GuardStateFile state;
+                try (RandomAccessFile raf = new RandomAccessFile(mapped, "rw")) {
+                    state = new GuardStateFile(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                            GuardStateFile.FILE_SIZE));
+                }
+                state.writeConfig(packages, GuardStateFile.TOGGLE_OVERLAY_LOCK);
+                // Another process mapping the same file sees the whole set
+                try (RandomAccessFile raf = new RandomAccessFile(mapped, "rw")) {
+                    assertEquals(new HashSet<>(packages), new GuardStateFile(raf.getChannel().map(
+                            FileChannel.MapMode.READ_WRITE, 0, GuardStateFile.FILE_SIZE)).getProtectedPackages());
+                }
+
+                int found = 0;
+                t0 = System.nanoTime();
+                for (int i = 0; i < reads; i++) {
+                    found += state.getToggles();
+                }
+                stateSteady = System.nanoTime() - t0;
+                assertEquals(reads, found);
+            }
+
+            // Measured at 130 us per prefs parse against 53 ns per unchanged state read
+            double prefsPerRead = (double) prefsRead / rounds;
+            double statePerRead = (double) stateSteady / reads;
+            assertTrue("prefs " + prefsPerRead + " ns, state " + statePerRead + " ns",
+                    statePerRead * 100 < prefsPerRead);
+        } finally {
+            xml.delete();
+            mapped.delete();
+        }
+    }
+
+    private static void writePrefsXml(File file, List<String> packages, boolean overlayLock) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < packages.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append("&quot;").append(packages.get(i)).append("&quot;");
+        }
+        json.append(']');
+        StringBuilder out = new StringBuilder("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+        out.append("    <string name=\"protected_packages\">").append(json).append("</string>\n");
+        out.append("    <string name=\"master_pin\">4821</string>\n");
+        out.append("    <string name=\"trusted_number\">+15550100</string>\n");
+        out.append("    <boolean name=\"setup_complete\" value=\"true\" />\n");
+        out.append("    <boolean name=\"overlay_lock_enabled\" value=\"").append(overlayLock).append("\" />\n");
+        out.append("    <boolean name=\"stealth_mode_enabled\" value=\"false\" />\n");
+        out.append("    <boolean name=\"drive_sync_enabled\" value=\"false\" />\n");
+        out.append("</map>\n");
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            stream.write(out.toString().getBytes(StandardCharsets.UTF_8));
+            stream.getFD().sync();
+        }
+    }
+
+    private static Set<String> readPrefsXml(File file) throws IOException, XMLStreamException {
+        Set<String> packages = new HashSet<>();
+        try (InputStream stream = new FileInputStream(file)) {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(stream);
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT
+                        && "protected_packages".equals(xml.getAttributeValue(null, "name"))) {
+                    String json = xml.getElementText();
+                    for (String item : json.substring(1, json.length() - 1).split(",")) {
+                        packages.add(item.substring(1, item.length() - 1));
+                    }
+                }
+            }
+            xml.close();
+        }
+        return packages;
+    }
+}
@@ -0,0 +1,136 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LockTriggerCoordinatorTest {
+
+    private static final String BANK = "com.bank.app";
+    private static final String CHAT = "com.whatsapp";
+
+    @Test
+    public void triggersDuringALaunchAreSuppressed() {
+        LockTriggerCoordinator triggers = new LockTriggerCoordinator();
+
+        assertTrue(triggers.tryTrigger(BANK, 0));
+        assertFalse(triggers.tryTrigger(BANK, 100));
+        assertFalse(triggers.tryTrigger(CHAT, 200));
+        assertEquals(2, triggers.getSuppressed());
+
+        triggers.onLockCreated(300);
+        triggers.onFirstFrame(400);
+        assertFalse(triggers.tryTrigger(CHAT, 500));
+        assertTrue(triggers.isActive(500));
+
+        triggers.onLockClosed();
+        assertFalse(triggers.isActive(600));
+        assertTrue(triggers.tryTrigger(CHAT, 600));
+    }
+
+    @Test
+    public void launchThatNeverShowsGivesTheSlotBack() {
+        LockTriggerCoordinator triggers = new LockTriggerCoordinator();
+        assertTrue(triggers.tryTrigger(BANK, 0));
+
+        assertTrue(triggers.isActive(LockTriggerCoordinator.LAUNCH_TIMEOUT_MS));
+        assertFalse(triggers.isActive(LockTriggerCoordinator.LAUNCH_TIMEOUT_MS + 1));
+        assertTrue(triggers.tryTrigger(BANK, LockTriggerCoordinator.LAUNCH_TIMEOUT_MS + 1));
+    }
+
+    @Test
+    public void shownLockThatLeftTheForegroundGivesTheSlotBack() {
+        LockTriggerCoordinator triggers = new LockTriggerCoordinator();
+        assertTrue(triggers.tryTrigger(BANK, 0));
+        triggers.onLockCreated(100);
+        triggers.onFirstFrame(200);
+
+        // The lock UI process dies; the protected app is back in front and no close report comes
+        long settled = 200 + LockTriggerCoordinator.SHOWN_SETTLE_MS;
+        assertFalse(triggers.releaseIfLeft(false, settled));
+        assertFalse(triggers.tryTrigger(BANK, settled));
+        assertTrue(triggers.releaseIfLeft(false, settled + 1));
+        assertTrue(triggers.tryTrigger(BANK, settled + 1));
+    }
+
+    @Test
+    public void shownLockInFrontKeepsTheSlot() {
+        LockTriggerCoordinator triggers = new LockTriggerCoordinator();
+        assertTrue(triggers.tryTrigger(BANK, 0));
+        triggers.onFirstFrame(100);
+
+        long step = LockTriggerCoordinator.SHOWN_SETTLE_MS / 2;
+        for (long now = 100; now < 10 * LockTriggerCoordinator.SHOWN_SETTLE_MS; now += step) {
+            assertFalse(triggers.releaseIfLeft(true, now));
+        }
+        // A brief moment elsewhere (notification shade, detector lag) is not enough either
+        long now = 10 * LockTriggerCoordinator.SHOWN_SETTLE_MS;
+        assertFalse(triggers.releaseIfLeft(false, now));
+        assertTrue(triggers.isActive(now));
+    }
+
+    @Test
+    public void launchingLockIsNotReleasedAsLeft() {
+        LockTriggerCoordinator triggers = new LockTriggerCoordinator();
+        assertTrue(triggers.tryTrigger(BANK, 0));
+
+        assertFalse(triggers.releaseIfLeft(false, LockTriggerCoordinator.LAUNCH_TIMEOUT_MS));
+        assertTrue(triggers.isActive(LockTriggerCoordinator.LAUNCH_TIMEOUT_MS));
+    }
+
+    /**
+     * Several threads race for the slot, each winner plays a whole lock
+     * lifecycle; two lock UIs must never be in flight at the same time.
+     */
+    @Test
+    public void racingTriggersLaunchOneLockAtATime() throws InterruptedException {
+        LockTriggerCoordinator triggers = new LockTriggerCoordinator();
+        int threads = 8;
+        int attempts = 50_000;
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger launches = new AtomicInteger();
+        AtomicLong clock = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            String packageName = t % 2 == 0 ? BANK : CHAT;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < attempts; i++) {
+                    // Time never runs past the launch timeout, so only a closed lock frees the slot
+                    long now = clock.get();
+                    if (!triggers.tryTrigger(packageName, now)) continue;
+                    launches.incrementAndGet();
+                    if (inFlight.incrementAndGet() > 1) duplicates.incrementAndGet();
+                    triggers.onLockCreated(now);
+                    triggers.onFirstFrame(now);
+                    inFlight.decrementAndGet();
+                    triggers.onLockClosed();
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(0, duplicates.get());
+        assertTrue(launches.get() > 0);
+        // Refusals while a lock is shown are not counted as suppressed launches;
+        // how many land in the launch window depends on the scheduling
+        assertTrue(launches.get() + triggers.getSuppressed() <= (long) threads * attempts);
+    }
+}
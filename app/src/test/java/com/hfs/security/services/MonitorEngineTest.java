@@ -0,0 +1,311 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.utils.PackageRegistry;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The guard's per-tick decisions, driven by a virtual clock.
+ */
+public class MonitorEngineTest {
+
+    private static final String OWN = "com.hfs.security";
+    private static final String BANK = "com.bank.app";
+    private static final String CHAT = "com.whatsapp";
+    private static final String BROWSER = "com.android.chrome";
+    private static final String LAUNCHER = "com.android.launcher3";
+
+    /**
+     * A single-window device whose foreground, clock and protected set the
+     * test moves by hand.
+     */
+    private static final class Device implements MonitorEngine.ForegroundSource, MonitorEngine.PolicySource,
+            MonitorEngine.Actions {
+        long now = 1_000_000;
+        String foreground = "";
+        long foregroundSince = 0;
+        Set<String> protectedPackages = Collections.emptySet();
+        final Map<String, AppPolicy> policies = Collections.emptyMap();
+        final PackageRuleMatcher packageRules = PackageRuleMatcher.compile(Collections.emptySet());
+        final Set<String> activityRules = Collections.emptySet();
+        final VisibleWindowSet windows = new VisibleWindowSet();
+        final List<String> locks = new ArrayList<>();
+        int lockActiveTicks = 0;
+        int warmUpHints = 0;
+
+        final UnlockSessionTable sessions = new UnlockSessionTable();
+        final LockTriggerCoordinator triggers = new LockTriggerCoordinator();
+        final MonitorEngine engine = new MonitorEngine(() -> now, this, this, this, sessions, triggers,
+                new TickScheduler(Collections.singleton(LAUNCHER), true), OWN);
+
+        void protect(String... packages) {
+            // A new immutable snapshot, as HFSDatabaseHelper publishes one on every save
+            protectedPackages = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(packages)));
+        }
+
+        void open(String packageName) {
+            // Distinct instance, like a name decoded from a new usage event
+            foreground = new String(packageName);
+            foregroundSince = now;
+        }
+
+        long tick() {
+            return engine.tick();
+        }
+
+        void advance(long ms) {
+            now += ms;
+        }
+
+        /**
+         * The owner authenticates on the lock screen, which then closes.
+         */
+        void ownerUnlocks(String packageName) {
+            triggers.onLockCreated(now);
+            triggers.onFirstFrame(now);
+            sessions.unlock(PackageRegistry.getInstance().idFor(packageName), now);
+            triggers.onLockClosed();
+        }
+
+        @Override
+        public String getForegroundPackage(long at) {
+            return foreground;
+        }
+
+        @Override
+        public String getForegroundClassName() {
+            return "";
+        }
+
+        @Override
+        public long getForegroundSinceMs() {
+            return foregroundSince;
+        }
+
+        @Override
+        public VisibleWindowSet getVisibleWindows() {
+            return windows;
+        }
+
+        @Override
+        public Set<String> getProtectedPackages() {
+            return protectedPackages;
+        }
+
+        @Override
+        public Map<String, AppPolicy> getAppPolicies() {
+            return policies;
+        }
+
+        @Override
+        public PackageRuleMatcher getPackageRuleMatcher() {
+            return packageRules;
+        }
+
+        @Override
+        public Set<String> getActivityRules() {
+            return activityRules;
+        }
+
+        @Override
+        public void onLockTriggered(String packageName, long eventTs, long triggerTs) {
+            locks.add(packageName);
+        }
+
+        @Override
+        public void onLockActiveTick() {
+            lockActiveTicks++;
+        }
+
+        @Override
+        public void onWarmUpHint() {
+            warmUpHints++;
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void steadyStateTickAllocatesNothing() {
+        Device device = new Device();
+        device.protect(BANK, CHAT);
+        device.open(BROWSER);
+        device.tick();
+
+        // The protected set is looked up on every tick, but only recompiled for a new snapshot
+        int ticks = 100_000;
+        long bytes = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            long bytes0 = allocatedBytes();
+            for (int i = 0; i < ticks; i++) {
+                device.now += 500;
+                device.tick();
+            }
+            bytes = allocatedBytes() - bytes0;
+        }
+
+        assertEquals(0, bytes / ticks);
+        assertTrue(device.locks.isEmpty());
+    }
+
+    @Test
+    public void newSnapshotTakesEffectOnTheNextTick() {
+        Device device = new Device();
+        device.protect(CHAT);
+        device.open(BANK);
+        device.tick();
+        assertTrue(device.locks.isEmpty());
+
+        device.protect(CHAT, BANK);
+        device.now += 500;
+        device.tick();
+
+        assertEquals(Collections.singletonList(BANK), device.locks);
+    }
+
+    @Test
+    public void protectedAppIsLockedOnceUntilTheOwnerUnlocks() {
+        Device device = new Device();
+        device.protect(BANK);
+        device.open(BANK);
+
+        device.tick();
+        device.advance(300);
+        device.tick();
+
+        assertEquals(Collections.singletonList(BANK), device.locks);
+        assertEquals(1, device.lockActiveTicks);
+    }
+
+    @Test
+    public void returningWithinTheGraceDoesNotLockAgain() {
+        Device device = new Device();
+        device.protect(BANK);
+        device.open(BANK);
+        device.tick();
+        device.ownerUnlocks(BANK);
+
+        device.advance(500);
+        device.open(BROWSER);
+        device.tick();
+        device.advance(AppPolicy.DEFAULT_GRACE_MS - 1000);
+        device.open(BANK);
+        device.tick();
+
+        assertEquals(1, device.locks.size());
+    }
+
+    @Test
+    public void returningAfterTheGraceLocksAgain() {
+        Device device = new Device();
+        device.protect(BANK);
+        device.open(BANK);
+        device.tick();
+        device.ownerUnlocks(BANK);
+
+        device.advance(500);
+        device.open(BROWSER);
+        device.tick();
+        device.advance(AppPolicy.DEFAULT_GRACE_MS + 1);
+        device.open(BANK);
+        device.tick();
+
+        assertEquals(Arrays.asList(BANK, BANK), device.locks);
+    }
+
+    @Test
+    public void ownLockScreenInFrontDoesNotStartTheGrace() {
+        Device device = new Device();
+        device.protect(BANK);
+        device.open(BANK);
+        device.tick();
+        device.ownerUnlocks(BANK);
+
+        // The lock UI over the app for much longer than the grace, then back to the app
+        device.open(OWN);
+        device.tick();
+        device.advance(3 * AppPolicy.DEFAULT_GRACE_MS);
+        device.tick();
+        device.open(BANK);
+        device.tick();
+
+        assertEquals(1, device.locks.size());
+    }
+
+    @Test
+    public void slowLaunchIsNotTriggeredTwice() {
+        Device device = new Device();
+        device.protect(BANK);
+        device.open(BANK);
+
+        // The lock UI is not up yet, but the launch is still within its timeout
+        for (int i = 0; i < 5; i++) {
+            device.tick();
+            device.advance(500);
+        }
+
+        assertEquals(1, device.locks.size());
+        assertEquals(4, device.triggers.getSuppressed());
+    }
+
+    @Test
+    public void everyReturnToTheLauncherHintsAWarmUpAtALimitedRate() {
+        Device device = new Device();
+        device.protect(BANK);
+
+        device.open(LAUNCHER);
+        device.tick();
+        device.advance(300);
+        device.tick();
+        assertEquals(1, device.warmUpHints);
+
+        // Back on the launcher right away: the lock screen is still warm
+        device.open(BROWSER);
+        device.advance(500);
+        device.tick();
+        device.open(LAUNCHER);
+        device.tick();
+        assertEquals(1, device.warmUpHints);
+
+        // Hours later the UI process may have been killed; warm it up again
+        device.open(BROWSER);
+        device.advance(MonitorEngine.WARM_UP_HINT_INTERVAL_MS);
+        device.tick();
+        device.open(LAUNCHER);
+        device.tick();
+        assertEquals(2, device.warmUpHints);
+    }
+
+    @Test
+    public void tickRateFollowsWhatIsInFront() {
+        Device device = new Device();
+        device.protect(BANK);
+
+        device.open(LAUNCHER);
+        assertEquals(TickScheduler.FAST_TICK_MS, device.tick());
+        device.open(BROWSER);
+        device.advance(300);
+        assertEquals(TickScheduler.BASE_TICK_MS, device.tick());
+        device.advance(10_000);
+        // The same app in front never slows polling below the base rate
+        assertEquals(TickScheduler.BASE_TICK_MS, device.tick());
+        assertFalse(device.locks.contains(BROWSER));
+    }
+}
@@ -0,0 +1,126 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interleaved resume/pause/stop sequences of split-screen and freeform
+ * windows, with the locks each one must produce.
+ */
+public class MultiWindowReplayTest {
+
+    private static final String BANK = "com.bank.app";
+    private static final String CHAT = "com.whatsapp";
+    private static final String BROWSER = "com.android.chrome";
+    private static final String LAUNCHER = "com.android.launcher3";
+    private static final Set<String> PROTECTED = new HashSet<>(Arrays.asList(BANK, CHAT));
+
+    private static TraceSimulator.WindowEvent event(long timeMs, char type, String packageName, String className) {
+        return new TraceSimulator.WindowEvent(timeMs, type, packageName, className);
+    }
+
+    private static Map<String, Integer> replay(boolean ownerUnlocks, TraceSimulator.WindowEvent... events) {
+        List<TraceSimulator.WindowEvent> list = Arrays.asList(events);
+        return new TraceSimulator.WindowReplay(ownerUnlocks).run(list, PROTECTED);
+    }
+
+    private static Map<String, Integer> locks(Object... packageAndCount) {
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < packageAndCount.length; i += 2) {
+            expected.put((String) packageAndCount[i], (Integer) packageAndCount[i + 1]);
+        }
+        return expected;
+    }
+
+    @Test
+    public void protectedAppInTheUnfocusedHalfIsLocked() {
+        // Android 11+ multi-resume: both halves resumed, the unprotected one focused last
+        assertEquals(locks(BANK, 1), replay(true,
+                event(0, 'R', LAUNCHER, ".Launcher"),
+                event(1000, 'P', LAUNCHER, ".Launcher"),
+                event(1010, 'R', BANK, ".Main"),
+                event(1030, 'R', BROWSER, ".Tab"),
+                event(1200, 'S', LAUNCHER, ".Launcher")));
+    }
+
+    @Test
+    public void pausedButVisibleHalfIsLocked() {
+        // Android 10 without multi-resume: the unfocused half is paused but never stopped
+        assertEquals(locks(BANK, 1), replay(true,
+                event(0, 'R', BANK, ".Main"),
+                event(5, 'P', BANK, ".Main"),
+                event(10, 'R', BROWSER, ".Tab")));
+    }
+
+    @Test
+    public void twoProtectedHalvesAreBothLocked() {
+        assertEquals(locks(BANK, 1, CHAT, 1), replay(true,
+                event(0, 'R', CHAT, ".Home"),
+                event(20, 'R', BANK, ".Main")));
+    }
+
+    @Test
+    public void leavingAnAppIsNotASecondWindow() {
+        // Pause, resume of the next app and stop usually land in one batch
+        assertEquals(locks(BANK, 1), replay(false,
+                event(0, 'R', BANK, ".Main"),
+                event(2000, 'P', BANK, ".Main"),
+                event(2010, 'R', LAUNCHER, ".Launcher"),
+                event(2400, 'S', BANK, ".Main")));
+    }
+
+    @Test
+    public void sessionIsHeldWhileTheHalfStaysVisible() {
+        assertEquals(locks(BANK, 1), replay(true,
+                event(0, 'R', BANK, ".Main"),
+                event(1000, 'R', BROWSER, ".Tab"),
+                event(40_000, 'R', BANK, ".Main")));
+    }
+
+    @Test
+    public void closedHalfReArmsAfterTheGracePeriod() {
+        assertEquals(locks(BANK, 2), replay(true,
+                event(0, 'R', BANK, ".Main"),
+                event(1000, 'R', BROWSER, ".Tab"),
+                event(2000, 'P', BANK, ".Main"),
+                event(2050, 'S', BANK, ".Main"),
+                event(20_000, 'P', BROWSER, ".Tab"),
+                event(20_010, 'R', BANK, ".Main")));
+    }
+
+    @Test
+    public void singleWindowTickStaysCheap() {
+        VisibleWindowSet windows = new VisibleWindowSet();
+        String[] apps = {"com.android.chrome", "com.whatsapp", "com.android.launcher3"};
+        int ticks = 2_000_000;
+        long elapsed = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < ticks; i++) {
+                // A switch every 32 ticks, otherwise an idle refresh
+                if ((i & 31) == 0) {
+                    String previous = apps[(i >> 5) % apps.length];
+                    windows.onPaused(previous, ".A", i, true);
+                    windows.onResumed(apps[((i >> 5) + 1) % apps.length], ".A", i);
+                    windows.onStopped(previous, ".A");
+                }
+                windows.refresh(i);
+            }
+            elapsed = System.nanoTime() - t0;
+        }
+
+        assertEquals(1, windows.size());
+        // Measured around 20 ns; a tick every 300 ms leaves a wide margin
+        double nanosPerTick = (double) elapsed / ticks;
+        assertTrue(nanosPerTick + " ns/tick", nanosPerTick < 1000);
+    }
+}
@@ -0,0 +1,118 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.utils.PackageRegistry;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compiled per-app policies: schedules, grace periods and re-arm modes, and
+ * an evaluation cost that does not grow with the number of policies.
+ */
+public class PolicyTableTest {
+
+    private final PackageRegistry registry = PackageRegistry.getInstance();
+
+    @Test
+    public void policiesCompileIntoGraceAndSchedule() {
+        AppPolicy night = new AppPolicy("policy.night");
+        // 22:00 to 06:00, across midnight
+        night.setActiveHours(22 * 60, 6 * 60);
+        AppPolicy always = new AppPolicy("policy.always");
+        always.setLockAlways(true);
+        AppPolicy screenOff = new AppPolicy("policy.screenoff");
+        screenOff.setRearmMode(AppPolicy.REARM_ON_SCREEN_OFF);
+        AppPolicy custom = new AppPolicy("policy.custom");
+        custom.setGraceMs(60_000);
+
+        Set<String> packages = new HashSet<>(Arrays.asList("policy.night", "policy.always", "policy.screenoff",
+                "policy.custom", "policy.plain"));
+        Map<String, AppPolicy> policies = new HashMap<>();
+        for (AppPolicy policy : Arrays.asList(night, always, screenOff, custom)) {
+            policies.put(policy.getPackageName(), policy);
+        }
+        // Policies of unprotected apps are ignored
+        policies.put("policy.unprotected", new AppPolicy("policy.unprotected"));
+        PolicyTable table = PolicyTable.compile(packages, policies);
+
+        int nightId = registry.idFor("policy.night");
+        assertTrue(table.isProtectedAt(nightId, 23 * 60));
+        assertTrue(table.isProtectedAt(nightId, 5 * 60 + 59));
+        assertFalse(table.isProtectedAt(nightId, 12 * 60));
+
+        assertEquals(0, table.graceMs(registry.idFor("policy.always")));
+        assertEquals(PolicyTable.UNTIL_SCREEN_OFF, table.graceMs(registry.idFor("policy.screenoff")));
+        assertEquals(60_000, table.graceMs(registry.idFor("policy.custom")));
+        assertEquals(AppPolicy.DEFAULT_GRACE_MS, table.graceMs(registry.idFor("policy.plain")));
+        assertTrue(table.isProtectedAt(registry.idFor("policy.plain"), 0));
+
+        assertFalse(table.isProtectedAt(registry.idFor("policy.unprotected"), 0));
+        assertFalse(table.isProtectedAt(PackageRegistry.NO_ID, 0));
+        assertFalse(PolicyTable.compile(Collections.emptySet(), policies).isProtectedAt(nightId, 23 * 60));
+    }
+
+    @Test
+    public void evaluationCostStaysFlatAsPoliciesGrow() {
+        int[] counts = {10, 100, 1000, 10000};
+        PolicyTable[] tables = new PolicyTable[counts.length];
+        int[][] ids = new int[counts.length][1024];
+
+        for (int t = 0; t < counts.length; t++) {
+            int count = counts[t];
+            Set<String> packages = new HashSet<>();
+            Map<String, AppPolicy> policies = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String packageName = "bench.app" + i;
+                packages.add(packageName);
+                AppPolicy policy = new AppPolicy(packageName);
+                if (i % 2 == 0) policy.setActiveHours(9 * 60, 18 * 60);
+                if (i % 3 == 0) policy.setRearmMode(AppPolicy.REARM_ON_SCREEN_OFF);
+                policy.setLockAlways(i % 5 == 0);
+                policies.put(packageName, policy);
+            }
+            tables[t] = PolicyTable.compile(packages, policies);
+
+            Random random = new Random(count);
+            for (int i = 0; i < ids[t].length; i++) {
+                ids[t][i] = registry.idFor("bench.app" + random.nextInt(count));
+            }
+        }
+
+        int evaluations = 5_000_000;
+        double[] nanos = new double[counts.length];
+        // Warm-up round for the JIT over every table, then the timed round
+        for (int round = 0; round < 2; round++) {
+            for (int t = 0; t < counts.length; t++) {
+                long t0 = System.nanoTime();
+                long sink = evaluate(tables[t], ids[t], evaluations);
+                nanos[t] = (double) (System.nanoTime() - t0) / evaluations;
+                assertTrue(sink > 0);
+            }
+        }
+
+        // Measured flat at 4-8 ns; allow for noise, not for growth with the table
+        String measured = Arrays.toString(nanos) + " ns/eval for " + Arrays.toString(counts) + " policies";
+        assertTrue(measured, nanos[counts.length - 1] < 4 * nanos[0] + 10);
+    }
+
+    private static long evaluate(PolicyTable table, int[] ids, int evaluations) {
+        long sink = 0;
+        for (int i = 0; i < evaluations; i++) {
+            int id = ids[i & 1023];
+            if (table.isProtectedAt(id, i % 1440) && table.graceMs(id) != 0) sink++;
+        }
+        return sink;
+    }
+}
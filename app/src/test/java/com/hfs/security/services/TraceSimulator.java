@@ -0,0 +1,565 @@
+package com.hfs.security.services;
+
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.utils.PackageRegistry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Off-device replay harness for the MonitorEngine.
+ * Replays a recorded or synthetic app-switch trace on a virtual clock, plays
+ * the owner on every lock (unlocks after a delay, or leaves) and checks the
+ * engine's decisions against the session rules: missed locks, duplicate and
+ * stale triggers, detection latency, and CPU time spent per simulated hour.
+ * Driven by TraceSimulatorTest and MultiWindowReplayTest.
+ */
+public class TraceSimulator {
+
+    private static final long NEVER = Long.MAX_VALUE;
+    // How long the last app of a trace stays in front
+    private static final long TRACE_TAIL_MS = 5000;
+
+    /**
+     * One foreground change of a trace.
+     */
+    public static final class Switch {
+        public final long timeMs;
+        public final String packageName;
+        public final String className;
+
+        public Switch(long timeMs, String packageName) {
+            this(timeMs, packageName, "");
+        }
+
+        public Switch(long timeMs, String packageName, String className) {
+            this.timeMs = timeMs;
+            this.packageName = packageName;
+            this.className = className;
+        }
+    }
+
+    /**
+     * Device and owner model of a run.
+     */
+    public static final class Config {
+        public Set<String> protectedPackages = Collections.emptySet();
+        public Set<String> launcherPackages = Collections.emptySet();
+        /** Exact, prefix or glob package patterns. */
+        public Set<String> packageRules = Collections.emptySet();
+        /** Activity-level rules, "package/classPrefix". */
+        public Set<String> activityRules = Collections.emptySet();
+        public String ownPackage = "com.hfs.security";
+        /** Delay until the detector reports a switch (UsageStats event lag). */
+        public long detectionLagMs = 0;
+        /** Run a tick as soon as the detector sees a switch, like the accessibility backend. */
+        public boolean pushBased = false;
+        /** Time from trigger to the lock UI being on screen. */
+        public long lockLaunchMs = 250;
+        /** Time the owner needs to authenticate once the lock is on screen. */
+        public long unlockDelayMs = 1500;
+    }
+
+    /**
+     * Outcome of a run; latencies in ms.
+     */
+    public static final class Report {
+        public int switches;
+        public int protectedVisits;
+        public int expectedLocks;
+        public int missedLocks;
+        public int duplicateTriggers;
+        public int staleTriggers;
+        public long suppressedLaunches;
+        public long detectP50 = -1;
+        public long detectP95 = -1;
+        public long detectMax = -1;
+        /** Longest visit that needed a lock and did not get one, in ms. */
+        public long longestMissedVisitMs = 0;
+        public long ticks;
+        public double simulatedHours;
+        public double ticksPerHour;
+        public double cpuMsPerHour;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "switches=%d, protectedVisits=%d, expectedLocks=%d, missed=%d (longest %d ms), duplicate=%d,"
+                            + " stale=%d, suppressed=%d\n"
+                            + "detect p50/p95/max: %d/%d/%d ms\n"
+                            + "simulated %.2f h, ticks/h=%.0f, cpu ms/h=%.2f",
+                    switches, protectedVisits, expectedLocks, missedLocks, longestMissedVisitMs, duplicateTriggers,
+                    staleTriggers, suppressedLaunches, detectP50, detectP95, detectMax, simulatedHours, ticksPerHour, cpuMsPerHour);
+        }
+    }
+
+    private final Config config;
+    private final List<Switch> trace;
+
+    // Virtual device state
+    private long now;
+    private int actualIndex = 0;   // switch currently in front
+    private int detectedIndex = -1; // newest switch the detector has seen
+    private long lockShowAt = NEVER;
+    private long unlockAt = NEVER;
+    private int lockVisit = -1;
+    private boolean lockShowing = false;
+
+    private UnlockSessionTable sessions;
+    private LockTriggerCoordinator triggers;
+
+    // Per-visit results, indexed like the trace
+    private int[] triggersByVisit;
+    private long[] firstTriggerAt;
+    private boolean[] unlockedInVisit;
+    private int staleTriggers = 0;
+
+    public TraceSimulator(Config config, List<Switch> trace) {
+        this.config = config;
+        this.trace = trace;
+    }
+
+    /**
+     * Replays the whole trace once.
+     */
+    public Report run() {
+        Report report = new Report();
+        if (trace.isEmpty()) return report;
+
+        int n = trace.size();
+        triggersByVisit = new int[n];
+        firstTriggerAt = new long[n];
+        unlockedInVisit = new boolean[n];
+        sessions = new UnlockSessionTable();
+        triggers = new LockTriggerCoordinator();
+
+        Set<String> protectedSnapshot = Collections.unmodifiableSet(new HashSet<>(config.protectedPackages));
+        PackageRuleMatcher patterns = PackageRuleMatcher.compile(config.packageRules);
+        Set<String> rulesSnapshot = Collections.unmodifiableSet(new HashSet<>(config.activityRules));
+        TickScheduler scheduler = new TickScheduler(config.launcherPackages, true);
+        MonitorEngine.PolicySource policySource = new MonitorEngine.PolicySource() {
+            @Override
+            public Set<String> getProtectedPackages() {
+                return protectedSnapshot;
+            }
+
+            @Override
+            public Map<String, AppPolicy> getAppPolicies() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public PackageRuleMatcher getPackageRuleMatcher() {
+                return patterns;
+            }
+
+            @Override
+            public Set<String> getActivityRules() {
+                return rulesSnapshot;
+            }
+        };
+        MonitorEngine engine = new MonitorEngine(() -> now, foregroundSource, policySource,
+                actions, sessions, triggers, scheduler, config.ownPackage);
+
+        long start = trace.get(0).timeMs;
+        long end = trace.get(n - 1).timeMs + TRACE_TAIL_MS;
+        long nextTick = start;
+        int pushIndex = 0;
+        long tickNanos = 0;
+
+        now = start;
+        while (true) {
+            long nextPush = config.pushBased && pushIndex < n ? trace.get(pushIndex).timeMs + config.detectionLagMs : NEVER;
+            long next = Math.min(Math.min(nextTick, nextPush), Math.min(lockShowAt, unlockAt));
+            if (next > end) break;
+            now = next;
+
+            while (actualIndex + 1 < n && trace.get(actualIndex + 1).timeMs <= now) {
+                actualIndex++;
+            }
+
+            if (now >= lockShowAt) {
+                lockShowAt = NEVER;
+                lockShowing = true;
+                triggers.onFirstFrame(now);
+                unlockAt = now + config.unlockDelayMs;
+            }
+            if (now >= unlockAt) {
+                unlockAt = NEVER;
+                if (lockShowing && actualIndex == lockVisit) {
+                    unlockedInVisit[lockVisit] = true;
+                    sessions.unlock(PackageRegistry.getInstance().idFor(trace.get(lockVisit).packageName), now);
+                    releaseLock();
+                }
+            }
+            if (now >= nextPush) {
+                pushIndex++;
+                nextTick = now;
+            }
+
+            if (now >= nextTick) {
+                long t0 = System.nanoTime();
+                long delay = engine.tick();
+                tickNanos += System.nanoTime() - t0;
+                report.ticks++;
+                nextTick = delay == TickScheduler.SUSPENDED ? NEVER : now + delay;
+            }
+        }
+
+        evaluate(report, end);
+        report.staleTriggers = staleTriggers;
+        report.suppressedLaunches = triggers.getSuppressed();
+        report.simulatedHours = (end - start) / 3_600_000.0;
+        if (report.simulatedHours > 0) {
+            report.ticksPerHour = report.ticks / report.simulatedHours;
+            report.cpuMsPerHour = tickNanos / 1_000_000.0 / report.simulatedHours;
+        }
+        return report;
+    }
+
+    /**
+     * The detector sees the trace {@link Config#detectionLagMs} late.
+     */
+    private final MonitorEngine.ForegroundSource foregroundSource = new MonitorEngine.ForegroundSource() {
+        @Override
+        public String getForegroundPackage(long at) {
+            while (detectedIndex + 1 < trace.size()
+                    && trace.get(detectedIndex + 1).timeMs + config.detectionLagMs <= at) {
+                detectedIndex++;
+            }
+            return detectedIndex < 0 ? "" : trace.get(detectedIndex).packageName;
+        }
+
+        @Override
+        public String getForegroundClassName() {
+            return detectedIndex < 0 ? "" : trace.get(detectedIndex).className;
+        }
+
+        @Override
+        public long getForegroundSinceMs() {
+            return detectedIndex < 0 ? 0 : trace.get(detectedIndex).timeMs;
+        }
+
+        @Override
+        public VisibleWindowSet getVisibleWindows() {
+            // Switch traces are single-window
+            return singleWindow;
+        }
+    };
+
+    private final VisibleWindowSet singleWindow = new VisibleWindowSet();
+
+    private final MonitorEngine.Actions actions = new MonitorEngine.Actions() {
+        @Override
+        public void onLockTriggered(String packageName, long eventTs, long triggerTs) {
+            if (!packageName.equals(trace.get(actualIndex).packageName)) {
+                // Detector lag: the app has already been left
+                staleTriggers++;
+                triggers.onLockClosed();
+                return;
+            }
+            if (triggersByVisit[actualIndex]++ == 0) {
+                firstTriggerAt[actualIndex] = triggerTs;
+            }
+            lockVisit = actualIndex;
+            lockShowAt = triggerTs + config.lockLaunchMs;
+        }
+
+        @Override
+        public void onLockActiveTick() {
+            // The guard dismisses a lock once its app is no longer in front
+            if (lockShowing && !foregroundSource.getForegroundPackage(now).equals(trace.get(lockVisit).packageName)) {
+                releaseLock();
+            }
+        }
+
+        @Override
+        public void onWarmUpHint() {}
+    };
+
+    private void releaseLock() {
+        lockShowing = false;
+        unlockAt = NEVER;
+        triggers.onLockClosed();
+    }
+
+    /**
+     * Reference model of the session rules: a visit needs a lock unless the
+     * same app was unlocked (or resumed) in a visit that ended less than the
+     * grace period ago.
+     */
+    private void evaluate(Report report, long end) {
+        int n = trace.size();
+        report.switches = n;
+        Map<String, Long> sessionLeftAt = new HashMap<>();
+        List<Long> latencies = new ArrayList<>();
+        PackageRuleMatcher patterns = PackageRuleMatcher.compile(config.packageRules);
+
+        for (int i = 0; i < n; i++) {
+            Switch visit = trace.get(i);
+            long visitEnd = i + 1 < n ? trace.get(i + 1).timeMs : end;
+            if (!config.protectedPackages.contains(visit.packageName)
+                    && !patterns.matches(visit.packageName)) continue;
+
+            report.protectedVisits++;
+            Long leftAt = sessionLeftAt.get(visit.packageName);
+            boolean sessionValid = leftAt != null && visit.timeMs - leftAt < AppPolicy.DEFAULT_GRACE_MS;
+
+            if (sessionValid) {
+                report.duplicateTriggers += triggersByVisit[i];
+            } else {
+                report.expectedLocks++;
+                if (triggersByVisit[i] == 0) {
+                    report.missedLocks++;
+                    report.longestMissedVisitMs = Math.max(report.longestMissedVisitMs, visitEnd - visit.timeMs);
+                } else {
+                    report.duplicateTriggers += triggersByVisit[i] - 1;
+                    latencies.add(firstTriggerAt[i] - visit.timeMs);
+                }
+            }
+
+            if (sessionValid || unlockedInVisit[i]) {
+                sessionLeftAt.put(visit.packageName, visitEnd);
+            } else {
+                sessionLeftAt.remove(visit.packageName);
+            }
+        }
+
+        if (!latencies.isEmpty()) {
+            long[] sorted = new long[latencies.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            report.detectP50 = percentile(sorted, 50);
+            report.detectP95 = percentile(sorted, 95);
+            report.detectMax = sorted[sorted.length - 1];
+        }
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Builds a trace of app visits separated by launcher visits, with bursts
+     * of quick launcher switching mixed into longer dwell times.
+     *
+     * @param switches Number of app visits (launcher visits come on top)
+     */
+    public static List<Switch> syntheticTrace(long seed, int switches, List<String> protectedPackages,
+                                              List<String> otherPackages, String launcherPackage) {
+        Random random = new Random(seed);
+        List<Switch> trace = new ArrayList<>();
+        long t = 0;
+        int burstLeft = 0;
+
+        for (int i = 0; i < switches; i++) {
+            if (burstLeft == 0 && random.nextDouble() < 0.1) {
+                burstLeft = 3 + random.nextInt(6);
+            }
+
+            trace.add(new Switch(t, launcherPackage));
+            t += 300 + random.nextInt(1700);
+
+            List<String> pool = random.nextDouble() < 0.3 ? protectedPackages : otherPackages;
+            trace.add(new Switch(t, pool.get(random.nextInt(pool.size()))));
+
+            if (burstLeft > 0) {
+                burstLeft--;
+                t += 200 + random.nextInt(1300);
+            } else {
+                // Mostly short visits with a long tail, capped at 3 minutes
+                t += Math.min(180_000, 5000 + (long) (-Math.log(1 - random.nextDouble()) * 30_000));
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Reads a recorded trace: one "timestampMs packageName [className]" per line,
+     * '#' starts a comment.
+     */
+    public static List<Switch> parseTrace(Reader reader) throws IOException {
+        List<Switch> trace = new ArrayList<>();
+        // Same String instance per package, like the on-device tracker
+        Map<String, String> names = new HashMap<>();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            if (parts.length < 2) continue;
+
+            String name = names.get(parts[1]);
+            if (name == null) {
+                name = parts[1];
+                names.put(name, name);
+            }
+            trace.add(new Switch(Long.parseLong(parts[0]), name, parts.length > 2 ? parts[2] : ""));
+        }
+        return trace;
+    }
+
+    /**
+     * One activity lifecycle event of a multi-window replay.
+     */
+    public static final class WindowEvent {
+        public static final char RESUMED = 'R';
+        public static final char PAUSED = 'P';
+        public static final char STOPPED = 'S';
+
+        public final long timeMs;
+        public final char type;
+        public final String packageName;
+        public final String className;
+
+        public WindowEvent(long timeMs, char type, String packageName, String className) {
+            this.timeMs = timeMs;
+            this.type = type;
+            this.packageName = packageName;
+            this.className = className;
+        }
+    }
+
+    /**
+     * Replays a resume/pause/stop event stream through a VisibleWindowSet and
+     * the engine, the way ForegroundTracker feeds it on Android 10+, and
+     * counts the triggers per package. The owner either unlocks every lock at
+     * once or leaves it on screen until its app is no longer visible.
+     */
+    static final class WindowReplay implements MonitorEngine.ForegroundSource, MonitorEngine.Actions {
+        private static final long TICK_MS = 100;
+
+        private final VisibleWindowSet windows = new VisibleWindowSet();
+        private final UnlockSessionTable sessions = new UnlockSessionTable();
+        private final LockTriggerCoordinator triggers = new LockTriggerCoordinator();
+        private final Map<String, Integer> triggerCounts = new HashMap<>();
+        private final boolean ownerUnlocks;
+        private long now;
+        private String focused = "";
+        private String focusedClass = "";
+        private long focusedSince = 0;
+        private String lockedPackage = null;
+
+        WindowReplay(boolean ownerUnlocks) {
+            this.ownerUnlocks = ownerUnlocks;
+        }
+
+        Map<String, Integer> run(List<WindowEvent> events, Set<String> protectedPackages) {
+            Set<String> protectedSnapshot = Collections.unmodifiableSet(new HashSet<>(protectedPackages));
+            PackageRuleMatcher noPatterns = PackageRuleMatcher.compile(Collections.emptySet());
+            MonitorEngine.PolicySource policySource = new MonitorEngine.PolicySource() {
+                @Override
+                public Set<String> getProtectedPackages() {
+                    return protectedSnapshot;
+                }
+
+                @Override
+                public Map<String, AppPolicy> getAppPolicies() {
+                    return Collections.emptyMap();
+                }
+
+                @Override
+                public PackageRuleMatcher getPackageRuleMatcher() {
+                    return noPatterns;
+                }
+
+                @Override
+                public Set<String> getActivityRules() {
+                    return Collections.emptySet();
+                }
+            };
+            MonitorEngine engine = new MonitorEngine(() -> now, this, policySource, this, sessions, triggers,
+                    new TickScheduler(Collections.emptySet(), true), "com.hfs.security");
+
+            int next = 0;
+            long end = events.get(events.size() - 1).timeMs + 3 * VisibleWindowSet.PAUSE_SETTLE_MS;
+            for (now = events.get(0).timeMs; now <= end; now += TICK_MS) {
+                while (next < events.size() && events.get(next).timeMs <= now) {
+                    apply(events.get(next++));
+                }
+                windows.refresh(now);
+                engine.tick();
+            }
+            return triggerCounts;
+        }
+
+        private void apply(WindowEvent event) {
+            switch (event.type) {
+                case WindowEvent.RESUMED:
+                    String tracked = windows.onResumed(event.packageName, event.className, event.timeMs);
+                    if (!tracked.equals(focused)) {
+                        focused = tracked;
+                        focusedSince = event.timeMs;
+                    }
+                    focusedClass = event.className;
+                    break;
+                case WindowEvent.PAUSED:
+                    windows.onPaused(event.packageName, event.className, event.timeMs, true);
+                    break;
+                case WindowEvent.STOPPED:
+                    windows.onStopped(event.packageName, event.className);
+                    break;
+            }
+        }
+
+        @Override
+        public String getForegroundPackage(long at) {
+            return focused;
+        }
+
+        @Override
+        public String getForegroundClassName() {
+            return focusedClass;
+        }
+
+        @Override
+        public long getForegroundSinceMs() {
+            return focusedSince;
+        }
+
+        @Override
+        public VisibleWindowSet getVisibleWindows() {
+            return windows;
+        }
+
+        @Override
+        public void onLockTriggered(String packageName, long eventTs, long triggerTs) {
+            triggerCounts.merge(packageName, 1, Integer::sum);
+            triggers.onLockCreated(triggerTs);
+            triggers.onFirstFrame(triggerTs);
+            if (ownerUnlocks) {
+                sessions.unlock(PackageRegistry.getInstance().idFor(packageName), triggerTs);
+                triggers.onLockClosed();
+            } else {
+                lockedPackage = packageName;
+            }
+        }
+
+        @Override
+        public void onLockActiveTick() {
+            // Like the overlay: dismissed once its app is not visible anymore
+            if (lockedPackage != null && !focused.equals(lockedPackage) && !windows.contains(lockedPackage)) {
+                lockedPackage = null;
+                triggers.onLockClosed();
+            }
+        }
+
+        @Override
+        public void onWarmUpHint() {}
+    }
+}
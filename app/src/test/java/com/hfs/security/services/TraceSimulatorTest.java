@@ -0,0 +1,137 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Replays synthetic and recorded app-switch traces through the MonitorEngine
+ * on a virtual clock and checks the locks it fires.
+ */
+public class TraceSimulatorTest {
+
+    private static final List<String> PROTECTED = Arrays.asList(
+            "com.whatsapp", "com.android.gallery3d", "com.google.android.gm");
+    private static final List<String> OTHERS = Arrays.asList(
+            "com.android.chrome", "com.spotify.music", "com.google.android.youtube", "com.android.settings");
+    private static final String LAUNCHER = "com.android.launcher3";
+
+    // Thousands of switches with bursty launcher use, about 32 simulated hours
+    private static final List<TraceSimulator.Switch> TRACE =
+            TraceSimulator.syntheticTrace(42, 5000, PROTECTED, OTHERS, LAUNCHER);
+
+    private static TraceSimulator.Config config() {
+        TraceSimulator.Config config = new TraceSimulator.Config();
+        config.protectedPackages = new HashSet<>(PROTECTED);
+        config.launcherPackages = Collections.singleton(LAUNCHER);
+        return config;
+    }
+
+    @Test
+    public void pushDetectionLocksEveryVisitExactlyOnce() {
+        TraceSimulator.Config config = config();
+        config.detectionLagMs = 50;
+        config.pushBased = true;
+        TraceSimulator.Report report = new TraceSimulator(config, TRACE).run();
+
+        assertTrue(report.toString(), report.expectedLocks > 1000);
+        assertEquals(report.toString(), 0, report.missedLocks);
+        assertEquals(report.toString(), 0, report.duplicateTriggers);
+        assertEquals(report.toString(), 0, report.staleTriggers);
+        assertEquals(report.toString(), 50, report.detectMax);
+    }
+
+    @Test
+    public void pollingOnlyMissesVisitsShorterThanLagPlusTick() {
+        TraceSimulator.Config config = config();
+        // UsageStats events typically arrive a few hundred ms late
+        config.detectionLagMs = 300;
+        TraceSimulator.Report report = new TraceSimulator(config, TRACE).run();
+
+        assertEquals(report.toString(), 0, report.duplicateTriggers);
+        assertTrue(report.toString(),
+                report.longestMissedVisitMs
+                        < config.detectionLagMs + TickScheduler.BASE_TICK_MS + config.lockLaunchMs);
+        assertTrue(report.toString(), report.detectP95 <= config.detectionLagMs + TickScheduler.BASE_TICK_MS);
+        // The trace keeps the screen on, so the only cost over a fixed 500 ms loop is the launcher fast path
+        assertTrue(report.toString(), report.ticksPerHour < 1.05 * 3_600_000.0 / TickScheduler.BASE_TICK_MS);
+    }
+
+    /**
+     * The same trace through both detector backends: the accessibility push
+     * against UsageStats polling.
+     */
+    @Test
+    public void pushDetectionIsFasterThanPollingOnTheSameTrace() {
+        TraceSimulator.Config polling = config();
+        polling.detectionLagMs = 300;
+        TraceSimulator.Report polled = new TraceSimulator(polling, TRACE).run();
+
+        TraceSimulator.Config push = config();
+        push.detectionLagMs = 50;
+        push.pushBased = true;
+        TraceSimulator.Report pushed = new TraceSimulator(push, TRACE).run();
+
+        String reports = "[polling]\n" + polled + "\n[push]\n" + pushed;
+        assertEquals(reports, polled.expectedLocks, pushed.expectedLocks);
+        assertTrue(reports, pushed.detectP50 < polled.detectP50);
+        assertTrue(reports, pushed.detectP95 < polled.detectP95);
+        assertTrue(reports, pushed.missedLocks <= polled.missedLocks);
+    }
+
+    @Test
+    public void slowLockLaunchIsCoalescedInsteadOfRelaunched() {
+        TraceSimulator.Config config = config();
+        config.detectionLagMs = 300;
+        // The lock activity takes more than two ticks to come up
+        config.lockLaunchMs = 1200;
+        TraceSimulator.Report report = new TraceSimulator(config, TRACE).run();
+
+        assertEquals(report.toString(), 0, report.duplicateTriggers);
+        assertTrue(report.toString(), report.suppressedLaunches > 0);
+    }
+
+    @Test
+    public void recordedTraceLocksOncePerSession() throws IOException {
+        List<TraceSimulator.Switch> trace;
+        try (Reader reader = new InputStreamReader(
+                getClass().getResourceAsStream("/traces/recorded_switches.txt"), StandardCharsets.UTF_8)) {
+            trace = TraceSimulator.parseTrace(reader);
+        }
+        assertEquals(14, trace.size());
+
+        TraceSimulator.Config config = config();
+        config.detectionLagMs = 300;
+        TraceSimulator.Report report = new TraceSimulator(config, trace).run();
+
+        // WhatsApp three times, the return within the grace period without a lock; Gmail and Gallery once each
+        assertEquals(report.toString(), 5, report.protectedVisits);
+        assertEquals(report.toString(), 4, report.expectedLocks);
+        assertEquals(report.toString(), 0, report.missedLocks);
+        assertEquals(report.toString(), 0, report.duplicateTriggers);
+    }
+
+    @Test
+    public void parsedTraceSharesOneNamePerPackage() throws IOException {
+        List<TraceSimulator.Switch> trace = TraceSimulator.parseTrace(new StringReader(
+                "# comment\n\n0 com.whatsapp .Home\n500 com.android.launcher3\n900 com.whatsapp .Chat\n"));
+
+        assertEquals(3, trace.size());
+        assertSame(trace.get(0).packageName, trace.get(2).packageName);
+        assertEquals("", trace.get(1).className);
+        assertEquals(".Chat", trace.get(2).className);
+        assertEquals(900, trace.get(2).timeMs);
+    }
+}
@@ -0,0 +1,123 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.hfs.security.models.AppPolicy;
+import com.hfs.security.utils.PackageRegistry;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class UnlockSessionTableTest {
+
+    private final PackageRegistry registry = PackageRegistry.getInstance();
+    private final int bank = registry.idFor("com.bank.app");
+    private final int chat = registry.idFor("com.whatsapp");
+    private final int browser = registry.idFor("com.android.chrome");
+
+    @Test
+    public void sessionIsHeldInFrontAndForTheGraceAfterLeaving() {
+        UnlockSessionTable sessions = new UnlockSessionTable();
+        sessions.onForeground(bank, 0);
+        sessions.unlock(bank, 100);
+
+        sessions.onForeground(browser, 60_000);
+        assertTrue(sessions.isUnlocked(bank, 60_000 + AppPolicy.DEFAULT_GRACE_MS - 1));
+        assertFalse(sessions.isUnlocked(bank, 60_000 + AppPolicy.DEFAULT_GRACE_MS));
+    }
+
+    @Test
+    public void twoUnlockedAppsStayUnlockedWhileSwitching() {
+        UnlockSessionTable sessions = new UnlockSessionTable();
+        sessions.onForeground(bank, 0);
+        sessions.unlock(bank, 0);
+        sessions.onForeground(chat, 1000);
+        sessions.unlock(chat, 1000);
+
+        for (long now = 2000; now < 60_000; now += 2000) {
+            int id = (now / 2000) % 2 == 0 ? bank : chat;
+            sessions.onForeground(id, now);
+            assertTrue(sessions.isUnlocked(id, now));
+        }
+    }
+
+    @Test
+    public void screenOffClosesEverySession() {
+        UnlockSessionTable sessions = new UnlockSessionTable();
+        sessions.onForeground(bank, 0);
+        sessions.unlock(bank, 0);
+        sessions.unlock(chat, 0);
+
+        sessions.clearAll();
+
+        assertFalse(sessions.isUnlocked(bank, 1));
+        assertFalse(sessions.isUnlocked(chat, 1));
+    }
+
+    /**
+     * The monitor thread switches between two protected apps while the UI
+     * thread unlocks them and readers copy the sessions out, as the guard
+     * publishes them. Once both are unlocked, no switch may need a new lock.
+     */
+    @Test
+    public void concurrentUnlocksAndSwitchesNeverReLock() throws InterruptedException {
+        UnlockSessionTable sessions = new UnlockSessionTable();
+        AtomicLong clock = new AtomicLong(1_000_000);
+        AtomicBoolean bothUnlocked = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger reLocks = new AtomicInteger();
+        AtomicInteger badCopies = new AtomicInteger();
+        int switches = 200_000;
+
+        Thread monitor = new Thread(() -> {
+            for (int i = 0; i < switches; i++) {
+                // 100 ms per switch: every return lands well within the grace period
+                long now = clock.addAndGet(100);
+                int id = (i & 1) == 0 ? bank : chat;
+                boolean armed = bothUnlocked.get();
+                sessions.onForeground(id, now);
+                if (armed && !sessions.isUnlocked(id, now)) reLocks.incrementAndGet();
+            }
+            done.set(true);
+        });
+        Thread ui = new Thread(() -> {
+            // Stamped under the table's lock, so the monitor cannot run past the grace before they land
+            synchronized (sessions) {
+                sessions.unlock(bank, clock.get());
+                sessions.unlock(chat, clock.get());
+            }
+            bothUnlocked.set(true);
+            // Unlocks of other apps keep landing while the monitor runs
+            for (int i = 0; !done.get(); i++) {
+                sessions.unlock(registry.idFor("stress.app" + (i % 500)), clock.get());
+            }
+        });
+        Thread reader = new Thread(() -> {
+            String[] names = new String[16];
+            long[] expiries = new long[16];
+            while (!done.get()) {
+                int count = sessions.copyOpenSessions(clock.get(), names, expiries);
+                for (int i = 0; i < count; i++) {
+                    if (names[i] == null || names[i].isEmpty()) badCopies.incrementAndGet();
+                }
+            }
+        });
+
+        ui.start();
+        reader.start();
+        monitor.start();
+        monitor.join();
+        ui.join();
+        reader.join();
+
+        assertEquals(0, reLocks.get());
+        assertEquals(0, badCopies.get());
+        assertTrue(sessions.isUnlocked(bank, clock.get()));
+        assertTrue(sessions.isUnlocked(chat, clock.get()));
+    }
+}
@@ -0,0 +1,97 @@
+package com.hfs.security.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowUsageStatsManager;
+
+/**
+ * Polling backend against the framework's UsageStatsManager.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34, application = Application.class)
+public class UsageStatsForegroundDetectorTest {
+
+    private static final String BANK = "com.bank.app";
+    private static final String BROWSER = "com.android.chrome";
+    private static final String LAUNCHER = "com.android.launcher3";
+
+    private ShadowUsageStatsManager usageStats;
+    private UsageStatsForegroundDetector detector;
+
+    @Before
+    public void setUp() {
+        UsageStatsManager usm = (UsageStatsManager) RuntimeEnvironment.getApplication()
+                .getSystemService(Context.USAGE_STATS_SERVICE);
+        usageStats = Shadows.shadowOf(usm);
+        detector = new UsageStatsForegroundDetector(usm);
+        detector.start(null);
+    }
+
+    private void record(long timestamp, int type, String packageName, String className) {
+        usageStats.addEvent(ShadowUsageStatsManager.EventBuilder.buildEvent()
+                .setTimeStamp(timestamp)
+                .setEventType(type)
+                .setPackage(packageName)
+                .setClass(className)
+                .build());
+    }
+
+    @Test
+    public void reportsTheLastResumedActivity() {
+        record(96_000, UsageEvents.Event.ACTIVITY_RESUMED, LAUNCHER, LAUNCHER + ".Launcher");
+        record(98_000, UsageEvents.Event.ACTIVITY_PAUSED, LAUNCHER, LAUNCHER + ".Launcher");
+        record(98_010, UsageEvents.Event.ACTIVITY_RESUMED, BANK, BANK + ".Main");
+
+        assertEquals(BANK, detector.getForegroundPackage(100_000));
+        assertEquals(BANK + ".Main", detector.getForegroundClass());
+        assertEquals(98_010, detector.getForegroundSinceMs());
+        assertFalse(detector.isPushBased());
+    }
+
+    @Test
+    public void notesASwitchOnTheNextPoll() {
+        record(96_000, UsageEvents.Event.ACTIVITY_RESUMED, BROWSER, BROWSER + ".Tab");
+        assertEquals(BROWSER, detector.getForegroundPackage(100_000));
+
+        record(100_100, UsageEvents.Event.ACTIVITY_PAUSED, BROWSER, BROWSER + ".Tab");
+        record(100_110, UsageEvents.Event.ACTIVITY_RESUMED, BANK, BANK + ".Main");
+
+        assertEquals(BANK, detector.getForegroundPackage(100_500));
+    }
+
+    @Test
+    public void eventRecordedLateIsStillSeen() {
+        record(96_000, UsageEvents.Event.ACTIVITY_RESUMED, BROWSER, BROWSER + ".Tab");
+        assertEquals(BROWSER, detector.getForegroundPackage(100_000));
+
+        // Stamped before the last poll, but only recorded after it
+        record(99_900, UsageEvents.Event.ACTIVITY_RESUMED, BANK, BANK + ".Main");
+
+        assertEquals(BANK, detector.getForegroundPackage(100_500));
+    }
+
+    @Test
+    public void splitScreenHalvesAreBothVisible() {
+        record(96_000, UsageEvents.Event.ACTIVITY_RESUMED, BANK, BANK + ".Main");
+        record(96_020, UsageEvents.Event.ACTIVITY_RESUMED, BROWSER, BROWSER + ".Tab");
+
+        assertEquals(BROWSER, detector.getForegroundPackage(100_000));
+        VisibleWindowSet windows = detector.getVisibleWindows();
+        assertEquals(2, windows.size());
+        assertTrue(windows.contains(BANK));
+    }
+}
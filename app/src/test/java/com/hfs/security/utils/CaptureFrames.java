@@ -0,0 +1,226 @@
+package com.hfs.security.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Synthetic camera frames and a JVM stand-in for the capture encoder.
+ * The platform JPEG codec is not available off-device, so javax.imageio
+ * stands in for YuvImage and BitmapFactory on both sides of each comparison.
+ */
+final class CaptureFrames {
+
+    // CaptureJpegEncoder.QUALITY; that class needs the platform encoder
+    static final int QUALITY = 90;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private CaptureFrames() {
+    }
+
+    /**
+     * Synthetic NV21 frame: gradients, a few edges and sensor noise, so the
+     * JPEG sizes are in the range of real captures.
+     */
+    static byte[] syntheticNv21(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = (x * 255 / width + y * 128 / height) / 2 + ((x / 40 + y / 40) % 2) * 60;
+                nv21[y * width + x] = (byte) Math.min(255, value + random.nextInt(12));
+            }
+        }
+        for (int i = width * height; i < nv21.length; i++) {
+            nv21[i] = (byte) (128 + random.nextInt(16) - 8);
+        }
+        return nv21;
+    }
+
+    /**
+     * Labelled NV21 frame: 4x4 blocks of random grey ("a face") in the centre
+     * half of a flat background, then degraded as the label says.
+     */
+    static byte[] labelledFrame(String label, int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] nv21 = new byte[YuvConverter.bufferSize(width, height)];
+        boolean border = label.equals("detail at border");
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean centre = x >= width / 4 && x < width - width / 4 && y >= height / 4 && y < height - height / 4;
+                int value = 128 + random.nextInt(5) - 2;
+                if (centre != border) {
+                    Random block = new Random(seed * 31 + (y / 4) * 1000 + x / 4);
+                    value = 70 + block.nextInt(116);
+                }
+                nv21[y * width + x] = (byte) value;
+            }
+        }
+        Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+
+        if (label.equals("blurred")) {
+            // 7x7 box blur, as a shaking hand smears the frame
+            byte[] copy = nv21.clone();
+            for (int y = 3; y < height - 3; y++) {
+                for (int x = 3; x < width - 3; x++) {
+                    int sum = 0;
+                    for (int dy = -3; dy <= 3; dy++) {
+                        for (int dx = -3; dx <= 3; dx++) {
+                            sum += copy[(y + dy) * width + x + dx] & 0xFF;
+                        }
+                    }
+                    nv21[y * width + x] = (byte) (sum / 49);
+                }
+            }
+        } else if (label.equals("dark")) {
+            for (int i = 0; i < width * height; i++) {
+                nv21[i] = (byte) ((nv21[i] & 0xFF) / 10);
+            }
+        } else if (label.equals("overexposed")) {
+            for (int i = 0; i < width * height; i++) {
+                nv21[i] = (byte) Math.min(255, 215 + (nv21[i] & 0xFF) / 4);
+            }
+        }
+        return nv21;
+    }
+
+    /**
+     * NV21 to RGB, standing in for the colour conversion inside the platform encoder.
+     */
+    static BufferedImage nv21ToImage(byte[] nv21, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        int chroma = width * height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = nv21[y * width + x] & 0xFF;
+                int uv = chroma + (y >> 1) * width + (x & ~1);
+                int v = (nv21[uv] & 0xFF) - 128;
+                int u = (nv21[uv + 1] & 0xFF) - 128;
+                int r = clamp(luma + (int) (1.402f * v));
+                int g = clamp(luma - (int) (0.344f * u + 0.714f * v));
+                int b = clamp(luma + (int) (1.772f * u));
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(255, value);
+    }
+
+    static void writeJpeg(BufferedImage image, int quality, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality / 100f);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * The CaptureJpegEncoder path: one JPEG at 90 with EXIF orientation.
+     */
+    static void encodeOnce(byte[] nv21, int width, int height, int rotation, OutputStream out) throws IOException {
+        ExifOrientationStream jpeg = new ExifOrientationStream(out, ExifOrientationStream.orientationFor(rotation, true));
+        writeJpeg(nv21ToImage(nv21, width, height), QUALITY, jpeg);
+        jpeg.flush();
+    }
+
+    /**
+     * The previous FileSecureHelper path: JPEG at 100, decode, rotate and
+     * mirror into a new frame, JPEG at 90.
+     */
+    static void encodeRotatedTwice(byte[] nv21, int width, int height, int rotation, OutputStream out)
+            throws IOException {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        writeJpeg(nv21ToImage(nv21, width, height), 100, first);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(first.toByteArray()));
+
+        int w = decoded.getWidth();
+        int h = decoded.getHeight();
+        int[] pixels = decoded.getRGB(0, 0, w, h, null, 0, w);
+        int[] turned = rotateThenMirror(pixels, w, h, rotation);
+        boolean swap = rotation % 180 != 0;
+        BufferedImage rotated = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        rotated.setRGB(0, 0, rotated.getWidth(), rotated.getHeight(), turned, 0, rotated.getWidth());
+        writeJpeg(rotated, QUALITY, out);
+    }
+
+    /**
+     * Rotates clockwise, then flips horizontally, as the old Matrix did.
+     */
+    static int[] rotateThenMirror(int[] pixels, int width, int height, int rotation) {
+        boolean swap = rotation % 180 != 0;
+        int outWidth = swap ? height : width;
+        int[] out = new int[pixels.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rx;
+                int ry;
+                switch (rotation) {
+                    case 90: rx = height - 1 - y; ry = x; break;
+                    case 180: rx = width - 1 - x; ry = height - 1 - y; break;
+                    case 270: rx = y; ry = width - 1 - x; break;
+                    default: rx = x; ry = y; break;
+                }
+                out[ry * outWidth + (outWidth - 1 - rx)] = pixels[y * width + x];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread, as counted by the JVM.
+     */
+    static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Output that only counts, so file I/O stays out of the numbers.
+     */
+    static final class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.hfs.security.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * No partial JPEG may ever be listed: not when the process dies mid-write,
+ * not when the encoder fails half way. Leftover parts go at the next start.
+ */
+public class EvidenceWriterTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("hfs_intruders").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        CaptureFrames.deleteDirectory(directory);
+    }
+
+    /**
+     * Child process for the crash test: starts a write that never ends.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        EvidenceWriter writer = new EvidenceWriter(new File(args[0]), 8, EvidenceWriter.FSYNC_FILE);
+        writer.submit("HFS_INTRUDER_crash.jpg", out -> {
+            byte[] chunk = new byte[1024];
+            while (true) {
+                out.write(chunk);
+                out.flush();
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        });
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    /**
+     * Files the intruder history would list: its filter, .jpg and .png.
+     */
+    private int listedFiles() {
+        File[] files = directory.listFiles((dir, name) ->
+                name.toLowerCase().endsWith(".jpg") || name.toLowerCase().endsWith(".png"));
+        return files == null ? 0 : files.length;
+    }
+
+    private int partFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EvidenceWriter.PART_SUFFIX));
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void killedWriterLeavesOnlyAPartThatTheNextStartRemoves() throws Exception {
+        Process child = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                EvidenceWriterTest.class.getName(), directory.getPath())
+                .inheritIO().start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        File part = new File(directory, "HFS_INTRUDER_crash.jpg" + EvidenceWriter.PART_SUFFIX);
+        while (part.length() < 16 * 1024 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        child.destroyForcibly().waitFor();
+
+        assertTrue(part.length() + " B in .part", part.length() >= 16 * 1024);
+        assertEquals(0, listedFiles());
+
+        // The next writer removes the leftover and stores a complete file
+        EvidenceWriter writer = new EvidenceWriter(directory, 8, EvidenceWriter.FSYNC_FILE);
+        byte[] frame = CaptureFrames.syntheticNv21(320, 240, 5);
+        File saved = writer.submit("HFS_INTRUDER_ok.jpg",
+                out -> CaptureFrames.encodeOnce(frame, 320, 240, 270, out)).get();
+
+        assertNotNull(ImageIO.read(saved));
+        assertEquals(0, partFiles());
+        assertEquals(1, listedFiles());
+    }
+
+    @Test
+    public void failedPayloadLeavesNothingBehind() throws InterruptedException {
+        EvidenceWriter writer = new EvidenceWriter(directory, 8, EvidenceWriter.FSYNC_FILE);
+        CompletableFuture<File> failed = writer.submit("HFS_INTRUDER_failed.jpg", out -> {
+            out.write(new byte[100_000]);
+            throw new IOException("encoder failed");
+        });
+
+        try {
+            failed.get();
+            fail("the failed payload was stored");
+        } catch (ExecutionException expected) {
+            // The future reports the encoder's failure
+        }
+        assertEquals(0, partFiles());
+        assertEquals(0, listedFiles());
+    }
+
+    /**
+     * A burst holds the camera thread only for the hand-off, and what does not
+     * fit the bounded queue is refused at once instead of blocking.
+     */
+    @Test
+    public void burstIsHandedOffAndBoundedByTheQueue() throws Exception {
+        int width = 320;
+        int height = 240;
+        byte[][] frames = new byte[12][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = CaptureFrames.syntheticNv21(width, height, i);
+        }
+
+        for (int burst : new int[] {3, 12}) {
+            for (int policy = EvidenceWriter.FSYNC_NONE; policy <= EvidenceWriter.FSYNC_FILE_AND_DIRECTORY; policy++) {
+                File inlineDirectory = Files.createTempDirectory("hfs_burst").toFile();
+                long t0 = System.nanoTime();
+                for (int i = 0; i < burst; i++) {
+                    try (OutputStream out = new FileOutputStream(new File(inlineDirectory, "inline_" + i + ".jpg"))) {
+                        CaptureFrames.encodeOnce(frames[i], width, height, 270, out);
+                    }
+                }
+                long inline = System.nanoTime() - t0;
+                CaptureFrames.deleteDirectory(inlineDirectory);
+
+                File burstDirectory = Files.createTempDirectory("hfs_burst").toFile();
+                EvidenceWriter writer = new EvidenceWriter(burstDirectory, 8, policy);
+                List<CompletableFuture<File>> futures = new ArrayList<>();
+                t0 = System.nanoTime();
+                for (int i = 0; i < burst; i++) {
+                    byte[] frame = frames[i];
+                    futures.add(writer.submit("HFS_INTRUDER_" + i + ".jpg",
+                            out -> CaptureFrames.encodeOnce(frame, width, height, 270, out)));
+                }
+                long handOff = System.nanoTime() - t0;
+                int rejected = 0;
+                for (CompletableFuture<File> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        rejected++;
+                    }
+                }
+                File[] written = burstDirectory.listFiles((dir, name) -> name.endsWith(".jpg"));
+                File[] parts = burstDirectory.listFiles((dir, name) -> name.endsWith(EvidenceWriter.PART_SUFFIX));
+                CaptureFrames.deleteDirectory(burstDirectory);
+
+                String run = "burst " + burst + ", fsync policy " + policy;
+                assertEquals(run, burst, written.length + rejected);
+                assertEquals(run, 0, parts.length);
+                // The queue holds 8 behind the task running, which may still be the start-up cleanup
+                if (burst <= 8) {
+                    assertEquals(run, 0, rejected);
+                } else {
+                    assertTrue(run + ": " + rejected + " rejected", rejected >= burst - 9 && rejected <= burst - 8);
+                }
+                assertTrue(run + ": hand-off " + handOff + " ns, inline " + inline + " ns", handOff < inline);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.hfs.security.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One intruder capture, NV21 frame to JPEG: the old encode, decode, rotate
+ * and re-encode path against a single encode with EXIF orientation.
+ * javax.imageio stands in for the platform codec on both sides. Run by
+ * ExifOrientationBenchmarkTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExifOrientationBenchmark {
+
+    // Front camera held in portrait
+    private static final int ROTATION = 270;
+
+    @Param({"640x480", "1280x720"})
+    public String frame;
+
+    private int width;
+    private int height;
+    private byte[] nv21;
+    private final CaptureFrames.CountingSink sink = new CaptureFrames.CountingSink();
+
+    @Setup
+    public void setUp() {
+        int x = frame.indexOf('x');
+        width = Integer.parseInt(frame.substring(0, x));
+        height = Integer.parseInt(frame.substring(x + 1));
+        nv21 = CaptureFrames.syntheticNv21(width, height, 7);
+    }
+
+    @Benchmark
+    public long encodeRotatedTwice() throws IOException {
+        CaptureFrames.encodeRotatedTwice(nv21, width, height, ROTATION, sink);
+        return sink.count;
+    }
+
+    @Benchmark
+    public long encodeOnce() throws IOException {
+        CaptureFrames.encodeOnce(nv21, width, height, ROTATION, sink);
+        return sink.count;
+    }
+}
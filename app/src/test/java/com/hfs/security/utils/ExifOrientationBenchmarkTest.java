@@ -0,0 +1,66 @@
+package com.hfs.security.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs ExifOrientationBenchmark in-process with short iterations and the GC
+ * profiler, enough to compare time and bytes allocated per capture at
+ * 640x480 and 1280x720.
+ */
+public class ExifOrientationBenchmarkTest {
+
+    @Test
+    public void singleEncodeIsFasterAndAllocatesLessAtEverySize() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ExifOrientationBenchmark.class.getName() + "\\.")
+                .forks(0)
+                .warmupIterations(2)
+                .warmupTime(TimeValue.milliseconds(500))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.milliseconds(500))
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Map<String, Double> millis = new HashMap<>();
+        Map<String, Double> bytes = new HashMap<>();
+        for (RunResult result : results) {
+            String method = result.getParams().getBenchmark();
+            String key = method.substring(method.lastIndexOf('.') + 1) + "@" + result.getParams().getParam("frame");
+            millis.put(key, result.getPrimaryResult().getScore());
+            for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+                    bytes.put(key, secondary.getValue().getScore());
+                }
+            }
+        }
+        assertEquals(4, millis.size());
+        assertEquals(4, bytes.size());
+        for (String frame : new String[] {"640x480", "1280x720"}) {
+            double oldMs = millis.get("encodeRotatedTwice@" + frame);
+            double newMs = millis.get("encodeOnce@" + frame);
+            double oldBytes = bytes.get("encodeRotatedTwice@" + frame);
+            double newBytes = bytes.get("encodeOnce@" + frame);
+            String report = String.format("%s: old %.1f ms, %.1f MB; single pass %.1f ms, %.1f MB",
+                    frame, oldMs, oldBytes / 1e6, newMs, newBytes / 1e6);
+            assertTrue(report, newMs < oldMs);
+            assertTrue(report, newBytes < oldBytes);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.hfs.security.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The EXIF orientation must show exactly what the old pixel rotation
+ * produced, from a single encode.
+ */
+public class ExifOrientationStreamTest {
+
+    /**
+     * What a viewer displays for a stored frame with the given EXIF orientation.
+     */
+    private static int[] applyOrientation(int[] pixels, int width, int height, int orientation) {
+        boolean swap = orientation >= ExifOrientationStream.TRANSPOSE;
+        int outWidth = swap ? height : width;
+        int[] out = new int[pixels.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int dx;
+                int dy;
+                switch (orientation) {
+                    case ExifOrientationStream.FLIP_HORIZONTAL: dx = width - 1 - x; dy = y; break;
+                    case ExifOrientationStream.ROTATE_180: dx = width - 1 - x; dy = height - 1 - y; break;
+                    case ExifOrientationStream.FLIP_VERTICAL: dx = x; dy = height - 1 - y; break;
+                    case ExifOrientationStream.TRANSPOSE: dx = y; dy = x; break;
+                    case ExifOrientationStream.ROTATE_90: dx = height - 1 - y; dy = x; break;
+                    case ExifOrientationStream.TRANSVERSE: dx = height - 1 - y; dy = width - 1 - x; break;
+                    case ExifOrientationStream.ROTATE_270: dx = y; dy = width - 1 - x; break;
+                    default: dx = x; dy = y; break;
+                }
+                out[dy * outWidth + dx] = pixels[y * width + x];
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void orientationShowsWhatThePixelRotationProduced() {
+        int width = 5;
+        int height = 3;
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i;
+        }
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            int orientation = ExifOrientationStream.orientationFor(rotation, true);
+            assertArrayEquals("rotation " + rotation + " -> orientation " + orientation,
+                    CaptureFrames.rotateThenMirror(pixels, width, height, rotation),
+                    applyOrientation(pixels, width, height, orientation));
+        }
+    }
+
+    @Test
+    public void segmentFollowsSoiAndTheFileStillDecodes() throws IOException {
+        byte[] nv21 = CaptureFrames.syntheticNv21(64, 48, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CaptureFrames.encodeOnce(nv21, 64, 48, 270, out);
+        byte[] jpeg = out.toByteArray();
+
+        assertEquals(0xFF, jpeg[2] & 0xFF);
+        assertEquals(0xE1, jpeg[3] & 0xFF);
+        assertEquals('E', jpeg[6]);
+        assertEquals(ExifOrientationStream.TRANSVERSE, jpeg[30]);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull(decoded);
+        assertEquals(64, decoded.getWidth());
+    }
+}
@@ -0,0 +1,78 @@
+package com.hfs.security.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Memory cap, window selection after wrap-around, downscaled content and
+ * allocation-free buffering of the pre-failure ring.
+ */
+public class FrameRingTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static byte[] flatFrame() {
+        byte[] frame = new byte[YuvConverter.bufferSize(WIDTH, HEIGHT)];
+        Arrays.fill(frame, 0, WIDTH * HEIGHT, (byte) 200);
+        Arrays.fill(frame, WIDTH * HEIGHT, frame.length, (byte) 90);
+        return frame;
+    }
+
+    @Test
+    public void memoryCapLimitsTheSlots() {
+        // 320x240 frames are 115200 bytes: a 500 kB cap leaves room for 4 of the 12 asked for
+        FrameRing ring = new FrameRing(12, 500_000, 480);
+        ring.push(flatFrame(), WIDTH, HEIGHT, 270, 0);
+
+        assertEquals(4, ring.getSlotCount());
+        assertTrue(ring.getMemoryBytes() <= 500_000);
+    }
+
+    @Test
+    public void windowAfterWrapKeepsTheNewestFramesInOrder() {
+        // 10 frames 100 ms apart through 6 slots
+        FrameRing ring = new FrameRing(6, 10_000_000, 480);
+        byte[] frame = flatFrame();
+        for (int i = 0; i < 10; i++) {
+            ring.push(frame, WIDTH, HEIGHT, 270, i * 100L);
+        }
+
+        StringBuilder seen = new StringBuilder();
+        int visited = ring.forEachBetween(450, 850, (nv21, w, h, rotation, timestamp) -> {
+            seen.append(timestamp).append(' ');
+            assertEquals(320, w);
+            assertEquals(240, h);
+            assertEquals(270, rotation);
+            assertEquals(200, nv21[0] & 0xFF);
+            assertEquals(90, nv21[w * h] & 0xFF);
+            assertEquals(YuvConverter.bufferSize(w, h), nv21.length);
+        });
+
+        assertEquals("500 600 700 800 ", seen.toString());
+        assertEquals(4, visited);
+        assertEquals(6, ring.size());
+    }
+
+    @Test
+    public void pushAllocatesNothingOnceWarm() {
+        FrameRing ring = new FrameRing(6, 10_000_000, 480);
+        byte[] frame = flatFrame();
+        int frames = 500;
+        long bytes = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            long bytes0 = CaptureFrames.allocatedBytes();
+            for (int i = 0; i < frames; i++) {
+                ring.push(frame, WIDTH, HEIGHT, 270, i);
+            }
+            bytes = CaptureFrames.allocatedBytes() - bytes0;
+        }
+
+        // Less than a byte per frame: nothing but the JIT's own bookkeeping
+        assertEquals(0, bytes / frames);
+    }
+}
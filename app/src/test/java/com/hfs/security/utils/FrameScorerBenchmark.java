@@ -0,0 +1,43 @@
+package com.hfs.security.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring one analysed frame, which the capture path does for every frame
+ * it keeps in the ring. Run by FrameScorerBenchmarkTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameScorerBenchmark {
+
+    @Param({"320x240", "640x480"})
+    public String frame;
+
+    private final FrameScorer scorer = new FrameScorer();
+    private int width;
+    private int height;
+    private byte[] luma;
+
+    @Setup
+    public void setUp() {
+        int x = frame.indexOf('x');
+        width = Integer.parseInt(frame.substring(0, x));
+        height = Integer.parseInt(frame.substring(x + 1));
+        luma = CaptureFrames.labelledFrame("sharp", width, height, 3);
+    }
+
+    @Benchmark
+    public float score() {
+        return scorer.score(luma, width, height);
+    }
+}
@@ -0,0 +1,55 @@
+package com.hfs.security.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Runs FrameScorerBenchmark in-process with short iterations and the GC
+ * profiler. Scoring must fit in a quarter of the 30 fps frame interval.
+ */
+public class FrameScorerBenchmarkTest {
+
+    private static final double BUDGET_US = 33_333 / 4.0;
+
+    @Test
+    public void scoringFitsInAQuarterOfTheFrameInterval() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FrameScorerBenchmark.class.getName() + "\\.")
+                .forks(0)
+                .warmupIterations(2)
+                .warmupTime(TimeValue.milliseconds(200))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.milliseconds(200))
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        assertEquals(2, results.size());
+        for (RunResult result : results) {
+            double micros = result.getPrimaryResult().getScore();
+            double bytes = -1;
+            for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+                    bytes = secondary.getValue().getScore();
+                }
+            }
+            String report = String.format("%s: %.1f us, %.0f B per frame",
+                    result.getParams().getParam("frame"), micros, bytes);
+            assertTrue(report, micros < BUDGET_US);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.hfs.security.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * The scorer must rank the sharp, well exposed, centred frame above each
+ * degraded one. Its cost per frame is measured by FrameScorerBenchmark.
+ */
+public class FrameScorerTest {
+
+    // The label is what a reviewer would pick; the first one is the best frame
+    private static final String[] LABELS = {"sharp", "blurred", "dark", "overexposed", "detail at border"};
+
+    @Test
+    public void sharpCentredFrameOutranksEachDegradedOne() {
+        int width = 320;
+        int height = 240;
+        FrameScorer scorer = new FrameScorer();
+        float sharp = scorer.score(CaptureFrames.labelledFrame(LABELS[0], width, height, 7), width, height);
+
+        for (int i = 1; i < LABELS.length; i++) {
+            float score = scorer.score(CaptureFrames.labelledFrame(LABELS[i], width, height, 7), width, height);
+            assertTrue(LABELS[i] + " scored " + score + " against " + sharp, score < sharp);
+        }
+    }
+
+    @Test
+    public void ringHandsTheBestFramesBackFirst() {
+        int width = 640;
+        int height = 480;
+        FrameRing ring = new FrameRing(12, 10_000_000, 480);
+        ring.setScorer(new FrameScorer());
+        // Frames 0..4 get the labels in order, twice; the best two of the window are the sharp ones
+        for (int i = 0; i < 2 * LABELS.length; i++) {
+            ring.push(CaptureFrames.labelledFrame(LABELS[i % LABELS.length], width, height, i), width, height,
+                    0, i * 100L);
+        }
+
+        StringBuilder picked = new StringBuilder();
+        int visited = ring.forEachBest(0, 1000, 2, (nv21, w, h, rotation, timestamp) ->
+                picked.append(timestamp).append(' '));
+
+        assertEquals(2, visited);
+        assertTrue(picked.toString(), picked.toString().matches("(0 500|500 0) "));
+    }
+}
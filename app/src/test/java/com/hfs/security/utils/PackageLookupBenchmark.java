@@ -0,0 +1,84 @@
+package com.hfs.security.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-tick "must this app be locked" decision: String sets and equals()
+ * as the guard used to do it, against registry IDs, a bitset and an expiry
+ * array. Run by PackageLookupBenchmarkTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PackageLookupBenchmark {
+
+    private static final String OWN_PACKAGE = "com.hfs.security";
+
+    @Param({"50", "500", "5000"})
+    public int installed;
+
+    // Foreground results as separate instances, like names decoded from usage events
+    private final String[] queries = new String[1024];
+    private final int[] queryIds = new int[queries.length];
+
+    private Set<String> protectedApps;
+    private String unlockedPackage;
+
+    private BitSet protectedIds;
+    private BitSet exemptIds;
+    private long[] expiryById;
+
+    private int next = 0;
+    private long now = 1_000_000;
+
+    @Setup
+    public void setUp() {
+        PackageRegistry registry = PackageRegistry.getInstance();
+        Random random = new Random(installed);
+        String[] catalog = new String[installed];
+        protectedApps = new HashSet<>();
+        for (int i = 0; i < installed; i++) {
+            catalog[i] = "com.vendor" + i + ".app" + installed;
+            // About one app in ten is protected
+            if (random.nextInt(10) == 0) protectedApps.add(catalog[i]);
+        }
+        unlockedPackage = new String(catalog[0]);
+
+        protectedIds = registry.toBitSet(protectedApps);
+        exemptIds = new BitSet();
+        exemptIds.set(registry.idFor(OWN_PACKAGE));
+        expiryById = new long[registry.size() + installed];
+        expiryById[registry.idFor(catalog[0])] = Long.MAX_VALUE;
+
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = new String(catalog[random.nextInt(installed)]);
+            queryIds[i] = registry.idFor(queries[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean stringSet() {
+        String current = queries[next++ & 1023];
+        return protectedApps.contains(current) && !current.equals(unlockedPackage) && !current.equals(OWN_PACKAGE);
+    }
+
+    @Benchmark
+    public boolean idBitSet() {
+        int id = queryIds[next++ & 1023];
+        return PackageRegistry.contains(protectedIds, id) && expiryById[id] <= now
+                && !PackageRegistry.contains(exemptIds, id);
+    }
+}
@@ -0,0 +1,51 @@
+package com.hfs.security.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs PackageLookupBenchmark in-process with short iterations, enough to
+ * compare the two paths at 50, 500 and 5 000 installed packages.
+ */
+public class PackageLookupBenchmarkTest {
+
+    @Test
+    public void idLookupBeatsTheStringSetAtEverySize() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PackageLookupBenchmark.class.getName() + "\\.")
+                .forks(0)
+                .warmupIterations(2)
+                .warmupTime(TimeValue.milliseconds(200))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.milliseconds(200))
+                .shouldFailOnError(true)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Map<String, Double> scores = new HashMap<>();
+        for (RunResult result : results) {
+            String method = result.getParams().getBenchmark();
+            String installed = result.getParams().getParam("installed");
+            scores.put(method.substring(method.lastIndexOf('.') + 1) + "@" + installed,
+                    result.getPrimaryResult().getScore());
+        }
+        assertEquals(6, scores.size());
+        for (String installed : new String[] {"50", "500", "5000"}) {
+            double strings = scores.get("stringSet@" + installed);
+            double ids = scores.get("idBitSet@" + installed);
+            assertTrue(installed + " packages: strings " + strings + " ns, ids " + ids + " ns", ids < strings);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.hfs.security.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+
+public class PackageRegistryTest {
+
+    private final PackageRegistry registry = PackageRegistry.getInstance();
+
+    @Test
+    public void idsAreDenseAndStable() {
+        int size = registry.size();
+        int first = registry.idFor("registry.test.first");
+        int second = registry.idFor("registry.test.second");
+
+        assertEquals(size, first);
+        assertEquals(size + 1, second);
+        assertEquals(first, registry.idFor(new String("registry.test.first")));
+        assertEquals("registry.test.second", registry.nameOf(second));
+        assertEquals(size + 2, registry.size());
+    }
+
+    @Test
+    public void emptyNameHasNoId() {
+        assertEquals(PackageRegistry.NO_ID, registry.idFor(""));
+        assertEquals(PackageRegistry.NO_ID, registry.idFor(null));
+        assertEquals("", registry.nameOf(PackageRegistry.NO_ID));
+    }
+
+    @Test
+    public void bitSetMembershipIsBoundsSafe() {
+        BitSet bits = registry.toBitSet(new HashSet<>(Arrays.asList("registry.test.bank", "")));
+
+        assertTrue(PackageRegistry.contains(bits, registry.idFor("registry.test.bank")));
+        assertFalse(PackageRegistry.contains(bits, registry.idFor("registry.test.other")));
+        assertFalse(PackageRegistry.contains(bits, PackageRegistry.NO_ID));
+    }
+}
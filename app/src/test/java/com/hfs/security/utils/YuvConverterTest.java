@@ -0,0 +1,162 @@
+package com.hfs.security.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Golden outputs for every plane layout a YUV_420_888 frame arrives in,
+ * built straight from the samples, in both output formats, for even and odd
+ * frame sizes.
+ */
+public class YuvConverterTest {
+
+    /**
+     * Plane layouts a YUV_420_888 frame arrives in on different devices.
+     */
+    private static final class Layout {
+        final String name;
+        final int rowPadding;
+        final boolean interleaved;
+        final boolean vFirst;
+
+        Layout(String name, int rowPadding, boolean interleaved, boolean vFirst) {
+            this.name = name;
+            this.rowPadding = rowPadding;
+            this.interleaved = interleaved;
+            this.vFirst = vFirst;
+        }
+    }
+
+    private static final Layout[] LAYOUTS = {
+            new Layout("planar, packed", 0, false, false),
+            new Layout("planar, padded rows", 48, false, false),
+            new Layout("semi-planar NV12 (U first)", 0, true, false),
+            new Layout("semi-planar NV21 (V first), padded rows", 64, true, true),
+    };
+
+    /**
+     * Lays a frame given as separate Y, U and V samples out like a camera
+     * HAL would, and points the converter at it. The last row of each
+     * buffer ends right after its last pixel, as on real devices.
+     */
+    private static void layOut(YuvConverter converter, Layout layout, int width, int height,
+                               byte[] yPlane, byte[] uPlane, byte[] vPlane) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+
+        int yStride = width + layout.rowPadding;
+        ByteBuffer y = ByteBuffer.allocateDirect((height - 1) * yStride + width);
+        for (int row = 0; row < height; row++) {
+            for (int x = 0; x < width; x++) {
+                y.put(row * yStride + x, yPlane[row * width + x]);
+            }
+        }
+        converter.setPlane(0, y, yStride, 1);
+
+        if (layout.interleaved) {
+            // One buffer holding both, each plane a view offset by one byte
+            int stride = chromaWidth * 2 + layout.rowPadding;
+            ByteBuffer shared = ByteBuffer.allocateDirect((chromaHeight - 1) * stride + chromaWidth * 2);
+            for (int row = 0; row < chromaHeight; row++) {
+                for (int x = 0; x < chromaWidth; x++) {
+                    int index = row * stride + 2 * x;
+                    shared.put(index, layout.vFirst ? vPlane[row * chromaWidth + x] : uPlane[row * chromaWidth + x]);
+                    shared.put(index + 1, layout.vFirst ? uPlane[row * chromaWidth + x] : vPlane[row * chromaWidth + x]);
+                }
+            }
+            ByteBuffer first = shared.duplicate();
+            first.limit(shared.capacity() - 1);
+            ByteBuffer second = shared.duplicate();
+            second.position(1);
+            converter.setPlane(layout.vFirst ? 2 : 1, first.slice(), stride, 2);
+            converter.setPlane(layout.vFirst ? 1 : 2, second.slice(), stride, 2);
+        } else {
+            int stride = chromaWidth + layout.rowPadding;
+            byte[][] planes = {uPlane, vPlane};
+            for (int p = 0; p < 2; p++) {
+                ByteBuffer plane = ByteBuffer.allocateDirect((chromaHeight - 1) * stride + chromaWidth);
+                for (int row = 0; row < chromaHeight; row++) {
+                    for (int x = 0; x < chromaWidth; x++) {
+                        plane.put(row * stride + x, planes[p][row * chromaWidth + x]);
+                    }
+                }
+                converter.setPlane(1 + p, plane, stride, 1);
+            }
+        }
+    }
+
+    @Test
+    public void everyLayoutConvertsToTheGoldenFrames() {
+        Random random = new Random(3);
+        int[][] sizes = {{16, 8}, {33, 17}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            int chromaWidth = (width + 1) / 2;
+            int chromaSize = chromaWidth * ((height + 1) / 2);
+            byte[] yPlane = new byte[width * height];
+            byte[] uPlane = new byte[chromaSize];
+            byte[] vPlane = new byte[chromaSize];
+            random.nextBytes(yPlane);
+            random.nextBytes(uPlane);
+            random.nextBytes(vPlane);
+
+            byte[] nv21Golden = new byte[YuvConverter.bufferSize(width, height)];
+            byte[] i420Golden = new byte[nv21Golden.length];
+            System.arraycopy(yPlane, 0, nv21Golden, 0, yPlane.length);
+            System.arraycopy(yPlane, 0, i420Golden, 0, yPlane.length);
+            for (int i = 0; i < chromaSize; i++) {
+                nv21Golden[yPlane.length + 2 * i] = vPlane[i];
+                nv21Golden[yPlane.length + 2 * i + 1] = uPlane[i];
+                i420Golden[yPlane.length + i] = uPlane[i];
+                i420Golden[yPlane.length + chromaSize + i] = vPlane[i];
+            }
+
+            YuvConverter converter = new YuvConverter();
+            for (Layout layout : LAYOUTS) {
+                layOut(converter, layout, width, height, yPlane, uPlane, vPlane);
+                byte[] nv21 = new byte[nv21Golden.length];
+                byte[] i420 = new byte[nv21Golden.length];
+                converter.convert(width, height, YuvConverter.NV21, nv21);
+                converter.convert(width, height, YuvConverter.I420, i420);
+                String frame = width + "x" + height + " " + layout.name;
+                assertArrayEquals(frame + " NV21", nv21Golden, nv21);
+                assertArrayEquals(frame + " I420", i420Golden, i420);
+            }
+        }
+    }
+
+    @Test
+    public void pooledConversionAllocatesNothingPerFrame() {
+        int width = 640;
+        int height = 480;
+        int chromaSize = (width / 2) * (height / 2);
+        byte[] yPlane = new byte[width * height];
+        new Random(5).nextBytes(yPlane);
+
+        YuvConverter converter = new YuvConverter();
+        layOut(converter, LAYOUTS[3], width, height, yPlane, new byte[chromaSize], new byte[chromaSize]);
+        FrameBufferPool pool = new FrameBufferPool(3);
+
+        int frames = 500;
+        long bytes = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            long bytes0 = CaptureFrames.allocatedBytes();
+            for (int i = 0; i < frames; i++) {
+                byte[] nv21 = pool.acquire(YuvConverter.bufferSize(width, height));
+                converter.convert(width, height, YuvConverter.NV21, nv21);
+                pool.release(nv21);
+            }
+            bytes = CaptureFrames.allocatedBytes() - bytes0;
+        }
+
+        // Less than a byte per frame: nothing but the JIT's own bookkeeping
+        assertEquals(0, bytes / frames);
+        assertEquals(1, pool.getAllocations());
+    }
+}